@@ -97,6 +97,8 @@ CREATE TABLE IF NOT EXISTS server_config
     server_id       INTEGER,
     config          TEXT,
     config_type     VARCHAR(100), -- Xray、Hysteria2
+    config_hash     VARCHAR(64),  -- 配置内容规范化摘要
+    deployed_hash   VARCHAR(64),  -- 服务器上已生效的配置摘要
     create_time     DATETIME,
     update_time     DATETIME
 );
@@ -115,6 +117,7 @@ CREATE TABLE IF NOT EXISTS account
     speed            INTEGER, -- 最大速度，预留字段
     bandwidth        INTEGER, -- 流量
     disabled         INTEGER DEFAULT 0,
+    suspended_until  DATETIME, -- 超出在线IP上限临时停用的截止时间
     user_id          INTEGER,
     create_time   DATETIME,
     update_time   DATETIME
@@ -1,22 +1,68 @@
 package com.fun90.airopscat.config;
 
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.service.SqliteWriteExecutor;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import jakarta.persistence.EntityManagerFactory;
 
+import javax.sql.DataSource;
+
 /**
  * 数据库配置类
- * 配置事务管理和超时策略
+ * 配置控制面数据库（admin.db）的数据源、实体、事务管理和超时策略；
+ * 遥测数据单独存放，见 TelemetryDatabaseConfig
  */
 @Configuration
 @EnableTransactionManagement
+@EnableJpaRepositories(basePackages = "com.fun90.airopscat.repository",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX, pattern = "com\\.fun90\\.airopscat\\.repository\\.telemetry\\..*"))
 public class DatabaseConfig {
-    
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @Primary
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory(EntityManagerFactoryBuilder builder,
+                                                                       DataSource dataSource,
+                                                                       JpaProperties jpaProperties,
+                                                                       HibernateProperties hibernateProperties) {
+        return builder.dataSource(dataSource)
+                .packages(Account.class)
+                .properties(hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(), new HibernateSettings()))
+                .persistenceUnit("default")
+                .build();
+    }
+
     /**
      * 配置事务模板，设置合适的超时时间
      */
@@ -27,11 +73,12 @@ public class DatabaseConfig {
         template.setTimeout(5);
         return template;
     }
-    
+
     /**
      * 配置JPA事务管理器 (移除可能与SQLite冲突的配置)
      */
     @Bean
+    @Primary
     public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
         JpaTransactionManager transactionManager = new JpaTransactionManager();
         transactionManager.setEntityManagerFactory(entityManagerFactory);
@@ -39,4 +86,13 @@ public class DatabaseConfig {
         // transactionManager.setDefaultTimeout(30);
         return transactionManager;
     }
-} 
\ No newline at end of file
+
+    /**
+     * 控制面数据库的单写线程
+     */
+    @Bean
+    @Primary
+    public SqliteWriteExecutor sqliteWriteExecutor(PlatformTransactionManager transactionManager) {
+        return new SqliteWriteExecutor("sqlite-writer", transactionManager);
+    }
+}
@@ -0,0 +1,169 @@
+package com.fun90.airopscat.config;
+
+import com.fun90.airopscat.model.telemetry.AccountOnlineIp;
+import com.fun90.airopscat.service.SqliteWriteExecutor;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 遥测数据库配置
+ * 在线心跳和流量统计写入频繁，单独存放在 telemetry.db，拥有独立的数据源、实体、仓库、事务管理器和写线程，
+ * 与控制面数据库（admin.db）互不争抢WAL和检查点；需要跨库读取时在遥测连接上 ATTACH 控制面数据库
+ */
+@Slf4j
+@Configuration
+@EnableJpaRepositories(basePackages = "com.fun90.airopscat.repository.telemetry",
+        entityManagerFactoryRef = "telemetryEntityManagerFactory",
+        transactionManagerRef = TelemetryDatabaseConfig.TRANSACTION_MANAGER)
+public class TelemetryDatabaseConfig {
+
+    public static final String TRANSACTION_MANAGER = "telemetryTransactionManager";
+
+    /**
+     * ATTACH 控制面数据库时使用的库名
+     */
+    public static final String CONTROL_SCHEMA = "control";
+
+    /**
+     * 迁入遥测数据库的表
+     */
+    private static final List<String> TELEMETRY_TABLES = List.of("account_online_ip", "account_traffic_stats");
+
+    @Value("${airopscat.telemetry.control-database:admin.db}")
+    private String controlDatabase;
+
+    @Bean
+    @ConfigurationProperties("airopscat.telemetry.datasource")
+    public HikariDataSource telemetryDataSource() {
+        return DataSourceBuilder.create().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * 建立实体管理器前先把旧版本留在控制面数据库中的遥测表迁入遥测数据库
+     */
+    @Bean
+    public LocalContainerEntityManagerFactoryBean telemetryEntityManagerFactory(EntityManagerFactoryBuilder builder,
+                                                                                @Qualifier("telemetryDataSource") DataSource telemetryDataSource,
+                                                                                JpaProperties jpaProperties,
+                                                                                HibernateProperties hibernateProperties) throws SQLException {
+        migrateFromControlDatabase(telemetryDataSource);
+        return builder.dataSource(telemetryDataSource)
+                .packages(AccountOnlineIp.class)
+                .properties(hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(), new HibernateSettings()))
+                .persistenceUnit("telemetry")
+                .build();
+    }
+
+    @Bean(TRANSACTION_MANAGER)
+    public PlatformTransactionManager telemetryTransactionManager(
+            @Qualifier("telemetryEntityManagerFactory") EntityManagerFactory telemetryEntityManagerFactory) {
+        return new JpaTransactionManager(telemetryEntityManagerFactory);
+    }
+
+    @Bean
+    public JdbcTemplate telemetryJdbcTemplate(@Qualifier("telemetryDataSource") DataSource telemetryDataSource) {
+        return new JdbcTemplate(telemetryDataSource);
+    }
+
+    /**
+     * 遥测数据库的单写线程
+     */
+    @Bean
+    public SqliteWriteExecutor telemetryWriteExecutor(@Qualifier(TRANSACTION_MANAGER) PlatformTransactionManager transactionManager) {
+        return new SqliteWriteExecutor("telemetry-writer", transactionManager);
+    }
+
+    /**
+     * 迁移旧表：按控制面数据库中的建表语句在遥测数据库建表、整表复制后删除旧表
+     * 建表和复制在遥测库的同一事务内完成；若复制后未及删除旧表即中断，下次启动时遥测库已有该表，只执行删除
+     */
+    private void migrateFromControlDatabase(DataSource telemetryDataSource) throws SQLException {
+        try (Connection connection = telemetryDataSource.getConnection()) {
+            try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS " + CONTROL_SCHEMA)) {
+                attach.setString(1, controlDatabase);
+                attach.execute();
+            }
+            try {
+                for (String table : TELEMETRY_TABLES) {
+                    List<String> definitions = schemaDefinitions(connection, CONTROL_SCHEMA, table);
+                    if (definitions.isEmpty()) {
+                        continue;
+                    }
+                    if (schemaDefinitions(connection, "main", table).isEmpty()) {
+                        copyTable(connection, table, definitions);
+                    }
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("DROP TABLE " + CONTROL_SCHEMA + "." + table);
+                    }
+                    log.info("遥测表 {} 已从 {} 迁出", table, controlDatabase);
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DETACH DATABASE " + CONTROL_SCHEMA);
+                }
+            }
+        }
+    }
+
+    private void copyTable(Connection connection, String table, List<String> definitions) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            // 建表语句不带库名，在遥测连接上执行即建在遥测库（main）中
+            for (String definition : definitions) {
+                statement.execute(definition);
+            }
+            int rows = statement.executeUpdate("INSERT INTO main." + table + " SELECT * FROM " + CONTROL_SCHEMA + "." + table);
+            connection.commit();
+            log.info("遥测表 {} 复制 {} 行", table, rows);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 表及其索引的建表语句，表不存在时为空；表语句在前
+     */
+    private static List<String> schemaDefinitions(Connection connection, String schema, String table) throws SQLException {
+        List<String> definitions = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT sql FROM " + schema + ".sqlite_master WHERE tbl_name = ? AND sql IS NOT NULL " +
+                "ORDER BY CASE type WHEN 'table' THEN 0 ELSE 1 END")) {
+            query.setString(1, table);
+            try (ResultSet resultSet = query.executeQuery()) {
+                while (resultSet.next()) {
+                    definitions.add(resultSet.getString(1));
+                }
+            }
+        }
+        return definitions;
+    }
+}
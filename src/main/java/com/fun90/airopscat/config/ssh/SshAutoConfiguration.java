@@ -1,6 +1,7 @@
 package com.fun90.airopscat.config.ssh;
 
 import com.fun90.airopscat.service.ssh.provider.JschConnectionProvider;
+import com.fun90.airopscat.service.ssh.provider.PooledJschConnectionProvider;
 import com.fun90.airopscat.service.ssh.provider.SshConnectionProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -13,7 +14,11 @@ public class SshAutoConfiguration {
     
     @Bean
     @ConditionalOnProperty(name = "airopscat.ssh.provider", havingValue = "jsch")
-    public SshConnectionProvider jschProvider() {
+    public SshConnectionProvider jschProvider(SshProperties sshProperties) {
+        // 启用连接池时复用已认证的会话
+        if (sshProperties.getPool().isEnabled()) {
+            return new PooledJschConnectionProvider(sshProperties.getPool());
+        }
         return new JschConnectionProvider();
     }
 
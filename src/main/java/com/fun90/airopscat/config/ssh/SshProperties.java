@@ -19,8 +19,29 @@ public class SshProperties {
     @Data
     public static class PoolConfig {
         private boolean enabled = false;
+        /**
+         * 单主机最大会话数
+         */
         private int maxActive = 10;
+        /**
+         * 单主机最大空闲会话数
+         */
         private int maxIdle = 5;
+        /**
+         * 借用会话的最长等待时间（毫秒）
+         */
         private long maxWait = 30000;
+        /**
+         * 空闲会话存活时间（毫秒），超过即关闭
+         */
+        private long idleTimeout = 300000;
+        /**
+         * 空闲回收检查间隔（毫秒）
+         */
+        private long evictionInterval = 60000;
+        /**
+         * 会话保活间隔（毫秒），0表示不发送保活
+         */
+        private long keepAliveInterval = 15000;
     }
 }
\ No newline at end of file
@@ -63,9 +63,7 @@ public class AccountController {
         Page<Account> accountPage = accountService.getAccountPage(page, size, search, userId, status);
         
         // Convert to DTOs
-        List<AccountDto> accountDtos = accountPage.getContent().stream()
-                .map(account -> accountService.convertToDto(account))
-                .collect(Collectors.toList());
+        List<AccountDto> accountDtos = accountService.convertToDtos(accountPage.getContent());
 
         Map<String, Object> response = new HashMap<>();
         response.put("records", accountDtos);
@@ -100,9 +98,7 @@ public class AccountController {
         Page<Account> accountPage = accountService.getAccountPage(page, size, search, userId, null);
         
         // Convert to DTOs
-        List<AccountDto> accountDtos = accountPage.getContent().stream()
-                .map(account -> accountService.convertToDto(account))
-                .collect(Collectors.toList());
+        List<AccountDto> accountDtos = accountService.convertToDtos(accountPage.getContent());
 
         Map<String, Object> response = new HashMap<>();
         response.put("records", accountDtos);
@@ -156,9 +152,7 @@ public class AccountController {
         Page<Account> accountPage = accountService.getAccountPage(page, size, search, currentUser.getId(), null);
         
         // Convert to DTOs
-        List<AccountDto> accountDtos = accountPage.getContent().stream()
-                .map(account -> accountService.convertToDto(account))
-                .collect(Collectors.toList());
+        List<AccountDto> accountDtos = accountService.convertToDtos(accountPage.getContent());
 
         Map<String, Object> response = new HashMap<>();
         response.put("records", accountDtos);
@@ -313,6 +307,11 @@ public class AccountController {
         return ResponseEntity.ok(records);
     }
     
+    @GetMapping("/online/over-limit")
+    public ResponseEntity<Map<String, Integer>> getAccountsExceedingLimit() {
+        return ResponseEntity.ok(accountOnlineIpService.getAccountsExceedingLimit());
+    }
+    
     @DeleteMapping("/online/cleanup")
     public ResponseEntity<Void> cleanupExpiredRecords() {
         accountOnlineIpService.cleanupExpiredRecords();
@@ -1,6 +1,8 @@
 package com.fun90.airopscat.controller;
 
-import com.fun90.airopscat.model.entity.AccountTrafficStats;
+import com.fun90.airopscat.model.dto.TrafficSeries;
+import com.fun90.airopscat.model.enums.TrafficResolution;
+import com.fun90.airopscat.model.telemetry.AccountTrafficStats;
 import com.fun90.airopscat.service.AccountTrafficStatsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -37,7 +39,7 @@ public class AccountTrafficStatsController {
                 page, size, search, userId, accountId, startDate, endDate);
 
         Map<String, Object> response = new HashMap<>();
-        response.put("records", statsPage.getContent());
+        response.put("records", trafficStatsService.convertToDtos(statsPage.getContent()));
         response.put("total", statsPage.getTotalElements());
         response.put("pages", statsPage.getTotalPages());
         response.put("current", page);
@@ -46,6 +48,24 @@ public class AccountTrafficStatsController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 流量时间序列，用于按用户或账户绘制趋势图；resolution 可选 RAW / HOUR / DAY，不传时按跨度自动选择
+     */
+    @GetMapping("/series")
+    public ResponseEntity<TrafficSeries> getTrafficSeries(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) Long accountId,
+            @RequestParam(required = false) Long serverId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) TrafficResolution resolution
+    ) {
+        if (userId == null && accountId == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(trafficStatsService.getTrafficSeries(userId, accountId, serverId, startDate, endDate, resolution));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<AccountTrafficStats> getStatsById(@PathVariable Long id) {
         AccountTrafficStats stats = trafficStatsService.getStatsById(id);
@@ -65,7 +85,7 @@ public class AccountTrafficStatsController {
                 page, size, null, userId, null, null, null);
         
         Map<String, Object> response = new HashMap<>();
-        response.put("records", statsPage.getContent());
+        response.put("records", trafficStatsService.convertToDtos(statsPage.getContent()));
         response.put("total", statsPage.getTotalElements());
         response.put("pages", statsPage.getTotalPages());
         response.put("current", page);
@@ -90,7 +110,7 @@ public class AccountTrafficStatsController {
                 page, size, null, null, accountId, null, null);
         
         Map<String, Object> response = new HashMap<>();
-        response.put("records", statsPage.getContent());
+        response.put("records", trafficStatsService.convertToDtos(statsPage.getContent()));
         response.put("total", statsPage.getTotalElements());
         response.put("pages", statsPage.getTotalPages());
         response.put("current", page);
@@ -0,0 +1,83 @@
+package com.fun90.airopscat.controller;
+
+import com.fun90.airopscat.model.dto.CoreArtifact;
+import com.fun90.airopscat.service.core.CoreArtifactStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/artifacts")
+public class CoreArtifactController {
+
+    private final CoreArtifactStore artifactStore;
+
+    @Autowired
+    public CoreArtifactController(CoreArtifactStore artifactStore) {
+        this.artifactStore = artifactStore;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<CoreArtifact>> getArtifacts() throws IOException {
+        return ResponseEntity.ok(artifactStore.list());
+    }
+
+    /**
+     * 手动上传制品文件，文件名取上传的原始文件名，也可通过 fileName 指定
+     */
+    @PostMapping("/upload")
+    public ResponseEntity<?> uploadArtifact(
+            @RequestParam String coreType,
+            @RequestParam String version,
+            @RequestParam String arch,
+            @RequestParam(required = false) String fileName,
+            @RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream content = file.getInputStream()) {
+            String name = fileName != null ? fileName : file.getOriginalFilename();
+            return ResponseEntity.ok(artifactStore.store(coreType, version, arch, name, content));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+    }
+
+    /**
+     * 从 GitHub 下载制品到本地，version 为空时下载最新版本
+     */
+    @PostMapping("/fetch")
+    public ResponseEntity<?> fetchArtifact(
+            @RequestParam String coreType,
+            @RequestParam(required = false) String version,
+            @RequestParam(defaultValue = "amd64") String arch) {
+        try {
+            return ResponseEntity.ok(artifactStore.fetch(coreType, version, arch));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        } catch (Exception e) {
+            return badRequest("下载失败: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{coreType}/{version}/{arch}")
+    public ResponseEntity<?> deleteArtifact(@PathVariable String coreType, @PathVariable String version,
+                                            @PathVariable String arch) throws IOException {
+        try {
+            artifactStore.delete(coreType, version, arch);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+    }
+
+    private ResponseEntity<Map<String, String>> badRequest(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("message", message);
+        return ResponseEntity.badRequest().body(error);
+    }
+}
@@ -0,0 +1,49 @@
+package com.fun90.airopscat.controller;
+
+import com.fun90.airopscat.model.dto.JobSnapshot;
+import com.fun90.airopscat.service.JobRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/jobs")
+public class JobController {
+
+    private final JobRegistry jobRegistry;
+
+    @Autowired
+    public JobController(JobRegistry jobRegistry) {
+        this.jobRegistry = jobRegistry;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<JobSnapshot>> getJobs() {
+        return ResponseEntity.ok(jobRegistry.list());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobSnapshot> getJob(@PathVariable String id) {
+        return jobRegistry.get(id)
+                .map(job -> ResponseEntity.ok(job.snapshot()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 订阅任务事件流，断线重连时浏览器自动携带 Last-Event-ID，也可通过 after 参数指定
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribe(
+            @PathVariable String id,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            @RequestParam(required = false) Long after) {
+        long since = lastEventId != null ? lastEventId : (after != null ? after : 0);
+        return jobRegistry.get(id)
+                .map(job -> ResponseEntity.ok(jobRegistry.subscribe(job, since)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
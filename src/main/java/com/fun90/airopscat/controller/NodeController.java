@@ -7,6 +7,7 @@ import com.fun90.airopscat.model.dto.NodeRequest;
 import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.model.entity.Server;
 import com.fun90.airopscat.model.enums.NodeType;
+import com.fun90.airopscat.service.DeploymentRollout;
 import com.fun90.airopscat.service.NodeDeploymentService;
 import com.fun90.airopscat.service.NodeService;
 import com.fun90.airopscat.service.ServerService;
@@ -324,4 +325,20 @@ public class NodeController {
         List<DeploymentResult> results = nodeDeploymentService.deployNodes(nodeIds);
         return ResponseEntity.ok(results);
     }
+
+    /**
+     * 后台部署，立即返回任务ID，进度通过 /api/admin/jobs/{jobId}/events 订阅
+     * waves=true 时分批发布，每批通过健康检查后才继续，未通过时停止并回滚
+     */
+    @PostMapping("/deploy-batch/async")
+    public ResponseEntity<Map<String, Object>> deployNodesAsync(
+            @RequestBody List<Long> nodeIds,
+            @RequestParam(defaultValue = "false") boolean forcibly,
+            @RequestParam(defaultValue = "false") boolean waves) {
+        DeploymentRollout rollout = nodeDeploymentService.startDeployment(nodeIds, forcibly, waves);
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", rollout.getId());
+        response.put("totalServers", rollout.getTotalServers());
+        return ResponseEntity.ok(response);
+    }
 }
\ No newline at end of file
@@ -5,8 +5,11 @@ import com.fun90.airopscat.model.dto.CoreManagementResult;
 import com.fun90.airopscat.model.dto.ServerConfigDto;
 import com.fun90.airopscat.model.dto.ServerConfigRequest;
 import com.fun90.airopscat.model.entity.ServerConfig;
+import com.fun90.airopscat.model.enums.CoreOperation;
+import com.fun90.airopscat.service.JobRegistry;
 import com.fun90.airopscat.service.ServerConfigService;
 import com.fun90.airopscat.service.ServerService;
+import jakarta.persistence.EntityNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
@@ -151,6 +154,30 @@ public class ServerConfigController {
         }
     }
     
+    /**
+     * 后台执行内核操作，立即返回任务ID，进度通过 /api/admin/jobs/{jobId}/events 订阅
+     * waves=true 时分批执行，每批通过健康检查后才继续，未通过时停止并回滚
+     */
+    @PostMapping("/core-operation/async")
+    public ResponseEntity<?> startCoreOperation(
+            @RequestBody List<Long> serverIds,
+            @RequestParam String coreType,
+            @RequestParam CoreOperation operation,
+            @RequestParam(required = false) String version,
+            @RequestParam(defaultValue = "false") boolean waves) {
+        try {
+            JobRegistry.Job job = serverConfigService.startCoreOperation(serverIds, coreType, operation, version, waves);
+            Map<String, Object> response = new HashMap<>();
+            response.put("jobId", job.getId());
+            response.put("totalServers", job.snapshot().getTotalHosts());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | EntityNotFoundException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
     @GetMapping("/servers")
     public ResponseEntity<List<Map<String, Object>>> getServers() {
         List<Map<String, Object>> serverOptions = serverService.getAllActiveServers().stream()
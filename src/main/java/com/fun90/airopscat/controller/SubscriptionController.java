@@ -7,10 +7,12 @@ import java.nio.charset.StandardCharsets;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -39,7 +41,8 @@ public class SubscriptionController {
             @PathVariable String osName,
             @PathVariable String appName,
             @RequestParam(required = false) String view,
-            @RequestParam(required = false) String dns) {
+            @RequestParam(required = false) String dns,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         
         try {
             ApiResponseDto<SubscrptionDto> response = subscriptionService.generateSubscription(authCode, osName, appName);
@@ -59,11 +62,22 @@ public class SubscriptionController {
                         .body("错误: 生成配置文件失败");
             }
 
+            // 内容与订阅信息均未变化，客户端沿用本地副本
+            String etag = subscriptionDto.getEtag();
+            if (etagMatches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .build();
+            }
+
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.TEXT_PLAIN);
             headers.set("charset", StandardCharsets.UTF_8.name());
             // 配置文件的 更新间隔 将被设置为对应的值（单位: 小时）
             headers.set("profile-update-interval", "72");
+            if (etag != null) {
+                headers.setETag(etag);
+            }
             if (!"1".equals(view)) {
                 String fileName = URLEncoder.encode(subscriptionDto.getFileName(), StandardCharsets.UTF_8);
                 headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename*=UTF-8''" + fileName);
@@ -89,6 +103,22 @@ public class SubscriptionController {
         }
     }
 
+    private boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @GetMapping("/rules/{appType}/{ruleName}")
     public ResponseEntity<String> rule(
         @PathVariable String appType,
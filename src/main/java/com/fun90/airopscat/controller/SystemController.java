@@ -0,0 +1,28 @@
+package com.fun90.airopscat.controller;
+
+import com.fun90.airopscat.model.dto.TemplateRenderStats;
+import com.fun90.airopscat.utils.ThymeleafUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/system")
+public class SystemController {
+
+    private final ThymeleafUtil thymeleafUtil;
+
+    @Autowired
+    public SystemController(ThymeleafUtil thymeleafUtil) {
+        this.thymeleafUtil = thymeleafUtil;
+    }
+
+    @GetMapping("/template-stats")
+    public ResponseEntity<List<TemplateRenderStats>> getTemplateStats() {
+        return ResponseEntity.ok(thymeleafUtil.getRenderStats());
+    }
+}
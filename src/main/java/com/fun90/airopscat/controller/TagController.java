@@ -42,9 +42,7 @@ public class TagController {
         Page<Tag> tagPage = tagService.getTagPage(page, size, search, disabled);
         
         // Convert to DTOs
-        List<TagDto> tagDtos = tagPage.getContent().stream()
-                .map(tag -> tagService.convertToDto(tag))
-                .collect(Collectors.toList());
+        List<TagDto> tagDtos = tagService.convertToDtos(tagPage.getContent());
 
         Map<String, Object> response = new HashMap<>();
         response.put("records", tagDtos);
@@ -72,18 +70,14 @@ public class TagController {
     @GetMapping("/all")
     public ResponseEntity<List<TagDto>> getAllTags() {
         List<Tag> tags = tagService.getAllTags();
-        List<TagDto> tagDtos = tags.stream()
-                .map(tag -> tagService.convertToDto(tag))
-                .collect(Collectors.toList());
+        List<TagDto> tagDtos = tagService.convertToDtos(tags);
         return ResponseEntity.ok(tagDtos);
     }
     
     @GetMapping("/enabled")
     public ResponseEntity<List<TagDto>> getEnabledTags() {
         List<Tag> tags = tagService.getEnabledTags();
-        List<TagDto> tagDtos = tags.stream()
-                .map(tag -> tagService.convertToDto(tag))
-                .collect(Collectors.toList());
+        List<TagDto> tagDtos = tagService.convertToDtos(tags);
         return ResponseEntity.ok(tagDtos);
     }
     
@@ -196,27 +190,21 @@ public class TagController {
     @GetMapping("/{tagId}/accounts")
     public ResponseEntity<List<AccountDto>> getAccountsByTag(@PathVariable Long tagId) {
         List<Account> accounts = tagService.getAccountsByTag(tagId);
-        List<AccountDto> accountDtos = accounts.stream()
-                .map(account -> accountService.convertToDto(account))
-                .collect(Collectors.toList());
+        List<AccountDto> accountDtos = accountService.convertToDtos(accounts);
         return ResponseEntity.ok(accountDtos);
     }
     
     @GetMapping("/nodes/{nodeId}")
     public ResponseEntity<List<TagDto>> getTagsByNode(@PathVariable Long nodeId) {
         List<Tag> tags = tagService.getTagsByNode(nodeId);
-        List<TagDto> tagDtos = tags.stream()
-                .map(tag -> tagService.convertToDto(tag))
-                .collect(Collectors.toList());
+        List<TagDto> tagDtos = tagService.convertToDtos(tags);
         return ResponseEntity.ok(tagDtos);
     }
     
     @GetMapping("/accounts/{accountId}")
     public ResponseEntity<List<TagDto>> getTagsByAccount(@PathVariable Long accountId) {
         List<Tag> tags = tagService.getTagsByAccount(accountId);
-        List<TagDto> tagDtos = tags.stream()
-                .map(tag -> tagService.convertToDto(tag))
-                .collect(Collectors.toList());
+        List<TagDto> tagDtos = tagService.convertToDtos(tags);
         return ResponseEntity.ok(tagDtos);
     }
     
@@ -233,9 +221,7 @@ public class TagController {
     @GetMapping("/nodes/{nodeId}/authorized-accounts")
     public ResponseEntity<List<AccountDto>> getAuthorizedAccountsByNode(@PathVariable Long nodeId) {
         List<Account> accounts = tagService.getAuthorizedAccountsByNode(nodeId);
-        List<AccountDto> accountDtos = accounts.stream()
-                .map(account -> accountService.convertToDto(account))
-                .collect(Collectors.toList());
+        List<AccountDto> accountDtos = accountService.convertToDtos(accounts);
         return ResponseEntity.ok(accountDtos);
     }
 } 
\ No newline at end of file
@@ -44,9 +44,7 @@ public class TransactionController {
                 page, size, search, type, businessTable, businessId, startDate, endDate);
         
         // Convert to DTOs
-        List<TransactionDto> transactionDtos = transactionPage.getContent().stream()
-                .map(transaction -> transactionService.convertToDto(transaction))
-                .collect(Collectors.toList());
+        List<TransactionDto> transactionDtos = transactionService.convertToDtos(transactionPage.getContent());
 
         Map<String, Object> response = new HashMap<>();
         response.put("records", transactionDtos);
@@ -135,9 +133,7 @@ public class TransactionController {
             @PathVariable Long businessId
     ) {
         List<Transaction> transactions = transactionService.getByBusinessTableAndId(businessTable, businessId);
-        List<TransactionDto> dtos = transactions.stream()
-                .map(transaction -> transactionService.convertToDto(transaction))
-                .collect(Collectors.toList());
+        List<TransactionDto> dtos = transactionService.convertToDtos(transactions);
         
         return ResponseEntity.ok(dtos);
     }
@@ -1,5 +1,6 @@
 package com.fun90.airopscat.model.convert;
 
+import com.fun90.airopscat.model.dto.AccountNodeDto;
 import com.fun90.airopscat.model.dto.NodeDto;
 import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.utils.JsonUtil;
@@ -41,4 +42,36 @@ public class NodeConverter {
 
         return dto;
     }
+
+    public static NodeDto toDto(AccountNodeDto row) {
+        NodeDto dto = new NodeDto();
+        dto.setId(row.getNodeId());
+        dto.setServerId(row.getServerId());
+        dto.setServerIp(row.getServerIp());
+        dto.setServerHost(row.getServerHost());
+        dto.setPort(row.getPort());
+        dto.setProtocol(row.getProtocol());
+        dto.setType(row.getType());
+        dto.setTypeDescription(row.getType() == null ? "未知" : row.getType() == 0 ? "代理" : "落地");
+        dto.setOutId(row.getOutId());
+        dto.setOutName(row.getOutName());
+        dto.setOutPort(row.getOutPort());
+        dto.setOutServerHost(row.getOutServerHost());
+        dto.setLevel(row.getLevel());
+        dto.setDeployed(row.getDeployed());
+        dto.setDisabled(row.getDisabled());
+        dto.setName(row.getName());
+        dto.setRemark(row.getRemark());
+
+        // 转换JSON配置
+        if (StringUtils.hasText(row.getInbound())) {
+            dto.setInbound(JsonUtil.toObject(row.getInbound(), Map.class));
+        }
+
+        if (StringUtils.hasText(row.getRule())) {
+            dto.setRule(JsonUtil.toObject(row.getRule(), Map.class));
+        }
+
+        return dto;
+    }
 }
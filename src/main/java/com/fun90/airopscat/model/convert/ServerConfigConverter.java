@@ -16,6 +16,8 @@ public class ServerConfigConverter {
         dto.setConfig(serverConfig.getConfig());
         dto.setConfigType(serverConfig.getConfigType());
         dto.setPath(serverConfig.getPath());
+        dto.setConfigHash(serverConfig.getConfigHash());
+        dto.setDeployedHash(serverConfig.getDeployedHash());
         dto.setCreateTime(serverConfig.getCreateTime());
         dto.setUpdateTime(serverConfig.getUpdateTime());
         
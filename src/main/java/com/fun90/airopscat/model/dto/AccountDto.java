@@ -30,7 +30,11 @@ public class AccountDto {
     private Long usedDownloadBytes;  // 已使用下载流量
     private Long totalUsedBytes;     // 总使用流量
     private Double usagePercentage;  // 使用百分比
+    private Long periodUploadBytes;   // 当前周期上传流量
+    private Long periodDownloadBytes; // 当前周期下载流量
     
     // 在线IP信息
     private List<AccountOnlineIpDto> onlineIps; // 在线IP列表
+    private Integer onlineIpCount;  // 在线IP数
+    private LocalDateTime lastOnlineTime; // 最近在线时间
 }
\ No newline at end of file
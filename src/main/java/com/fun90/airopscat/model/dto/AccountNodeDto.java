@@ -0,0 +1,38 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 账户可用节点投影（账户标签 ⋈ 节点标签 ⋈ 节点 ⋈ 服务器 一次查询得到）
+ * 字段顺序与 TagRepository 中的构造表达式一致
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountNodeDto {
+    private Long accountId;
+    private Long nodeId;
+    private Long serverId;
+    private String serverIp;
+    private String serverHost;
+    private Integer port;
+    private String protocol;
+    private Integer type;
+    private String inbound;
+    private Long outId;
+    private String outName;
+    private Integer outPort;
+    private String outServerHost;
+    private String rule;
+    private Integer level;
+    private Integer deployed;
+    private Integer disabled;
+    private String name;
+    private String remark;
+
+    public boolean isActive() {
+        return deployed != null && deployed == 1 && (disabled == null || disabled == 0);
+    }
+}
@@ -15,4 +15,6 @@ public class AccountTrafficStatsDto {
     private Long uploadBytes;
     private Long downloadBytes;
     private Long totalBytes; // 上传和下载流量的总和
+    private LocalDateTime createTime;
+    private LocalDateTime updateTime;
 }
\ No newline at end of file
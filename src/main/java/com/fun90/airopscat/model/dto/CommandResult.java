@@ -10,7 +10,9 @@ public class CommandResult {
     private int exitStatus;
     private String stdout;
     private String stderr;
+    private boolean timedOut;   // 超过命令期限被取消
+    private boolean truncated;  // 输出超过上限被截断
     public boolean isSuccess() {
-        return exitStatus == 0;
+        return exitStatus == 0 && !timedOut;
     }
 }
\ No newline at end of file
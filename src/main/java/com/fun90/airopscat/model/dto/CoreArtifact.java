@@ -0,0 +1,23 @@
+package com.fun90.airopscat.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本地缓存的内核制品：某个版本、某种架构的一组文件及其SHA-256
+ */
+@Data
+public class CoreArtifact {
+    private String coreType;         // xray / hysteria
+    private String version;          // 不带 v 前缀，如 1.8.24
+    private String arch;             // amd64 / arm64
+    private Map<String, String> files = new LinkedHashMap<>();  // 文件名 -> SHA-256
+    private long totalSize;
+
+    @JsonIgnore
+    private Path directory;
+}
@@ -10,6 +10,17 @@ import java.util.Map;
  */
 @Data
 public class CoreManagementResult {
+
+    /**
+     * 扩展数据键：配置更新前的备份路径
+     */
+    public static final String META_BACKUP_PATH = "backupPath";
+
+    /**
+     * 扩展数据键：配置文件路径
+     */
+    public static final String META_CONFIG_PATH = "configPath";
+
     /**
      * 操作是否成功
      */
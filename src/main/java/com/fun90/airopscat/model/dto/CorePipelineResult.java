@@ -0,0 +1,68 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 内核操作流水线执行结果
+ */
+@Data
+public class CorePipelineResult {
+    /**
+     * 全部步骤是否成功
+     */
+    private boolean success;
+
+    /**
+     * 内核类型
+     */
+    private String coreType;
+
+    /**
+     * 服务器地址
+     */
+    private String serverAddress;
+
+    /**
+     * 结果消息，失败时为失败步骤的消息
+     */
+    private String message;
+
+    /**
+     * 失败的操作，连接失败时为空
+     */
+    private String failedOperation;
+
+    /**
+     * 已执行步骤的结果，duration 为单步耗时
+     */
+    private List<CoreManagementResult> steps = new ArrayList<>();
+
+    /**
+     * 是否执行过回滚
+     */
+    private boolean rolledBack;
+
+    /**
+     * 回滚步骤的结果
+     */
+    private List<CoreManagementResult> rollbackSteps = new ArrayList<>();
+
+    /**
+     * 建立SSH连接耗时（毫秒）
+     */
+    private long connectMillis;
+
+    /**
+     * 总耗时（毫秒）
+     */
+    private long totalMillis;
+
+    /**
+     * 开始时间
+     */
+    private LocalDateTime operationTime;
+}
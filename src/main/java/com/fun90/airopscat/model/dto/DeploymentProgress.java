@@ -0,0 +1,24 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 部署批次进度快照
+ */
+@Data
+public class DeploymentProgress {
+    private String rolloutId;
+    private LocalDateTime startTime;
+    private int totalServers;        // 本批次涉及的服务器数
+    private int completedServers;    // 部署成功的服务器数
+    private int failedServers;       // 存在失败节点的服务器数
+    private List<Long> runningServers;  // 正在部署的服务器
+    private int succeededNodes;      // 部署成功的节点数
+    private int failedNodes;         // 部署失败的节点数
+    private int unchangedNodes;      // 配置没有变化而跳过的节点数
+    private boolean done;
+    private long elapsedMillis;
+}
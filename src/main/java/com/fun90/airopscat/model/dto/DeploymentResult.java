@@ -12,4 +12,12 @@ public class DeploymentResult {
     private Long serverId;
     private boolean success;
     private String message;
-}
\ No newline at end of file
+    /**
+     * 配置与服务器上已生效的一致，未上传也未重启
+     */
+    private boolean unchanged;
+
+    public DeploymentResult(Long nodeId, Long serverId, boolean success, String message) {
+        this(nodeId, serverId, success, message, false);
+    }
+}
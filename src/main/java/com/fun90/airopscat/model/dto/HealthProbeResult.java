@@ -0,0 +1,15 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+/**
+ * 部署后健康检查结果
+ */
+@Data
+public class HealthProbeResult {
+    private String serverAddress;
+    private boolean healthy;
+    private String message;          // 未通过时为最后一次检查的失败项
+    private int attempts;            // 检查次数，服务启动较慢时会重复检查直到超出时限
+    private long elapsedMillis;
+}
@@ -0,0 +1,21 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台任务的单个步骤事件，按序号推送给订阅方
+ */
+@Data
+public class JobEvent {
+    private long id;                 // 任务内递增的序号，作为SSE的事件ID，断线重连时据此续传
+    private String jobId;
+    private Long serverId;
+    private String host;
+    private String step;             // plan/connect/config/restart/sync/skip/rollback/done/failed，任务结束时为 finished
+    private boolean success;
+    private String message;
+    private long elapsedMillis;      // 该步骤耗时
+    private LocalDateTime time;
+}
@@ -0,0 +1,25 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台任务状态快照
+ */
+@Data
+public class JobSnapshot {
+    private String id;
+    private String type;             // deploy / core
+    private String description;
+    private LocalDateTime createTime;
+    private LocalDateTime finishTime;
+    private int totalHosts;
+    private int completedHosts;      // 全部步骤成功的主机数
+    private int failedHosts;         // 存在失败步骤的主机数
+    private boolean done;
+    private boolean success;
+    private String summary;
+    private long firstEventId;       // 仍保留在内存中的最早事件序号
+    private long lastEventId;
+}
@@ -11,6 +11,8 @@ public class ServerConfigDto {
     private String config;
     private String configType;
     private String path;
+    private String configHash;
+    private String deployedHash;
     private LocalDateTime createTime;
     private LocalDateTime updateTime;
     
@@ -64,4 +64,16 @@ public class SshConfig {
      */
     @Builder.Default
     private Integer timeout = 30000;
+    
+    /**
+     * 单条命令执行期限（毫秒），默认10分钟，0表示不限制
+     */
+    @Builder.Default
+    private Long commandTimeout = 600000L;
+    
+    /**
+     * 单条命令stdout/stderr各自保留的最大字节数，默认4MB，超出部分丢弃
+     */
+    @Builder.Default
+    private Integer maxOutputBytes = 4 * 1024 * 1024;
 }
\ No newline at end of file
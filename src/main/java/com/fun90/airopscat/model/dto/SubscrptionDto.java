@@ -17,4 +17,9 @@ public class SubscrptionDto {
     private Long usedFlow;
 
     private Long totalFlow;
+
+    /**
+     * 内容及订阅信息的摘要，用于 ETag / If-None-Match
+     */
+    private String etag;
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+/**
+ * 模板渲染统计
+ */
+@Data
+public class TemplateRenderStats {
+    private String templateName;
+    private long renders;         // 渲染次数
+    private long cacheHits;       // 命中已解析模板的次数
+    private long cacheMisses;     // 需要重新解析的次数
+    private double hitRate;       // 命中率
+    private double avgMillis;     // 平均渲染耗时
+    private double maxMillis;     // 最大渲染耗时
+}
@@ -0,0 +1,33 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 流量采集单次运行报告
+ */
+@Data
+public class TrafficCollectionReport {
+    private LocalDateTime startTime;
+    private int totalHosts;       // 本轮需要采集的服务器数
+    private int completedHosts;   // 采集成功的服务器数
+    private int failedHosts;      // 采集失败的服务器数（不含超时）
+    private int timedOutHosts;    // 超过单机期限的服务器数
+    private int skippedHosts;     // 服务器不可用或配置解析失败而跳过的数量
+    private int processedUsers;   // 成功写入流量的用户数
+    private long p50Millis;       // 单机采集耗时中位数
+    private long p99Millis;       // 单机采集耗时P99
+    private long maxMillis;       // 单机采集最大耗时
+    private long elapsedMillis;   // 本轮总耗时
+
+    public boolean hasFailures() {
+        return failedHosts > 0 || timedOutHosts > 0 || skippedHosts > 0;
+    }
+
+    public String getSummary() {
+        return String.format("服务器: %d, 完成: %d, 失败: %d, 超时: %d, 跳过: %d, 用户: %d, P50: %dms, P99: %dms, 总耗时: %dms",
+                totalHosts, completedHosts, failedHosts, timedOutHosts, skippedHosts, processedUsers,
+                p50Millis, p99Millis, elapsedMillis);
+    }
+}
@@ -0,0 +1,37 @@
+package com.fun90.airopscat.model.dto;
+
+import com.fun90.airopscat.model.enums.TrafficResolution;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流量时间序列查询结果，时间均为epoch秒
+ */
+@Data
+public class TrafficSeries {
+    /**
+     * 实际读取的分辨率
+     */
+    private TrafficResolution resolution;
+    private long from;
+    private long to;
+    private long totalUploadBytes;
+    private long totalDownloadBytes;
+    private List<Point> points = new ArrayList<>();
+
+    /**
+     * 单个时间桶，bucket 为桶起点
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Point {
+        private long bucket;
+        private long uploadBytes;
+        private long downloadBytes;
+    }
+}
@@ -0,0 +1,16 @@
+package com.fun90.airopscat.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单个账户一次采集的流量增量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrafficUsage {
+    private long uploadBytes;
+    private long downloadBytes;
+}
@@ -46,6 +46,12 @@ public class Account {
     
     private Integer disabled = 0;
     
+    /**
+     * 超出在线IP上限被临时停用的截止时间，未停用为空
+     */
+    @Column(name = "suspended_until")
+    private LocalDateTime suspendedUntil;
+    
     @Column(name = "user_id")
     private Long userId;
     
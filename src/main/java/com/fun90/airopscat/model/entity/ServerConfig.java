@@ -25,6 +25,18 @@ public class ServerConfig {
     private String configType;
 
     private String path;
+
+    /**
+     * 配置内容的规范化摘要
+     */
+    @Column(name = "config_hash", length = 64)
+    private String configHash;
+
+    /**
+     * 最近一次在服务器上确认生效的配置摘要
+     */
+    @Column(name = "deployed_hash", length = 64)
+    private String deployedHash;
     
     private LocalDateTime createTime;
     
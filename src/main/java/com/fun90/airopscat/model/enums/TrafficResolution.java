@@ -0,0 +1,35 @@
+package com.fun90.airopscat.model.enums;
+
+/**
+ * 流量时间序列的分辨率，桶宽以秒计
+ */
+public enum TrafficResolution {
+    RAW(900, "15分钟"),
+    HOUR(3600, "每小时"),
+    DAY(86400, "每天");
+
+    private final int seconds;
+    private final String description;
+
+    TrafficResolution(int seconds, String description) {
+        this.seconds = seconds;
+        this.description = description;
+    }
+
+    public int getSeconds() {
+        return seconds;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public static TrafficResolution fromSeconds(int seconds) {
+        for (TrafficResolution resolution : TrafficResolution.values()) {
+            if (resolution.seconds == seconds) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.fun90.airopscat.model.event;
+
+import lombok.Data;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 账户变更事件（账户信息、状态、标签关联或流量变化）
+ */
+@Data
+public class AccountChangedEvent {
+    private final Collection<Long> accountIds;
+    /**
+     * 是否影响节点部署（流量变化等仅影响订阅展示的变更为false）
+     */
+    private final boolean deploymentRelevant;
+
+    public static AccountChangedEvent of(Long accountId) {
+        return new AccountChangedEvent(List.of(accountId), true);
+    }
+}
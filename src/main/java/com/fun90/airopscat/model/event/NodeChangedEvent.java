@@ -0,0 +1,22 @@
+package com.fun90.airopscat.model.event;
+
+import lombok.Data;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 节点变更事件（节点配置、状态、标签关联或部署状态变化）
+ */
+@Data
+public class NodeChangedEvent {
+    private final Collection<Long> nodeIds;
+    /**
+     * 是否需要重新部署（部署完成后的状态回写为false）
+     */
+    private final boolean deploymentRelevant;
+
+    public static NodeChangedEvent of(Long nodeId) {
+        return new NodeChangedEvent(List.of(nodeId), true);
+    }
+}
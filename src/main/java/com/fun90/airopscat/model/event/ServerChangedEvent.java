@@ -0,0 +1,11 @@
+package com.fun90.airopscat.model.event;
+
+import lombok.Data;
+
+/**
+ * 服务器变更事件（地址、状态等变化会影响其上所有节点的订阅内容）
+ */
+@Data
+public class ServerChangedEvent {
+    private final Long serverId;
+}
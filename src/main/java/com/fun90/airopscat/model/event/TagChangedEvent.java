@@ -0,0 +1,11 @@
+package com.fun90.airopscat.model.event;
+
+import lombok.Data;
+
+/**
+ * 标签变更事件（标签本身的启用、禁用或删除）
+ */
+@Data
+public class TagChangedEvent {
+    private final Long tagId;
+}
@@ -1,4 +1,4 @@
-package com.fun90.airopscat.model.entity;
+package com.fun90.airopscat.model.telemetry;
 
 import jakarta.persistence.*;
 import lombok.Data;
@@ -0,0 +1,39 @@
+package com.fun90.airopscat.model.telemetry;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 账户用量汇总，每个账户一行，由流量写入和心跳落库时增量更新
+ */
+@Data
+@Entity
+@Table(name = "account_usage_summary")
+public class AccountUsageSummary {
+    @Id
+    private Long accountId;
+    
+    private Long totalUploadBytes = 0L;
+    
+    private Long totalDownloadBytes = 0L;
+    
+    /**
+     * 当前计费周期的用量，周期结束后视为0
+     */
+    private Long periodUploadBytes = 0L;
+    
+    private Long periodDownloadBytes = 0L;
+    
+    private LocalDateTime periodEnd;
+    
+    private LocalDateTime lastOnlineTime;
+    
+    /**
+     * 最近一次心跳落库时的在线IP数
+     */
+    private Integer onlineIpCount = 0;
+    
+    private LocalDateTime updateTime;
+}
@@ -66,4 +66,11 @@ public interface AccountRepository extends JpaRepository<Account, Long>, JpaSpec
     int disableExpiredAccounts(@Param("accountIds") List<Long> accountIds, @Param("updateTime") LocalDateTime updateTime);
 
     List<Account> findByAccountNoIn(List<String> accountNos);
+
+    List<Account> findBySuspendedUntilIsNotNull();
+
+    @Query("UPDATE Account a SET a.suspendedUntil = :suspendedUntil WHERE a.accountNo = :accountNo")
+    @Modifying
+    @Transactional
+    int updateSuspendedUntil(@Param("accountNo") String accountNo, @Param("suspendedUntil") LocalDateTime suspendedUntil);
 }
\ No newline at end of file
@@ -5,10 +5,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -48,4 +52,26 @@ public interface NodeRepository extends JpaRepository<Node, Long>, JpaSpecificat
     boolean existsByServerIdAndPortAndIdNot(Long serverId, Integer port, Long id);
     
     boolean existsByServerIdAndPort(Long serverId, Integer port);
-}
\ No newline at end of file
+
+    @Query("UPDATE Node n SET n.deployed = 1, n.updateTime = :updateTime WHERE n.id IN :nodeIds")
+    @Modifying
+    @Transactional
+    int markDeployed(@Param("nodeIds") Collection<Long> nodeIds, @Param("updateTime") LocalDateTime updateTime);
+
+    @Query("UPDATE Node n SET n.deployed = 0, n.updateTime = :updateTime WHERE n.id IN :nodeIds")
+    @Modifying
+    @Transactional
+    int markUndeployed(@Param("nodeIds") Collection<Long> nodeIds, @Param("updateTime") LocalDateTime updateTime);
+
+    /**
+     * 节点本身及以其为出站节点的节点所在的服务器
+     */
+    @Query("SELECT DISTINCT n.serverId FROM Node n WHERE n.id IN :nodeIds OR n.outId IN :nodeIds")
+    List<Long> findServerIdsByNodeIdsOrOutIds(@Param("nodeIds") Collection<Long> nodeIds);
+
+    /**
+     * 出站节点位于指定服务器上的节点所在的服务器
+     */
+    @Query("SELECT DISTINCT n.serverId FROM Node n WHERE n.outNode.serverId IN :serverIds")
+    List<Long> findServerIdsByOutServerIds(@Param("serverIds") Collection<Long> serverIds);
+}
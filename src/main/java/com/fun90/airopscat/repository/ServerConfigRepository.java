@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,4 +24,10 @@ public interface ServerConfigRepository extends JpaRepository<ServerConfig, Long
     
     @Query("SELECT COUNT(sc) FROM ServerConfig sc WHERE sc.configType = :configType")
     long countByConfigType(@Param("configType") String configType);
-}
\ No newline at end of file
+
+    /**
+     * 已有部署配置的服务器
+     */
+    @Query("SELECT DISTINCT sc.serverId FROM ServerConfig sc WHERE sc.serverId IN :serverIds")
+    List<Long> findConfiguredServerIds(@Param("serverIds") Collection<Long> serverIds);
+}
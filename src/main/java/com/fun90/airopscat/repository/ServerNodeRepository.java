@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,4 +15,7 @@ public interface ServerNodeRepository extends JpaRepository<ServerNode, Long> {
     
     @Query("SELECT sn FROM ServerNode sn WHERE sn.id = :nodeId")
     List<ServerNode> findByNodeId(@Param("nodeId") Long nodeId);
-}
\ No newline at end of file
+
+    @Query("SELECT DISTINCT sn.serverId FROM ServerNode sn WHERE sn.id IN :nodeIds")
+    List<Long> findServerIdsByNodeIds(@Param("nodeIds") Collection<Long> nodeIds);
+}
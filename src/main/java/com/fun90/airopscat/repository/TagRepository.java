@@ -1,5 +1,6 @@
 package com.fun90.airopscat.repository;
 
+import com.fun90.airopscat.model.dto.AccountNodeDto;
 import com.fun90.airopscat.model.entity.Account;
 import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.model.entity.Tag;
@@ -11,6 +12,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +37,12 @@ public interface TagRepository extends JpaRepository<Tag, Long>, JpaSpecificatio
     
     @Query("SELECT COUNT(a) FROM Account a JOIN a.tags t WHERE t.id = :tagId")
     int countAccountsByTagId(@Param("tagId") Long tagId);
+
+    @Query("SELECT t.id, COUNT(n) FROM Node n JOIN n.tags t WHERE t.id IN :tagIds GROUP BY t.id")
+    List<Object[]> countNodesByTagIds(@Param("tagIds") Collection<Long> tagIds);
+
+    @Query("SELECT t.id, COUNT(a) FROM Account a JOIN a.tags t WHERE t.id IN :tagIds GROUP BY t.id")
+    List<Object[]> countAccountsByTagIds(@Param("tagIds") Collection<Long> tagIds);
     
     @Query("SELECT n FROM Node n JOIN n.tags t WHERE t.id = :tagId")
     List<Node> findNodesByTagId(@Param("tagId") Long tagId);
@@ -48,6 +56,32 @@ public interface TagRepository extends JpaRepository<Tag, Long>, JpaSpecificatio
     @Query("SELECT a FROM Account a JOIN a.tags t WHERE t.id IN :tagIds AND a.disabled = 0 AND (a.toDate IS NULL OR a.toDate > :currentTime)")
     List<Account> findActiveAccountsByTagIds(@Param("tagIds") List<Long> tagIds, @Param("currentTime") LocalDateTime currentTime);
 
+    @Query("SELECT DISTINCT n FROM Node n JOIN FETCH n.server JOIN n.tags t JOIN t.accounts a WHERE a.id IN :accountIds")
+    List<Node> findNodesByAccountIds(@Param("accountIds") Collection<Long> accountIds);
+
+    @Query("SELECT DISTINCT a FROM Account a JOIN a.tags t JOIN t.nodes n WHERE n.id = :nodeId")
+    List<Account> findAccountsByNodeId(@Param("nodeId") Long nodeId);
+
+    @Query("SELECT DISTINCT n.id, a FROM Account a JOIN a.tags t JOIN t.nodes n " +
+           "WHERE n.id IN :nodeIds AND a.disabled = 0 AND (a.toDate IS NULL OR a.toDate > :currentTime)")
+    List<Object[]> findActiveAccountsByNodeIds(@Param("nodeIds") Collection<Long> nodeIds, @Param("currentTime") LocalDateTime currentTime);
+
+    @Query("SELECT DISTINCT new com.fun90.airopscat.model.dto.AccountNodeDto(" +
+           "a.id, n.id, n.serverId, s.ip, s.host, n.port, n.protocol, n.type, n.inbound, " +
+           "n.outId, o.name, o.port, os.host, n.rule, n.level, n.deployed, n.disabled, n.name, n.remark) " +
+           "FROM Account a JOIN a.tags t JOIN t.nodes n JOIN n.server s " +
+           "LEFT JOIN n.outNode o LEFT JOIN o.server os " +
+           "WHERE a.id IN :accountIds")
+    List<AccountNodeDto> findAccountNodesByAccountIds(@Param("accountIds") Collection<Long> accountIds);
+
+    @Query("SELECT DISTINCT new com.fun90.airopscat.model.dto.AccountNodeDto(" +
+           "a.id, n.id, n.serverId, s.ip, s.host, n.port, n.protocol, n.type, n.inbound, " +
+           "n.outId, o.name, o.port, os.host, n.rule, n.level, n.deployed, n.disabled, n.name, n.remark) " +
+           "FROM Account a JOIN a.tags t JOIN t.nodes n JOIN n.server s " +
+           "LEFT JOIN n.outNode o LEFT JOIN o.server os " +
+           "WHERE a.id IN :accountIds AND n.deployed = 1 AND (n.disabled IS NULL OR n.disabled = 0)")
+    List<AccountNodeDto> findActiveAccountNodesByAccountIds(@Param("accountIds") Collection<Long> accountIds);
+
     @Query("SELECT DISTINCT t FROM Tag t JOIN t.nodes n WHERE n.id IN :nodeIds")
     List<Tag> findByNodeIdIn(@Param("nodeIds") List<Long> nodeIds);
 
@@ -77,4 +111,10 @@ public interface TagRepository extends JpaRepository<Tag, Long>, JpaSpecificatio
     @Modifying
     @Query(value = "DELETE FROM account_tag WHERE account_id = :accountId AND tag_id = :tagId", nativeQuery = true)
     void deleteAccountTag(@Param("accountId") Long accountId, @Param("tagId") Long tagId);
-} 
\ No newline at end of file
+
+    @Query("SELECT DISTINCT n.serverId FROM Node n JOIN n.tags t JOIN t.accounts a WHERE a.id IN :accountIds")
+    List<Long> findServerIdsByAccountIds(@Param("accountIds") Collection<Long> accountIds);
+
+    @Query("SELECT DISTINCT n.serverId FROM Node n JOIN n.tags t WHERE t.id = :tagId")
+    List<Long> findServerIdsByTagId(@Param("tagId") Long tagId);
+}
@@ -1,6 +1,6 @@
-package com.fun90.airopscat.repository;
+package com.fun90.airopscat.repository.telemetry;
 
-import com.fun90.airopscat.model.entity.AccountOnlineIp;
+import com.fun90.airopscat.model.telemetry.AccountOnlineIp;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -1,6 +1,6 @@
-package com.fun90.airopscat.repository;
+package com.fun90.airopscat.repository.telemetry;
 
-import com.fun90.airopscat.model.entity.AccountTrafficStats;
+import com.fun90.airopscat.model.telemetry.AccountTrafficStats;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -52,4 +52,14 @@ public interface AccountTrafficStatsRepository extends JpaRepository<AccountTraf
     @Query("SELECT ats FROM AccountTrafficStats ats WHERE ats.accountId = :accountId AND :currentTime BETWEEN ats.periodStart AND ats.periodEnd")
     List<AccountTrafficStats> findByAccountIdAndCurrentTime(@Param("accountId") Long accountId, 
                                                            @Param("currentTime") LocalDateTime currentTime);
+    
+    /**
+     * 批量查找多个账户当前时间所在周期的流量统计记录
+     * @param accountIds 账户ID列表
+     * @param currentTime 当前时间
+     * @return 匹配的流量统计记录列表
+     */
+    @Query("SELECT ats FROM AccountTrafficStats ats WHERE ats.accountId IN :accountIds AND :currentTime BETWEEN ats.periodStart AND ats.periodEnd")
+    List<AccountTrafficStats> findByAccountIdInAndCurrentTime(@Param("accountIds") List<Long> accountIds,
+                                                              @Param("currentTime") LocalDateTime currentTime);
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.fun90.airopscat.repository.telemetry;
+
+import com.fun90.airopscat.model.telemetry.AccountUsageSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 账户用量汇总仓库
+ */
+@Repository
+public interface AccountUsageSummaryRepository extends JpaRepository<AccountUsageSummary, Long> {
+}
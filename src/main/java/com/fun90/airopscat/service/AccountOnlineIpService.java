@@ -3,20 +3,28 @@ package com.fun90.airopscat.service;
 import com.fun90.airopscat.model.dto.AccountOnlineIpDto;
 import com.fun90.airopscat.model.dto.ClientRequest;
 import com.fun90.airopscat.model.entity.Account;
-import com.fun90.airopscat.model.entity.AccountOnlineIp;
+import com.fun90.airopscat.model.telemetry.AccountOnlineIp;
 import com.fun90.airopscat.model.entity.User;
-import com.fun90.airopscat.repository.AccountOnlineIpRepository;
+import com.fun90.airopscat.repository.telemetry.AccountOnlineIpRepository;
 import com.fun90.airopscat.repository.AccountRepository;
 import com.fun90.airopscat.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import com.fun90.airopscat.utils.BatchLoader;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
@@ -25,9 +33,24 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class AccountOnlineIpService {
 
+    private static final String UPSERT_ONLINE_SQL =
+            "INSERT INTO account_online_ip (account_no, client_ip, node_ip, last_online_time, create_time, update_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT(account_no, client_ip, node_ip) DO UPDATE SET " +
+            "last_online_time = excluded.last_online_time, update_time = excluded.update_time";
+
     private final AccountOnlineIpRepository accountOnlineIpRepository;
     private final AccountRepository accountRepository;
     private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SqliteWriteExecutor writeExecutor;
+    private final OnlinePresenceIndex presenceIndex;
+    private final AccountUsageSummaryService usageSummaryService;
+
+    /**
+     * 尚未落库的心跳：(accountNo, clientIp, nodeIp) -> 最新在线时间
+     */
+    private final Map<OnlineKey, LocalDateTime> pendingHeartbeats = new ConcurrentHashMap<>();
     
     @Value("${airopscat.online.check-minutes:5}")
     private int checkMinutes;
@@ -35,156 +58,174 @@ public class AccountOnlineIpService {
     @Autowired
     public AccountOnlineIpService(AccountOnlineIpRepository accountOnlineIpRepository, 
                                  AccountRepository accountRepository,
-                                 UserRepository userRepository) {
+                                 UserRepository userRepository,
+                                 @Qualifier("telemetryJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                 @Qualifier("telemetryWriteExecutor") SqliteWriteExecutor writeExecutor,
+                                 OnlinePresenceIndex presenceIndex,
+                                 AccountUsageSummaryService usageSummaryService) {
         this.accountOnlineIpRepository = accountOnlineIpRepository;
         this.accountRepository = accountRepository;
         this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeExecutor = writeExecutor;
+        this.presenceIndex = presenceIndex;
+        this.usageSummaryService = usageSummaryService;
     }
 
     /**
      * 处理客户端在线状态更新
+     * 更新在线索引并写入内存缓冲（同一账户/客户端IP/节点只保留最新时间），由定时任务批量落库；
+     * 不存在的账户的心跳丢弃
      * @param request 客户端请求
      * @param nodeIp 节点IP
      */
-    @Transactional
     public void updateOnlineStatus(ClientRequest request, String nodeIp) {
-        String accountNo = request.getAccountNo();
-        String clientIp = request.getClientIp();
-        
-        // 使用重试机制处理数据库锁定问题
-        int maxRetries = 3;
-        int retryCount = 0;
-        
-        while (retryCount < maxRetries) {
-            try {
-                // 使用 merge 操作替代 find + save，减少数据库操作
-                updateOnlineStatusInternal(accountNo, clientIp, nodeIp);
-                return; // 成功则退出
-            } catch (Exception e) {
-                retryCount++;
-                if (e.getMessage() != null && e.getMessage().contains("database is locked")) {
-                    if (retryCount < maxRetries) {
-                        log.warn("Database locked when updating online status for account {}, retrying ({}/{})", 
-                                accountNo, retryCount, maxRetries);
-                        // 等待一段时间后重试
-                        try {
-                            Thread.sleep(100 * retryCount); // 递增等待时间
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new RuntimeException("Update online status interrupted", ie);
-                        }
-                    } else {
-                        log.error("Failed to update online status for account {} after {} retries", accountNo, maxRetries);
-                        throw new RuntimeException("Failed to update online status after " + maxRetries + " retries", e);
-                    }
-                } else {
-                    // 非数据库锁定错误，直接抛出
-                    log.error("Unexpected error when updating online status for account {}: {}", accountNo, e.getMessage());
-                    throw e;
-                }
-            }
+        if (!StringUtils.hasText(request.getAccountNo()) || !StringUtils.hasText(request.getClientIp())) {
+            log.debug("Ignore online heartbeat without accountNo or clientIp from node {}", nodeIp);
+            return;
         }
-    }
-    
-    private void updateOnlineStatusInternal(String accountNo, String clientIp, String nodeIp) {
         LocalDateTime now = LocalDateTime.now();
-        // 使用传统的 find + save 方式，但配合重试机制
-        Optional<AccountOnlineIp> recordOpt = accountOnlineIpRepository.findByAccountNoAndClientIpAndNodeIp(accountNo, clientIp, nodeIp);
-        if (recordOpt.isPresent()) {
-            AccountOnlineIp record = recordOpt.get();
-            record.setLastOnlineTime(now);
-            accountOnlineIpRepository.save(record);
-        } else {
-            AccountOnlineIp newRecord = new AccountOnlineIp();
-            newRecord.setAccountNo(accountNo);
-            newRecord.setClientIp(clientIp);
-            newRecord.setNodeIp(nodeIp);
-            newRecord.setLastOnlineTime(now);
-            accountOnlineIpRepository.save(newRecord);
+        if (!presenceIndex.record(request.getAccountNo(), request.getClientIp(), nodeIp, now)) {
+            log.debug("Ignore online heartbeat for unknown account {} from node {}", request.getAccountNo(), nodeIp);
+            return;
+        }
+        pendingHeartbeats.put(new OnlineKey(request.getAccountNo(), request.getClientIp(), nodeIp), now);
+    }
+
+    /**
+     * 将缓冲的心跳批量写入数据库（经写线程以单事务批量UPSERT），同一事务内更新账户的最近在线时间和在线IP数
+     * 写入成功后仅移除未被新心跳覆盖的条目；失败时保留，下次重试
+     */
+    @Scheduled(fixedDelayString = "${airopscat.online.flush-interval-ms:5000}")
+    public void flushHeartbeats() {
+        if (pendingHeartbeats.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<OnlineKey, LocalDateTime>> snapshot = pendingHeartbeats.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batchArgs = snapshot.stream()
+                .map(entry -> new Object[]{
+                        entry.getKey().getAccountNo(),
+                        entry.getKey().getClientIp(),
+                        entry.getKey().getNodeIp(),
+                        Timestamp.valueOf(entry.getValue()),
+                        now,
+                        now})
+                .collect(Collectors.toList());
+        try {
+            List<AccountUsageSummaryService.PresenceDelta> presenceDeltas = toPresenceDeltas(snapshot);
+            writeExecutor.run(() -> {
+                jdbcTemplate.batchUpdate(UPSERT_ONLINE_SQL, batchArgs);
+                usageSummaryService.recordPresence(presenceDeltas);
+            });
+            snapshot.forEach(entry -> pendingHeartbeats.remove(entry.getKey(), entry.getValue()));
+            log.debug("Flushed {} online heartbeats", snapshot.size());
+        } catch (Exception e) {
+            log.warn("Failed to flush {} online heartbeats, will retry: {}", snapshot.size(), e.getMessage());
         }
     }
 
+    /**
+     * 按账户汇总本批心跳：最近在线时间取最大值，在线IP数取在线索引中的当前值
+     * 账户编号在控制面数据库中解析为账户ID，已删除的账户忽略
+     */
+    private List<AccountUsageSummaryService.PresenceDelta> toPresenceDeltas(List<Map.Entry<OnlineKey, LocalDateTime>> snapshot) {
+        Map<String, LocalDateTime> lastSeenByAccountNo = snapshot.stream()
+                .collect(Collectors.toMap(entry -> entry.getKey().getAccountNo(), Map.Entry::getValue,
+                        (a, b) -> a.isAfter(b) ? a : b));
+        return BatchLoader.load(lastSeenByAccountNo.keySet(), accountRepository::findByAccountNoIn, Account::getAccountNo)
+                .values().stream()
+                .map(account -> new AccountUsageSummaryService.PresenceDelta(account.getId(),
+                        lastSeenByAccountNo.get(account.getAccountNo()),
+                        presenceIndex.countOnlineIps(account.getAccountNo())))
+                .collect(Collectors.toList());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushHeartbeats();
+    }
+
     /**
      * 获取指定accountNo的在线记录（只返回在配置时间窗口内的记录）
      */
     public List<AccountOnlineIpDto> getOnlineRecordsByAccountNo(String accountNo) {
-        // 计算检查时间范围（当前时间往前推checkMinutes分钟）
-        LocalDateTime checkStartTime = LocalDateTime.now().minusMinutes(checkMinutes);
-        
-        // 直接查询在时间窗口内的记录
-        List<AccountOnlineIp> records = accountOnlineIpRepository.findByAccountNoAndLastOnlineTimeAfter(accountNo, checkStartTime);
-        return convertToDtoList(records);
+        return convertToDtoList(toRecords(presenceIndex.getPresencesByAccount(accountNo)));
+    }
+
+    /**
+     * 获取指定账户的在线记录，账户和用户已知，不访问数据库
+     */
+    public List<AccountOnlineIpDto> getOnlineRecords(Account account, User user) {
+        Map<String, Account> accountMap = Map.of(account.getAccountNo(), account);
+        Map<Long, User> userMap = user != null ? Map.of(user.getId(), user) : Map.of();
+        return toRecords(presenceIndex.getPresencesByAccount(account.getAccountNo())).stream()
+                .map(record -> convertToDto(record, accountMap, userMap))
+                .collect(Collectors.toList());
     }
 
     /**
      * 获取指定nodeIp的在线记录（只返回在配置时间窗口内的记录）
      */
     public List<AccountOnlineIpDto> getOnlineRecordsByNodeIp(String nodeIp) {
-        // 计算检查时间范围（当前时间往前推checkMinutes分钟）
-        LocalDateTime checkStartTime = LocalDateTime.now().minusMinutes(checkMinutes);
-        
-        // 获取所有记录，然后过滤出在时间窗口内的记录
-        List<AccountOnlineIp> allRecords = accountOnlineIpRepository.findByNodeIp(nodeIp);
-        List<AccountOnlineIp> validRecords = allRecords.stream()
-                .filter(record -> record.getLastOnlineTime() != null && 
-                        record.getLastOnlineTime().isAfter(checkStartTime))
-                .collect(Collectors.toList());
-        
-        return convertToDtoList(validRecords);
+        return convertToDtoList(toRecords(presenceIndex.getPresencesByNode(nodeIp)));
     }
 
     /**
      * 获取所有在线记录（只返回在配置时间窗口内的记录）
      */
     public List<AccountOnlineIpDto> getAllOnlineRecords() {
-        // 计算检查时间范围（当前时间往前推checkMinutes分钟）
-        LocalDateTime checkStartTime = LocalDateTime.now().minusMinutes(checkMinutes);
-        
-        // 直接查询在时间窗口内的记录
-        List<AccountOnlineIp> records = accountOnlineIpRepository.findByLastOnlineTimeAfter(checkStartTime);
-        return convertToDtoList(records);
+        return convertToDtoList(toRecords(presenceIndex.getAllPresences()));
+    }
+
+    /**
+     * 获取账户当前在线IP数
+     */
+    public int countOnlineIps(String accountNo) {
+        return presenceIndex.countOnlineIps(accountNo);
+    }
+
+    /**
+     * 获取当前在线账户数
+     */
+    public int countOnlineAccounts() {
+        return presenceIndex.countOnlineAccounts();
+    }
+
+    /**
+     * 获取超出在线IP上限的账户（账户编号 -> 当前在线IP数）
+     */
+    public Map<String, Integer> getAccountsExceedingLimit() {
+        return presenceIndex.getAccountsExceedingLimit();
+    }
+
+    /**
+     * 将在线索引快照转换为记录，按最近在线时间倒序
+     */
+    private List<AccountOnlineIp> toRecords(Map<OnlinePresenceIndex.Presence, LocalDateTime> presences) {
+        return presences.entrySet().stream()
+                .sorted(Map.Entry.<OnlinePresenceIndex.Presence, LocalDateTime>comparingByValue().reversed())
+                .map(entry -> {
+                    AccountOnlineIp record = new AccountOnlineIp();
+                    record.setAccountNo(entry.getKey().getAccountNo());
+                    record.setClientIp(entry.getKey().getClientIp());
+                    record.setNodeIp(entry.getKey().getNodeIp());
+                    record.setLastOnlineTime(entry.getValue());
+                    return record;
+                })
+                .collect(Collectors.toList());
     }
 
     /**
-     * 清理过期的在线记录
+     * 清理过期的在线记录（超过2倍检查时间），由写线程执行，不会与其它写入争抢数据库锁
      */
-    @Transactional
     public void cleanupExpiredRecords() {
-        LocalDateTime expireTime = LocalDateTime.now().minusMinutes(checkMinutes * 2); // 清理超过2倍检查时间的记录
-        
-        // 使用重试机制处理数据库锁定问题
-        int maxRetries = 3;
-        int retryCount = 0;
-        
-        while (retryCount < maxRetries) {
-            try {
-                accountOnlineIpRepository.deleteExpiredRecords(expireTime);
-                log.info("Successfully cleaned up expired online records before {}", expireTime);
-                return; // 成功则退出
-            } catch (Exception e) {
-                retryCount++;
-                if (e.getMessage() != null && e.getMessage().contains("database is locked")) {
-                    if (retryCount < maxRetries) {
-                        log.warn("Database locked when cleaning up expired records, retrying ({}/{})", 
-                                retryCount, maxRetries);
-                        // 等待一段时间后重试
-                        try {
-                            Thread.sleep(200 * retryCount); // 递增等待时间
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new RuntimeException("Cleanup expired records interrupted", ie);
-                        }
-                    } else {
-                        log.error("Failed to cleanup expired records after {} retries", maxRetries);
-                        throw new RuntimeException("Failed to cleanup expired records after " + maxRetries + " retries", e);
-                    }
-                } else {
-                    // 非数据库锁定错误，直接抛出
-                    log.error("Unexpected error when cleaning up expired records: {}", e.getMessage());
-                    throw e;
-                }
-            }
-        }
+        LocalDateTime expireTime = LocalDateTime.now().minusMinutes(checkMinutes * 2);
+        writeExecutor.run(() -> accountOnlineIpRepository.deleteExpiredRecords(expireTime));
+        log.info("Successfully cleaned up expired online records before {}", expireTime);
     }
 
     /**
@@ -239,34 +280,24 @@ public class AccountOnlineIpService {
      * 获取账户映射
      */
     private Map<String, Account> getAccountMap(List<AccountOnlineIp> records) {
-        List<String> accountNos = records.stream()
-                .map(AccountOnlineIp::getAccountNo)
-                .distinct()
-                .collect(Collectors.toList());
-        
-        if (accountNos.isEmpty()) {
-            return Map.of();
-        }
-        
-        return accountRepository.findByAccountNoIn(accountNos).stream()
-                .collect(Collectors.toMap(Account::getAccountNo, account -> account));
+        return BatchLoader.load(records, AccountOnlineIp::getAccountNo,
+                accountRepository::findByAccountNoIn, Account::getAccountNo);
     }
     
     /**
      * 获取用户映射
      */
-    private Map<Long, User> getUserMap(java.util.Collection<Account> accounts) {
-        List<Long> userIds = accounts.stream()
-                .map(Account::getUserId)
-                .filter(id -> id != null)
-                .distinct()
-                .collect(Collectors.toList());
-        
-        if (userIds.isEmpty()) {
-            return Map.of();
-        }
-        
-        return userRepository.findAllById(userIds).stream()
-                .collect(Collectors.toMap(User::getId, user -> user));
+    private Map<Long, User> getUserMap(Collection<Account> accounts) {
+        return BatchLoader.load(accounts, Account::getUserId, userRepository::findAllById, User::getId);
+    }
+
+    /**
+     * 在线记录唯一键
+     */
+    @Data
+    private static class OnlineKey {
+        private final String accountNo;
+        private final String clientIp;
+        private final String nodeIp;
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
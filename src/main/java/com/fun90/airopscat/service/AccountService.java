@@ -5,9 +5,11 @@ import com.fun90.airopscat.model.dto.AccountOnlineIpDto;
 import com.fun90.airopscat.model.entity.Account;
 import com.fun90.airopscat.model.entity.User;
 import com.fun90.airopscat.model.enums.PeriodType;
+import com.fun90.airopscat.model.event.AccountChangedEvent;
+import com.fun90.airopscat.model.telemetry.AccountUsageSummary;
 import com.fun90.airopscat.repository.AccountRepository;
-import com.fun90.airopscat.repository.AccountTrafficStatsRepository;
 import com.fun90.airopscat.repository.UserRepository;
+import com.fun90.airopscat.utils.BatchLoader;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
@@ -18,6 +20,7 @@ import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -39,19 +42,25 @@ public class AccountService {
 
     private final AccountRepository accountRepository;
     private final UserRepository userRepository;
-    private final AccountTrafficStatsRepository accountTrafficStatsRepository;
+    private final AccountUsageSummaryService usageSummaryService;
     private final AccountOnlineIpService accountOnlineIpService;
+    private final OnlinePresenceIndex presenceIndex;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public AccountService(
             AccountRepository accountRepository, 
             UserRepository userRepository,
-            AccountTrafficStatsRepository accountTrafficStatsRepository,
-            AccountOnlineIpService accountOnlineIpService) {
+            AccountUsageSummaryService usageSummaryService,
+            AccountOnlineIpService accountOnlineIpService,
+            OnlinePresenceIndex presenceIndex,
+            ApplicationEventPublisher eventPublisher) {
         this.accountRepository = accountRepository;
         this.userRepository = userRepository;
-        this.accountTrafficStatsRepository = accountTrafficStatsRepository;
+        this.usageSummaryService = usageSummaryService;
         this.accountOnlineIpService = accountOnlineIpService;
+        this.presenceIndex = presenceIndex;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<Account> getAccountPage(int page, int size, String search, Long userId, String status) {
@@ -161,34 +170,64 @@ public class AccountService {
         stats.put("expiringSoon", accountRepository.countExpiringInOneWeek(now, inOneWeek));
         
         // 添加在线用户统计（按accountNo去重）
-        long onlineUsers = accountOnlineIpService.getAllOnlineRecords().stream()
-                .map(ip -> ip.getAccountNo())
-                .distinct()
-                .count();
-        stats.put("onlineUsers", onlineUsers);
+        stats.put("onlineUsers", (long) accountOnlineIpService.countOnlineAccounts());
         
         return stats;
     }
 
     public AccountDto convertToDto(Account account) {
+        return convertToDtos(List.of(account)).get(0);
+    }
+
+    /**
+     * 批量转换账户，用户和用量汇总各一次批量查询，在线IP取自内存在线索引，查询次数与账户数无关
+     */
+    public List<AccountDto> convertToDtos(List<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, User> userMap = BatchLoader.load(accounts, Account::getUserId, userRepository::findAllById, User::getId);
+        Map<Long, AccountUsageSummary> summaryMap = usageSummaryService.findByAccountIds(
+                BatchLoader.collectKeys(accounts, Account::getId));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<AccountDto> dtos = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            dtos.add(convertToDto(account, userMap.get(account.getUserId()), summaryMap.get(account.getId()), now));
+        }
+        return dtos;
+    }
+
+    private AccountDto convertToDto(Account account, User user, AccountUsageSummary summary, LocalDateTime now) {
         AccountDto dto = new AccountDto();
         BeanUtils.copyProperties(account, dto);
         
         // Enrich with user email if available
-        if (account.getUserId() != null) {
-            Optional<User> userOpt = userRepository.findById(account.getUserId());
-            userOpt.ifPresent(user -> {
-                dto.setUserEmail(user.getEmail());
-                dto.setNickName(user.getNickName());
-            });
+        if (user != null) {
+            dto.setUserEmail(user.getEmail());
+            dto.setNickName(user.getNickName());
         }
         
         // Add traffic usage data
-        Long uploadBytes = accountTrafficStatsRepository.sumUploadBytesByAccountId(account.getId());
-        Long downloadBytes = accountTrafficStatsRepository.sumDownloadBytesByAccountId(account.getId());
-        dto.setUsedUploadBytes(uploadBytes != null ? uploadBytes : 0L);
-        dto.setUsedDownloadBytes(downloadBytes != null ? downloadBytes : 0L);
-        dto.setTotalUsedBytes(dto.getUsedUploadBytes() + dto.getUsedDownloadBytes());
+        long uploadBytes = 0L;
+        long downloadBytes = 0L;
+        long periodUploadBytes = 0L;
+        long periodDownloadBytes = 0L;
+        if (summary != null) {
+            uploadBytes = Objects.requireNonNullElse(summary.getTotalUploadBytes(), 0L);
+            downloadBytes = Objects.requireNonNullElse(summary.getTotalDownloadBytes(), 0L);
+            // 汇总中的周期已结束、新周期尚无流量时，当前周期用量为0
+            if (summary.getPeriodEnd() != null && !summary.getPeriodEnd().isBefore(now)) {
+                periodUploadBytes = Objects.requireNonNullElse(summary.getPeriodUploadBytes(), 0L);
+                periodDownloadBytes = Objects.requireNonNullElse(summary.getPeriodDownloadBytes(), 0L);
+            }
+            dto.setLastOnlineTime(summary.getLastOnlineTime());
+        }
+        dto.setUsedUploadBytes(uploadBytes);
+        dto.setUsedDownloadBytes(downloadBytes);
+        dto.setTotalUsedBytes(uploadBytes + downloadBytes);
+        dto.setPeriodUploadBytes(periodUploadBytes);
+        dto.setPeriodDownloadBytes(periodDownloadBytes);
         
         // Calculate usage percentage if bandwidth is set
         if (account.getBandwidth() != null && account.getBandwidth() > 0) {
@@ -201,13 +240,15 @@ public class AccountService {
         
         // Add online IP information
         if (account.getAccountNo() != null) {
-            List<AccountOnlineIpDto> onlineIps = accountOnlineIpService.getOnlineRecordsByAccountNo(account.getAccountNo());
+            List<AccountOnlineIpDto> onlineIps = accountOnlineIpService.getOnlineRecords(account, user);
             dto.setOnlineIps(onlineIps);
+            dto.setOnlineIpCount(onlineIps.size());
+        } else {
+            dto.setOnlineIpCount(0);
         }
         
         // Calculate days until expiration
         if (account.getToDate() != null) {
-            LocalDateTime now = LocalDateTime.now();
             dto.setDaysUntilExpiration(ChronoUnit.DAYS.between(now, account.getToDate()));
         } else {
             dto.setDaysUntilExpiration(null);
@@ -247,7 +288,10 @@ public class AccountService {
             account.setPeriodType(PeriodType.MONTHLY.name());
         }
         
-        return accountRepository.save(account);
+        Account savedAccount = accountRepository.save(account);
+        presenceIndex.updateAccountLimit(savedAccount.getAccountNo(), savedAccount.getMaxOnlineIps());
+        eventPublisher.publishEvent(AccountChangedEvent.of(savedAccount.getId()));
+        return savedAccount;
     }
 
     @Transactional
@@ -258,7 +302,10 @@ public class AccountService {
         // 使用工具方法复制非null属性
         copyNonNullProperties(account, existingAccount);
 
-        return accountRepository.save(existingAccount);
+        Account savedAccount = accountRepository.save(existingAccount);
+        presenceIndex.updateAccountLimit(savedAccount.getAccountNo(), savedAccount.getMaxOnlineIps());
+        eventPublisher.publishEvent(AccountChangedEvent.of(savedAccount.getId()));
+        return savedAccount;
     }
 
     // 工具方法：复制非null属性
@@ -283,6 +330,9 @@ public class AccountService {
 
     @Transactional
     public void deleteAccount(Long id) {
+        accountRepository.findById(id).ifPresent(account -> presenceIndex.removeAccount(account.getAccountNo()));
+        // 先发布事件，监听方可在关联被删除前解析受影响的服务器
+        eventPublisher.publishEvent(AccountChangedEvent.of(id));
         accountRepository.deleteById(id);
     }
 
@@ -292,7 +342,9 @@ public class AccountService {
         if (optionalAccount.isPresent()) {
             Account account = optionalAccount.get();
             account.setDisabled(disabled ? 1 : 0);
-            return accountRepository.save(account);
+            Account savedAccount = accountRepository.save(account);
+            eventPublisher.publishEvent(AccountChangedEvent.of(id));
+            return savedAccount;
         }
         return null;
     }
@@ -307,7 +359,9 @@ public class AccountService {
             account.setDisabled(0); // Reactivate account if disabled
         }
         
-        return accountRepository.save(account);
+        Account savedAccount = accountRepository.save(account);
+        eventPublisher.publishEvent(AccountChangedEvent.of(id));
+        return savedAccount;
     }
     
     @Transactional
@@ -316,7 +370,10 @@ public class AccountService {
                 .orElseThrow(() -> new EntityNotFoundException("Account not found"));
         
         account.setAuthCode(generateAuthCode());
-        return accountRepository.save(account);
+        Account savedAccount = accountRepository.save(account);
+        // 认证码只影响订阅地址，不涉及节点配置
+        eventPublisher.publishEvent(new AccountChangedEvent(List.of(id), false));
+        return savedAccount;
     }
     
     // 生成随机认证码
@@ -0,0 +1,81 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.repository.AccountRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 账户临时停用登记
+ * 被登记的账户在生成节点配置时会被排除，解除后重新部署即可恢复
+ * 停用截止时间写入账户表，重启后恢复登记，由 OnlineIpLimitEnforcer 重新安排解除
+ */
+@Slf4j
+@Service
+public class AccountSuspensionRegistry {
+
+    private final AccountRepository accountRepository;
+    private final SqliteWriteExecutor writeExecutor;
+
+    /**
+     * 账户编号 -> 停用截止时间，生成配置时只读内存
+     */
+    private final Map<String, LocalDateTime> suspendedAccounts = new ConcurrentHashMap<>();
+
+    public AccountSuspensionRegistry(AccountRepository accountRepository, SqliteWriteExecutor writeExecutor) {
+        this.accountRepository = accountRepository;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * 启动时从账户表恢复停用登记
+     */
+    @PostConstruct
+    public void load() {
+        for (Account account : accountRepository.findBySuspendedUntilIsNotNull()) {
+            suspendedAccounts.put(account.getAccountNo(), account.getSuspendedUntil());
+        }
+        if (!suspendedAccounts.isEmpty()) {
+            log.info("恢复 {} 个临时停用的账户", suspendedAccounts.size());
+        }
+    }
+
+    public boolean isSuspended(String accountNo) {
+        return accountNo != null && suspendedAccounts.containsKey(accountNo);
+    }
+
+    public void suspend(String accountNo, LocalDateTime until) {
+        suspendedAccounts.put(accountNo, until);
+        persist(accountNo, until);
+        log.info("账户 {} 临时停用至 {}", accountNo, until);
+    }
+
+    public boolean lift(String accountNo) {
+        boolean lifted = suspendedAccounts.remove(accountNo) != null;
+        if (lifted) {
+            persist(accountNo, null);
+            log.info("账户 {} 解除临时停用", accountNo);
+        }
+        return lifted;
+    }
+
+    public Map<String, LocalDateTime> getSuspendedAccounts() {
+        return Map.copyOf(suspendedAccounts);
+    }
+
+    /**
+     * 写入失败时只记录日志，内存登记仍然生效
+     */
+    private void persist(String accountNo, LocalDateTime until) {
+        try {
+            writeExecutor.run(() -> accountRepository.updateSuspendedUntil(accountNo, until));
+        } catch (Exception e) {
+            log.warn("保存账户 {} 停用状态失败: {}", accountNo, e.getMessage());
+        }
+    }
+}
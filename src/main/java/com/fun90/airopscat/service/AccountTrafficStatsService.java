@@ -1,39 +1,74 @@
 package com.fun90.airopscat.service;
 
+import com.fun90.airopscat.config.TelemetryDatabaseConfig;
 import com.fun90.airopscat.model.dto.AccountTrafficStatsDto;
-import com.fun90.airopscat.model.entity.AccountTrafficStats;
+import com.fun90.airopscat.model.dto.TrafficSeries;
+import com.fun90.airopscat.model.dto.TrafficUsage;
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.model.telemetry.AccountTrafficStats;
 import com.fun90.airopscat.model.entity.User;
-import com.fun90.airopscat.repository.AccountTrafficStatsRepository;
+import com.fun90.airopscat.model.enums.TrafficResolution;
+import com.fun90.airopscat.model.event.AccountChangedEvent;
+import com.fun90.airopscat.repository.AccountRepository;
+import com.fun90.airopscat.repository.telemetry.AccountTrafficStatsRepository;
 import com.fun90.airopscat.repository.UserRepository;
+import com.fun90.airopscat.utils.BatchLoader;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.criteria.Predicate;
-import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.beans.PropertyDescriptor;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
+@Slf4j
 @Service
 public class AccountTrafficStatsService {
 
     private final AccountTrafficStatsRepository accountTrafficStatsRepository;
     private final UserRepository userRepository;
+    private final AccountRepository accountRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SqliteWriteExecutor telemetryWriteExecutor;
+    private final TrafficSeriesService trafficSeriesService;
+    private final AccountUsageSummaryService usageSummaryService;
 
     @Autowired
     public AccountTrafficStatsService(AccountTrafficStatsRepository accountTrafficStatsRepository, 
-                                     UserRepository userRepository) {
+                                     UserRepository userRepository,
+                                     AccountRepository accountRepository,
+                                     @Qualifier("telemetryJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                     ApplicationEventPublisher eventPublisher,
+                                     @Qualifier("telemetryWriteExecutor") SqliteWriteExecutor telemetryWriteExecutor,
+                                     TrafficSeriesService trafficSeriesService,
+                                     AccountUsageSummaryService usageSummaryService) {
         this.accountTrafficStatsRepository = accountTrafficStatsRepository;
         this.userRepository = userRepository;
+        this.accountRepository = accountRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.telemetryWriteExecutor = telemetryWriteExecutor;
+        this.trafficSeriesService = trafficSeriesService;
+        this.usageSummaryService = usageSummaryService;
     }
 
     public Page<AccountTrafficStats> getStatsPage(int page, int size, String search, Long userId, Long accountId, 
@@ -111,39 +146,71 @@ public class AccountTrafficStatsService {
         return sum != null ? sum : 0L;
     }
 
+    /**
+     * 查询账户或用户（其全部账户）的流量时间序列，accountId 优先
+     * @param end 为null时取当前时间
+     * @param resolution 为null时按时间跨度自动选择
+     */
+    public TrafficSeries getTrafficSeries(Long userId, Long accountId, Long serverId,
+                                          LocalDateTime start, LocalDateTime end, TrafficResolution resolution) {
+        List<Long> accountIds = accountId != null ? List.of(accountId)
+                : userId != null ? accountRepository.findByUserId(userId).stream().map(Account::getId).toList()
+                : List.of();
+        ZoneId zone = ZoneId.systemDefault();
+        long to = end != null ? end.atZone(zone).toEpochSecond() : Instant.now().getEpochSecond();
+        return trafficSeriesService.query(accountIds, serverId, start.atZone(zone).toEpochSecond(), to, resolution);
+    }
+
     public AccountTrafficStatsDto convertToDto(AccountTrafficStats stats) {
-        AccountTrafficStatsDto dto = new AccountTrafficStatsDto();
-        BeanUtils.copyProperties(stats, dto);
-        dto.setTotalBytes(stats.getUploadBytes() + stats.getDownloadBytes());
-        
-        // Enrich with user email if available
-        if (stats.getUserId() != null) {
-            Optional<User> userOpt = userRepository.findById(stats.getUserId());
-            userOpt.ifPresent(user -> dto.setUserEmail(user.getEmail()));
+        return convertToDtos(List.of(stats)).get(0);
+    }
+
+    /**
+     * 批量转换流量统计，关联用户一次批量查询
+     */
+    public List<AccountTrafficStatsDto> convertToDtos(List<AccountTrafficStats> statsList) {
+        Map<Long, User> userMap = BatchLoader.load(statsList, AccountTrafficStats::getUserId, userRepository::findAllById, User::getId);
+        List<AccountTrafficStatsDto> dtos = new ArrayList<>(statsList.size());
+        for (AccountTrafficStats stats : statsList) {
+            AccountTrafficStatsDto dto = new AccountTrafficStatsDto();
+            BeanUtils.copyProperties(stats, dto);
+            dto.setTotalBytes(Objects.requireNonNullElse(stats.getUploadBytes(), 0L)
+                    + Objects.requireNonNullElse(stats.getDownloadBytes(), 0L));
+            
+            // Enrich with user email if available
+            User user = userMap.get(stats.getUserId());
+            if (user != null) {
+                dto.setUserEmail(user.getEmail());
+            }
+            dtos.add(dto);
         }
-        
-        return dto;
+        return dtos;
     }
 
-    @Transactional
+    @Transactional(TelemetryDatabaseConfig.TRANSACTION_MANAGER)
     public AccountTrafficStats saveStats(AccountTrafficStats stats) {
         // Ensure user exists
         if (stats.getUserId() != null && !userRepository.existsById(stats.getUserId())) {
             throw new EntityNotFoundException("User with ID " + stats.getUserId() + " not found");
         }
         
-        return accountTrafficStatsRepository.save(stats);
+        AccountTrafficStats saved = accountTrafficStatsRepository.saveAndFlush(stats);
+        usageSummaryService.refresh(Collections.singletonList(saved.getAccountId()));
+        return saved;
     }
 
-    @Transactional
+    @Transactional(TelemetryDatabaseConfig.TRANSACTION_MANAGER)
     public AccountTrafficStats updateStats(AccountTrafficStats stats) {
         AccountTrafficStats existingStats = accountTrafficStatsRepository.findById(stats.getId())
                 .orElseThrow(() -> new EntityNotFoundException("Traffic stats not found"));
+        Long previousAccountId = existingStats.getAccountId();
 
         // 使用工具方法复制非null属性
         copyNonNullProperties(stats, existingStats);
 
-        return accountTrafficStatsRepository.save(existingStats);
+        AccountTrafficStats saved = accountTrafficStatsRepository.saveAndFlush(existingStats);
+        usageSummaryService.refresh(new HashSet<>(Arrays.asList(previousAccountId, saved.getAccountId())));
+        return saved;
     }
 
     // 工具方法：复制非null属性
@@ -166,16 +233,20 @@ public class AccountTrafficStatsService {
         return nullNames.toArray(new String[0]);
     }
 
-    @Transactional
+    @Transactional(TelemetryDatabaseConfig.TRANSACTION_MANAGER)
     public void deleteStats(Long id) {
-        accountTrafficStatsRepository.deleteById(id);
+        accountTrafficStatsRepository.findById(id).ifPresent(stats -> {
+            accountTrafficStatsRepository.delete(stats);
+            accountTrafficStatsRepository.flush();
+            usageSummaryService.refresh(Collections.singletonList(stats.getAccountId()));
+        });
     }
     
     /**
      * 智能保存或更新流量统计
      * 如果在当前时间段内已有记录，则累加流量；否则创建新记录
      */
-    @Transactional
+    @Transactional(TelemetryDatabaseConfig.TRANSACTION_MANAGER)
     public AccountTrafficStats saveOrUpdateTrafficStats(Long accountId, Long userId, String periodType, 
                                                        long uploadBytes, long downloadBytes) {
         LocalDateTime currentTime = LocalDateTime.now();
@@ -188,7 +259,9 @@ public class AccountTrafficStatsService {
             AccountTrafficStats stats = existingStats.get(0);
             stats.setUploadBytes(stats.getUploadBytes() + uploadBytes);
             stats.setDownloadBytes(stats.getDownloadBytes() + downloadBytes);
-            return accountTrafficStatsRepository.save(stats);
+            AccountTrafficStats saved = accountTrafficStatsRepository.saveAndFlush(stats);
+            usageSummaryService.refresh(List.of(accountId));
+            return saved;
         } else {
             // 如果没有找到记录，创建新记录
             AccountTrafficStats newStats = new AccountTrafficStats();
@@ -198,15 +271,113 @@ public class AccountTrafficStatsService {
             newStats.setPeriodEnd(calculatePeriodEnd(currentTime, periodType));
             newStats.setUploadBytes(uploadBytes);
             newStats.setDownloadBytes(downloadBytes);
-            return accountTrafficStatsRepository.save(newStats);
+            AccountTrafficStats saved = accountTrafficStatsRepository.saveAndFlush(newStats);
+            usageSummaryService.refresh(List.of(accountId));
+            return saved;
+        }
+    }
+    
+    /**
+     * 批量累加一次采集的流量统计
+     * 账户和当前周期记录各用一次查询取回，已有记录以批量UPDATE原子累加，缺失的周期记录批量新增，全部在同一事务内完成
+     * 同时按账户和服务器记录一个时间序列样本并累加账户用量汇总；经 submitTrafficStats 提交时并入遥测写线程的组提交事务
+     * @param serverId 采集的服务器ID
+     * @param usageByAccountNo 账户编号 -> 流量增量
+     * @return 写入流量的账户数
+     */
+    @Transactional(TelemetryDatabaseConfig.TRANSACTION_MANAGER)
+    public int ingestTrafficStats(Long serverId, Map<String, TrafficUsage> usageByAccountNo) {
+        if (usageByAccountNo == null || usageByAccountNo.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime currentTime = LocalDateTime.now();
+        
+        // 1. 一次解析全部账户
+        List<Account> accounts = new ArrayList<>(BatchLoader.load(usageByAccountNo.keySet(),
+                accountRepository::findByAccountNoIn, Account::getAccountNo).values());
+        if (accounts.size() < usageByAccountNo.size()) {
+            log.warn("{} 个流量统计用户未找到对应账户", usageByAccountNo.size() - accounts.size());
+        }
+        if (accounts.isEmpty()) {
+            return 0;
+        }
+        
+        // 2. 一次取回这些账户当前周期的记录
+        Map<Long, AccountTrafficStats> currentStatsByAccount = new HashMap<>();
+        List<Long> accountIds = accounts.stream().map(Account::getId).toList();
+        for (List<Long> batch : BatchLoader.partition(accountIds)) {
+            for (AccountTrafficStats stats : accountTrafficStatsRepository.findByAccountIdInAndCurrentTime(batch, currentTime)) {
+                currentStatsByAccount.putIfAbsent(stats.getAccountId(), stats);
+            }
         }
+        
+        // 3. 已有记录累加，缺失记录新增
+        List<Object[]> increments = new ArrayList<>();
+        List<AccountTrafficStats> newStats = new ArrayList<>();
+        List<Long> changedAccountIds = new ArrayList<>();
+        Map<Long, TrafficUsage> usageByAccountId = new HashMap<>();
+        List<AccountUsageSummaryService.TrafficDelta> summaryDeltas = new ArrayList<>();
+        Timestamp updateTime = Timestamp.valueOf(currentTime);
+        for (Account account : accounts) {
+            TrafficUsage usage = usageByAccountNo.get(account.getAccountNo());
+            if (usage == null || (usage.getUploadBytes() == 0 && usage.getDownloadBytes() == 0)) {
+                continue;
+            }
+            changedAccountIds.add(account.getId());
+            usageByAccountId.put(account.getId(), usage);
+            AccountTrafficStats existing = currentStatsByAccount.get(account.getId());
+            if (existing != null) {
+                increments.add(new Object[]{usage.getUploadBytes(), usage.getDownloadBytes(), updateTime, existing.getId()});
+                summaryDeltas.add(new AccountUsageSummaryService.TrafficDelta(account.getId(),
+                        usage.getUploadBytes(), usage.getDownloadBytes(), existing.getPeriodEnd()));
+            } else {
+                AccountTrafficStats stats = new AccountTrafficStats();
+                stats.setUserId(account.getUserId());
+                stats.setAccountId(account.getId());
+                stats.setPeriodStart(currentTime);
+                stats.setPeriodEnd(calculatePeriodEnd(currentTime, account.getPeriodType()));
+                stats.setUploadBytes(usage.getUploadBytes());
+                stats.setDownloadBytes(usage.getDownloadBytes());
+                newStats.add(stats);
+                summaryDeltas.add(new AccountUsageSummaryService.TrafficDelta(account.getId(),
+                        usage.getUploadBytes(), usage.getDownloadBytes(), stats.getPeriodEnd()));
+            }
+        }
+        
+        if (!increments.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE account_traffic_stats SET upload_bytes = COALESCE(upload_bytes, 0) + ?, " +
+                    "download_bytes = COALESCE(download_bytes, 0) + ?, update_time = ? WHERE id = ?",
+                    increments);
+        }
+        if (!newStats.isEmpty()) {
+            accountTrafficStatsRepository.saveAll(newStats);
+        }
+        
+        trafficSeriesService.record(serverId, currentTime.atZone(ZoneId.systemDefault()).toInstant(), usageByAccountId);
+        usageSummaryService.recordTraffic(summaryDeltas);
+        
+        if (!changedAccountIds.isEmpty()) {
+            // 已用流量只影响订阅信息，不触发部署
+            eventPublisher.publishEvent(new AccountChangedEvent(changedAccountIds, false));
+        }
+        log.debug("批量写入流量统计: 累加 {} 条, 新增 {} 条", increments.size(), newStats.size());
+        return increments.size() + newStats.size();
+    }
+    
+    /**
+     * 将一次采集的流量统计提交给遥测写线程，多台服务器的写入可合并为一次提交
+     * @return 写入流量的账户数
+     */
+    public CompletableFuture<Integer> submitTrafficStats(Long serverId, Map<String, TrafficUsage> usageByAccountNo) {
+        return telemetryWriteExecutor.submit(() -> ingestTrafficStats(serverId, usageByAccountNo));
     }
     
     /**
      * 根据统计周期类型计算周期结束时间
      */
     private LocalDateTime calculatePeriodEnd(LocalDateTime periodStart, String periodType) {
-        switch (periodType.toUpperCase()) {
+        switch (periodType == null ? "" : periodType.toUpperCase()) {
             case "MONTHLY":
                 // 月周期：从当前时间开始，1个月后
                 return periodStart.plusMonths(1).minusNanos(1);
@@ -0,0 +1,173 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.telemetry.AccountUsageSummary;
+import com.fun90.airopscat.repository.telemetry.AccountUsageSummaryRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 账户用量汇总
+ * 流量写入和心跳落库时在同一遥测事务内增量更新，账户列表按页一次批量读取，不再逐个账户聚合流量统计；
+ * 管理端直接修改流量统计时按账户重算，启动时全量重算一次
+ */
+@Slf4j
+@Service
+public class AccountUsageSummaryService {
+
+    /**
+     * 总量和当前周期用量均按增量累加；周期结束时间变化（进入新周期）时当前周期用量从本次增量重新开始。
+     * 同一组提交事务内同一账户可能被多台服务器的写入各累加一次，不能以持久化上下文中的流量统计计算绝对值
+     */
+    private static final String UPSERT_TRAFFIC_SQL =
+            "INSERT INTO account_usage_summary (account_id, total_upload_bytes, total_download_bytes, " +
+            "period_upload_bytes, period_download_bytes, period_end, online_ip_count, update_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, 0, ?) " +
+            "ON CONFLICT(account_id) DO UPDATE SET " +
+            "total_upload_bytes = COALESCE(total_upload_bytes, 0) + excluded.total_upload_bytes, " +
+            "total_download_bytes = COALESCE(total_download_bytes, 0) + excluded.total_download_bytes, " +
+            "period_upload_bytes = CASE WHEN period_end IS excluded.period_end " +
+            "THEN COALESCE(period_upload_bytes, 0) + excluded.period_upload_bytes ELSE excluded.period_upload_bytes END, " +
+            "period_download_bytes = CASE WHEN period_end IS excluded.period_end " +
+            "THEN COALESCE(period_download_bytes, 0) + excluded.period_download_bytes ELSE excluded.period_download_bytes END, " +
+            "period_end = excluded.period_end, update_time = excluded.update_time";
+
+    private static final String UPSERT_PRESENCE_SQL =
+            "INSERT INTO account_usage_summary (account_id, total_upload_bytes, total_download_bytes, " +
+            "period_upload_bytes, period_download_bytes, last_online_time, online_ip_count, update_time) " +
+            "VALUES (?, 0, 0, 0, 0, ?, ?, ?) " +
+            "ON CONFLICT(account_id) DO UPDATE SET " +
+            "last_online_time = CASE WHEN last_online_time IS NULL OR last_online_time < excluded.last_online_time " +
+            "THEN excluded.last_online_time ELSE last_online_time END, " +
+            "online_ip_count = excluded.online_ip_count, update_time = excluded.update_time";
+
+    /**
+     * 由流量统计重算总量和当前周期用量，%s 为账户过滤条件
+     */
+    private static final String REBUILD_TRAFFIC_SQL =
+            "INSERT INTO account_usage_summary (account_id, total_upload_bytes, total_download_bytes, " +
+            "period_upload_bytes, period_download_bytes, period_end, online_ip_count, update_time) " +
+            "SELECT account_id, SUM(COALESCE(upload_bytes, 0)), SUM(COALESCE(download_bytes, 0)), " +
+            "SUM(CASE WHEN period_start <= ? AND period_end >= ? THEN COALESCE(upload_bytes, 0) ELSE 0 END), " +
+            "SUM(CASE WHEN period_start <= ? AND period_end >= ? THEN COALESCE(download_bytes, 0) ELSE 0 END), " +
+            "MAX(CASE WHEN period_start <= ? AND period_end >= ? THEN period_end END), 0, ? " +
+            "FROM account_traffic_stats WHERE account_id IS NOT NULL%s GROUP BY account_id " +
+            "ON CONFLICT(account_id) DO UPDATE SET " +
+            "total_upload_bytes = excluded.total_upload_bytes, total_download_bytes = excluded.total_download_bytes, " +
+            "period_upload_bytes = excluded.period_upload_bytes, period_download_bytes = excluded.period_download_bytes, " +
+            "period_end = excluded.period_end, update_time = excluded.update_time";
+
+    private static final String RESET_TRAFFIC_SQL =
+            "UPDATE account_usage_summary SET total_upload_bytes = 0, total_download_bytes = 0, " +
+            "period_upload_bytes = 0, period_download_bytes = 0, period_end = NULL%s";
+
+    private final AccountUsageSummaryRepository summaryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final SqliteWriteExecutor writeExecutor;
+
+    public AccountUsageSummaryService(AccountUsageSummaryRepository summaryRepository,
+                                      @Qualifier("telemetryJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                      @Qualifier("telemetryWriteExecutor") SqliteWriteExecutor writeExecutor) {
+        this.summaryRepository = summaryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * 启动时由流量统计全量重算，修正汇总表建立之前或被外部修改的数据
+     */
+    @PostConstruct
+    public void rebuildOnStartup() {
+        try {
+            writeExecutor.run(() -> refresh(null));
+        } catch (Exception e) {
+            log.warn("重算账户用量汇总失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 一次读取一组账户的用量汇总
+     * @return 账户ID -> 汇总，尚无记录的账户不在结果中
+     */
+    public Map<Long, AccountUsageSummary> findByAccountIds(Collection<Long> accountIds) {
+        if (accountIds.isEmpty()) {
+            return Map.of();
+        }
+        return summaryRepository.findAllById(new HashSet<>(accountIds)).stream()
+                .collect(Collectors.toMap(AccountUsageSummary::getAccountId, Function.identity()));
+    }
+
+    /**
+     * 累加一次采集的流量，须在遥测写事务内调用
+     */
+    public void recordTraffic(List<TrafficDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPSERT_TRAFFIC_SQL, deltas.stream()
+                .map(delta -> new Object[]{delta.accountId(), delta.uploadBytes(), delta.downloadBytes(),
+                        delta.uploadBytes(), delta.downloadBytes(),
+                        delta.periodEnd() != null ? Timestamp.valueOf(delta.periodEnd()) : null, now})
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * 更新最近在线时间和在线IP数，须在遥测写事务内调用
+     */
+    public void recordPresence(List<PresenceDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPSERT_PRESENCE_SQL, deltas.stream()
+                .map(delta -> new Object[]{delta.accountId(), Timestamp.valueOf(delta.lastOnlineTime()),
+                        delta.onlineIpCount(), now})
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * 由流量统计重算指定账户的流量汇总，须在遥测写事务内调用，调用前须先flush对流量统计的修改
+     * @param accountIds 为null时重算全部账户，其中的null元素忽略
+     */
+    public void refresh(Collection<Long> accountIds) {
+        String filter = "";
+        List<Object> filterArgs = List.of();
+        if (accountIds != null) {
+            filterArgs = accountIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+            if (filterArgs.isEmpty()) {
+                return;
+            }
+            filter = " AND account_id IN (" + String.join(",", Collections.nCopies(filterArgs.size(), "?")) + ")";
+        }
+        // 流量统计已被全部删除的账户没有聚合结果，先清零再写入重算结果
+        jdbcTemplate.update(RESET_TRAFFIC_SQL.formatted(filter.isEmpty() ? "" : " WHERE" + filter.substring(4)),
+                filterArgs.toArray());
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object> args = new ArrayList<>(List.of(now, now, now, now, now, now, now));
+        args.addAll(filterArgs);
+        int rows = jdbcTemplate.update(REBUILD_TRAFFIC_SQL.formatted(filter), args.toArray());
+        log.debug("重算 {} 个账户的用量汇总", rows);
+    }
+
+    /**
+     * 一个账户一次采集的流量增量，以及该增量所属统计周期的结束时间
+     */
+    public record TrafficDelta(long accountId, long uploadBytes, long downloadBytes, LocalDateTime periodEnd) {
+    }
+
+    /**
+     * 一个账户一次心跳落库后的在线情况
+     */
+    public record PresenceDelta(long accountId, LocalDateTime lastOnlineTime, int onlineIpCount) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.dto.DeploymentProgress;
+import com.fun90.airopscat.model.dto.DeploymentResult;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 部署批次进度句柄
+ * 每台服务器部署完成后立即更新，调用方可随时获取快照，或等待整个批次结束
+ * 批次同时登记为后台任务（任务ID即批次ID），各服务器的部署步骤作为任务事件推送
+ */
+public class DeploymentRollout {
+
+    private final String id;
+    private final JobRegistry.Job job;
+    private final LocalDateTime startTime = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+    private final int totalServers;
+    private final AtomicInteger completedServers = new AtomicInteger();
+    private final AtomicInteger failedServers = new AtomicInteger();
+    private final Set<Long> runningServers = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> serverStartNanos = new ConcurrentHashMap<>();
+    private final List<DeploymentResult> results = Collections.synchronizedList(new ArrayList<>());
+    private final CompletableFuture<List<DeploymentResult>> completion = new CompletableFuture<>();
+    private volatile long finishNanos;
+
+    DeploymentRollout(JobRegistry.Job job, int totalServers) {
+        this.id = job.getId();
+        this.job = job;
+        this.totalServers = totalServers;
+    }
+
+    /**
+     * 记录服务器的一个部署步骤
+     */
+    void step(Long serverId, String host, String step, boolean success, String message, long elapsedMillis) {
+        job.emit(serverId, host, step, success, message, elapsedMillis);
+    }
+
+    void serverStarted(Long serverId) {
+        runningServers.add(serverId);
+        serverStartNanos.put(serverId, System.nanoTime());
+    }
+
+    void serverFinished(Long serverId, List<DeploymentResult> serverResults, boolean succeeded) {
+        results.addAll(serverResults);
+        runningServers.remove(serverId);
+        Long serverStart = serverStartNanos.remove(serverId);
+        boolean failed = !succeeded || serverResults.stream().anyMatch(result -> !result.isSuccess());
+        (failed ? failedServers : completedServers).incrementAndGet();
+        long succeededNodes = serverResults.stream().filter(DeploymentResult::isSuccess).count();
+        job.emit(serverId, null, failed ? JobRegistry.STEP_FAILED : JobRegistry.STEP_DONE, !failed,
+                String.format("成功 %d 个节点，失败 %d 个节点", succeededNodes, serverResults.size() - succeededNodes),
+                serverStart != null ? (System.nanoTime() - serverStart) / 1_000_000 : 0);
+    }
+
+    void finish() {
+        finishNanos = System.nanoTime();
+        completion.complete(getResults());
+        job.finish(failedServers.get() == 0, String.format("共 %d 台服务器，成功 %d，失败 %d",
+                totalServers, completedServers.get(), failedServers.get()));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getTotalServers() {
+        return totalServers;
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * 已完成服务器的部署结果
+     */
+    public List<DeploymentResult> getResults() {
+        synchronized (results) {
+            return new ArrayList<>(results);
+        }
+    }
+
+    public CompletableFuture<List<DeploymentResult>> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * 等待批次结束并返回全部结果
+     */
+    public List<DeploymentResult> await() {
+        return completion.join();
+    }
+
+    public DeploymentProgress snapshot() {
+        List<DeploymentResult> current = getResults();
+        int succeededNodes = (int) current.stream().filter(DeploymentResult::isSuccess).count();
+
+        DeploymentProgress progress = new DeploymentProgress();
+        progress.setRolloutId(id);
+        progress.setStartTime(startTime);
+        progress.setTotalServers(totalServers);
+        progress.setCompletedServers(completedServers.get());
+        progress.setFailedServers(failedServers.get());
+        progress.setRunningServers(new ArrayList<>(runningServers));
+        progress.setSucceededNodes(succeededNodes);
+        progress.setFailedNodes(current.size() - succeededNodes);
+        progress.setUnchangedNodes((int) current.stream().filter(DeploymentResult::isUnchanged).count());
+        progress.setDone(isDone());
+        long end = isDone() ? finishNanos : System.nanoTime();
+        progress.setElapsedMillis((end - startNanos) / 1_000_000);
+        return progress;
+    }
+}
@@ -0,0 +1,227 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.event.AccountChangedEvent;
+import com.fun90.airopscat.model.event.NodeChangedEvent;
+import com.fun90.airopscat.model.event.ServerChangedEvent;
+import com.fun90.airopscat.model.event.TagChangedEvent;
+import com.fun90.airopscat.repository.NodeRepository;
+import com.fun90.airopscat.repository.ServerConfigRepository;
+import com.fun90.airopscat.repository.ServerNodeRepository;
+import com.fun90.airopscat.repository.TagRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 自动部署调度
+ * 监听账户、节点、标签和服务器的变更，解析出受影响的服务器后进入待部署队列；
+ * 同一服务器在静默期内的多次变更合并为一次部署，持续变更时最长等待 max-wait 后强制部署
+ * 受影响的服务器在事件发布时（事务内、删除生效前）解析，事务提交后才进入队列，回滚的变更不会触发部署
+ */
+@Slf4j
+@Service
+public class DeploymentScheduler {
+
+    private final NodeDeploymentService nodeDeploymentService;
+    private final NodeRepository nodeRepository;
+    private final ServerNodeRepository serverNodeRepository;
+    private final ServerConfigRepository serverConfigRepository;
+    private final TagRepository tagRepository;
+
+    @Value("${airopscat.deploy.auto.enabled:true}")
+    private boolean enabled;
+
+    @Value("${airopscat.deploy.auto.quiet-seconds:15}")
+    private long quietSeconds;
+
+    @Value("${airopscat.deploy.auto.max-wait-seconds:120}")
+    private long maxWaitSeconds;
+
+    @Value("${airopscat.deploy.auto.max-in-flight:8}")
+    private int maxInFlight;
+
+    /**
+     * 服务器ID -> 首次与最近一次请求部署的时间
+     */
+    private final Map<Long, PendingServer> pending = new ConcurrentHashMap<>();
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    public DeploymentScheduler(NodeDeploymentService nodeDeploymentService,
+                               NodeRepository nodeRepository,
+                               ServerNodeRepository serverNodeRepository,
+                               ServerConfigRepository serverConfigRepository,
+                               TagRepository tagRepository) {
+        this.nodeDeploymentService = nodeDeploymentService;
+        this.nodeRepository = nodeRepository;
+        this.serverNodeRepository = serverNodeRepository;
+        this.serverConfigRepository = serverConfigRepository;
+        this.tagRepository = tagRepository;
+    }
+
+    /**
+     * 账户变化影响其可用节点所在的服务器
+     */
+    @EventListener
+    public void onAccountChanged(AccountChangedEvent event) {
+        if (event.isDeploymentRelevant() && CollectionUtils.isNotEmpty(event.getAccountIds())) {
+            request("账户变更", () -> tagRepository.findServerIdsByAccountIds(event.getAccountIds()));
+        }
+    }
+
+    /**
+     * 节点变化影响节点所在的服务器（含已部署副本所在的服务器，覆盖节点被删除或迁移的情况），
+     * 以及以该节点为出站的节点所在的服务器
+     */
+    @EventListener
+    public void onNodeChanged(NodeChangedEvent event) {
+        if (event.isDeploymentRelevant() && CollectionUtils.isNotEmpty(event.getNodeIds())) {
+            request("节点变更", () -> {
+                Set<Long> serverIds = new HashSet<>(nodeRepository.findServerIdsByNodeIdsOrOutIds(event.getNodeIds()));
+                serverIds.addAll(serverNodeRepository.findServerIdsByNodeIds(event.getNodeIds()));
+                return serverIds;
+            });
+        }
+    }
+
+    /**
+     * 标签启用、禁用或删除影响带有该标签的节点所在的服务器
+     */
+    @EventListener
+    public void onTagChanged(TagChangedEvent event) {
+        request("标签变更", () -> tagRepository.findServerIdsByTagId(event.getTagId()));
+    }
+
+    /**
+     * 服务器地址变化影响以其上节点为出站的节点所在的服务器
+     */
+    @EventListener
+    public void onServerChanged(ServerChangedEvent event) {
+        request("服务器变更", () -> nodeRepository.findServerIdsByOutServerIds(List.of(event.getServerId())));
+    }
+
+    /**
+     * 派发静默期已过或等待超时的服务器，正在部署的服务器等本次结束后再派发
+     */
+    @Scheduled(fixedDelayString = "${airopscat.deploy.auto.tick-ms:1000}")
+    public void dispatchDueServers() {
+        if (!enabled || pending.isEmpty()) {
+            return;
+        }
+        int capacity = maxInFlight - inFlight.size();
+        if (capacity <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long quietMillis = TimeUnit.SECONDS.toMillis(quietSeconds);
+        long maxWaitMillis = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+        List<Long> due = pending.entrySet().stream()
+                .filter(entry -> !inFlight.contains(entry.getKey()))
+                .filter(entry -> now - entry.getValue().lastRequestedAt() >= quietMillis
+                        || now - entry.getValue().firstRequestedAt() >= maxWaitMillis)
+                .sorted(Comparator.comparingLong((Map.Entry<Long, PendingServer> entry) -> entry.getValue().firstRequestedAt()))
+                .limit(capacity)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (due.isEmpty()) {
+            return;
+        }
+        due.forEach(pending::remove);
+
+        List<Long> targets;
+        try {
+            // 只自动部署已经部署过的服务器，首次部署仍由管理员发起
+            targets = serverConfigRepository.findConfiguredServerIds(due);
+        } catch (Exception e) {
+            log.warn("查询待部署服务器失败，稍后重试: {}", e.getMessage());
+            markPending(due);
+            return;
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        inFlight.addAll(targets);
+        DeploymentRollout rollout;
+        try {
+            rollout = nodeDeploymentService.startRollout(targets, "自动部署");
+        } catch (Exception e) {
+            log.error("自动部署启动失败: {}", e.getMessage());
+            targets.forEach(inFlight::remove);
+            markPending(targets);
+            return;
+        }
+        log.info("自动部署批次 {} 开始，服务器: {}", rollout.getId(), targets);
+        rollout.getCompletion().whenComplete((results, error) -> targets.forEach(inFlight::remove));
+    }
+
+    /**
+     * 等待部署的服务器
+     */
+    public Set<Long> getPendingServerIds() {
+        return new HashSet<>(pending.keySet());
+    }
+
+    /**
+     * 正在部署的服务器
+     */
+    public Set<Long> getInFlightServerIds() {
+        return new HashSet<>(inFlight);
+    }
+
+    /**
+     * 解析受影响的服务器，当前事务提交后加入队列
+     * 解析失败只记录日志，不影响发起变更的业务操作
+     */
+    private void request(String reason, Supplier<Collection<Long>> resolver) {
+        if (!enabled) {
+            return;
+        }
+        Collection<Long> serverIds;
+        try {
+            serverIds = resolver.get();
+        } catch (Exception e) {
+            log.warn("{}：解析受影响的服务器失败: {}", reason, e.getMessage());
+            return;
+        }
+        if (serverIds.isEmpty()) {
+            return;
+        }
+        log.debug("{}：服务器 {} 等待部署", reason, serverIds);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markPending(serverIds);
+                }
+            });
+        } else {
+            markPending(serverIds);
+        }
+    }
+
+    private void markPending(Collection<Long> serverIds) {
+        long now = System.currentTimeMillis();
+        for (Long serverId : serverIds) {
+            if (serverId != null) {
+                pending.compute(serverId, (id, existing) -> existing == null
+                        ? new PendingServer(now, now)
+                        : new PendingServer(existing.firstRequestedAt(), now));
+            }
+        }
+    }
+
+    private record PendingServer(long firstRequestedAt, long lastRequestedAt) {
+    }
+}
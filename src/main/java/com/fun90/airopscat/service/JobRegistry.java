@@ -0,0 +1,331 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.dto.JobEvent;
+import com.fun90.airopscat.model.dto.JobSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 后台任务登记
+ * 批量部署、批量内核操作以任务形式在后台执行，步骤事件按序号保存在有界缓冲区中并通过SSE推送；
+ * 客户端断线后携带最后收到的事件序号重新订阅即可续传。任务数和每个任务的事件数均有上限，
+ * 已结束的任务超过保留时间或超出数量上限时按结束先后淘汰
+ */
+@Slf4j
+@Service
+public class JobRegistry {
+
+    public static final String STEP_DONE = "done";
+    public static final String STEP_FAILED = "failed";
+    public static final String STEP_FINISHED = "finished";
+
+    @Value("${airopscat.jobs.max-jobs:50}")
+    private int maxJobs;
+
+    @Value("${airopscat.jobs.max-events-per-job:2000}")
+    private int maxEventsPerJob;
+
+    @Value("${airopscat.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${airopscat.jobs.sse-timeout-minutes:30}")
+    private long sseTimeoutMinutes;
+
+    /**
+     * 任务ID -> 任务，按创建顺序排列
+     */
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    /**
+     * 创建任务
+     *
+     * @param type 任务类型：deploy / core
+     */
+    public Job create(String type, String description, int totalHosts) {
+        Job job = new Job(UUID.randomUUID().toString().substring(0, 8), type, description, totalHosts,
+                Math.max(1, maxEventsPerJob));
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            evictFinished(Math.max(1, maxJobs));
+        }
+        return job;
+    }
+
+    public Optional<Job> get(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId));
+        }
+    }
+
+    /**
+     * 全部任务的快照，最近创建的在前
+     */
+    public List<JobSnapshot> list() {
+        List<Job> current;
+        synchronized (jobs) {
+            current = new ArrayList<>(jobs.values());
+        }
+        List<JobSnapshot> result = new ArrayList<>();
+        for (int i = current.size() - 1; i >= 0; i--) {
+            result.add(current.get(i).snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * 订阅任务事件：先补发序号大于 lastEventId 的事件，再推送后续事件，任务结束后关闭连接
+     */
+    public SseEmitter subscribe(Job job, long lastEventId) {
+        SseEmitter emitter = new SseEmitter(Duration.ofMinutes(sseTimeoutMinutes).toMillis());
+        job.attach(emitter, lastEventId);
+        return emitter;
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(retentionMinutes);
+        synchronized (jobs) {
+            jobs.values().removeIf(job -> job.finishTime != null && job.finishTime.isBefore(threshold));
+        }
+    }
+
+    /**
+     * 超出数量上限时按结束先后淘汰已结束的任务，运行中的任务不淘汰
+     */
+    private void evictFinished(int limit) {
+        if (jobs.size() <= limit) {
+            return;
+        }
+        List<Job> finished = jobs.values().stream()
+                .filter(job -> job.finishTime != null)
+                .sorted(Comparator.comparing(job -> job.finishTime))
+                .toList();
+        for (Job job : finished) {
+            if (jobs.size() <= limit) {
+                break;
+            }
+            jobs.remove(job.getId());
+        }
+    }
+
+    /**
+     * 后台任务，事件写入和订阅者变更都在任务对象上同步，保证补发与实时推送之间不丢不重；
+     * 锁内只把事件放入各订阅者的待发队列，实际推送在锁外进行，慢客户端不会阻塞任务执行线程
+     */
+    public static class Job {
+        private final String id;
+        private final String type;
+        private final String description;
+        private final int totalHosts;
+        private final int maxEvents;
+        private final LocalDateTime createTime = LocalDateTime.now();
+        private final Deque<JobEvent> events = new ArrayDeque<>();
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private long nextEventId = 1;
+        private int completedHosts;
+        private int failedHosts;
+        private boolean success;
+        private String summary;
+        private volatile LocalDateTime finishTime;
+
+        Job(String id, String type, String description, int totalHosts, int maxEvents) {
+            this.id = id;
+            this.type = type;
+            this.description = description;
+            this.totalHosts = totalHosts;
+            this.maxEvents = maxEvents;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isDone() {
+            return finishTime != null;
+        }
+
+        /**
+         * 记录主机的一个步骤，step 为 done/failed 时表示该主机已结束
+         */
+        public void emit(Long serverId, String host, String step, boolean success,
+                         String message, long elapsedMillis) {
+            List<Subscriber> targets;
+            synchronized (this) {
+                if (finishTime != null) {
+                    return;
+                }
+                if (STEP_DONE.equals(step)) {
+                    completedHosts++;
+                } else if (STEP_FAILED.equals(step)) {
+                    failedHosts++;
+                }
+                targets = append(serverId, host, step, success, message, elapsedMillis);
+            }
+            targets.forEach(Subscriber::drain);
+        }
+
+        /**
+         * 结束任务，推送最后一个事件后关闭全部订阅
+         */
+        public void finish(boolean success, String summary) {
+            List<Subscriber> targets;
+            synchronized (this) {
+                if (finishTime != null) {
+                    return;
+                }
+                this.success = success;
+                this.summary = summary;
+                targets = append(null, null, STEP_FINISHED, success, summary,
+                        Duration.between(createTime, LocalDateTime.now()).toMillis());
+                finishTime = LocalDateTime.now();
+                targets.forEach(Subscriber::closeAfterDrain);
+                subscribers.clear();
+            }
+            targets.forEach(Subscriber::drain);
+        }
+
+        void attach(SseEmitter emitter, long lastEventId) {
+            Subscriber subscriber = new Subscriber(this, emitter);
+            synchronized (this) {
+                JobEvent first = events.peekFirst();
+                if (first != null && lastEventId + 1 < first.getId()) {
+                    // 缓冲区已淘汰部分事件，告知客户端从快照恢复
+                    subscriber.enqueue(SseEmitter.event().name("truncated").data(first.getId()));
+                }
+                for (JobEvent event : events) {
+                    if (event.getId() > lastEventId) {
+                        subscriber.enqueue(event);
+                    }
+                }
+                if (finishTime != null) {
+                    subscriber.closeAfterDrain();
+                } else {
+                    subscribers.add(subscriber);
+                    emitter.onCompletion(() -> subscribers.remove(subscriber));
+                    emitter.onTimeout(() -> subscribers.remove(subscriber));
+                    emitter.onError(error -> subscribers.remove(subscriber));
+                }
+            }
+            subscriber.drain();
+        }
+
+        public synchronized JobSnapshot snapshot() {
+            JobSnapshot snapshot = new JobSnapshot();
+            snapshot.setId(id);
+            snapshot.setType(type);
+            snapshot.setDescription(description);
+            snapshot.setCreateTime(createTime);
+            snapshot.setFinishTime(finishTime);
+            snapshot.setTotalHosts(totalHosts);
+            snapshot.setCompletedHosts(completedHosts);
+            snapshot.setFailedHosts(failedHosts);
+            snapshot.setDone(finishTime != null);
+            snapshot.setSuccess(success);
+            snapshot.setSummary(summary);
+            snapshot.setFirstEventId(events.isEmpty() ? nextEventId : events.peekFirst().getId());
+            snapshot.setLastEventId(nextEventId - 1);
+            return snapshot;
+        }
+
+        /**
+         * 写入事件并放入当前订阅者的待发队列，须持有任务锁
+         *
+         * @return 需要在锁外推送的订阅者
+         */
+        private List<Subscriber> append(Long serverId, String host, String step, boolean success, String message, long elapsedMillis) {
+            JobEvent event = new JobEvent();
+            event.setId(nextEventId++);
+            event.setJobId(id);
+            event.setServerId(serverId);
+            event.setHost(host);
+            event.setStep(step);
+            event.setSuccess(success);
+            event.setMessage(message);
+            event.setElapsedMillis(elapsedMillis);
+            event.setTime(LocalDateTime.now());
+
+            events.addLast(event);
+            while (events.size() > maxEvents) {
+                events.removeFirst();
+            }
+            List<Subscriber> targets = List.copyOf(subscribers);
+            targets.forEach(subscriber -> subscriber.enqueue(event));
+            return targets;
+        }
+    }
+
+    /**
+     * 任务的一个SSE订阅，事件按入队顺序推送；同一时刻只有一个线程在推送，其余线程入队后直接返回
+     */
+    private static class Subscriber {
+        private final Job job;
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean closing;
+
+        Subscriber(Job job, SseEmitter emitter) {
+            this.job = job;
+            this.emitter = emitter;
+        }
+
+        void enqueue(JobEvent event) {
+            enqueue(SseEmitter.event()
+                    .id(String.valueOf(event.getId()))
+                    .name(STEP_FINISHED.equals(event.getStep()) ? "finished" : "step")
+                    .data(event));
+        }
+
+        void enqueue(SseEmitter.SseEventBuilder event) {
+            pending.add(event);
+        }
+
+        /**
+         * 队列清空后关闭连接
+         */
+        void closeAfterDrain() {
+            closing = true;
+        }
+
+        void drain() {
+            while (!completed.get() && (!pending.isEmpty() || closing)) {
+                if (!draining.compareAndSet(false, true)) {
+                    // 其他线程正在推送，其退出前会再次检查队列
+                    return;
+                }
+                try {
+                    SseEmitter.SseEventBuilder event;
+                    while ((event = pending.poll()) != null) {
+                        emitter.send(event);
+                    }
+                    if (closing && completed.compareAndSet(false, true)) {
+                        emitter.complete();
+                    }
+                } catch (Exception e) {
+                    // 客户端已断开，等待其携带事件序号重连
+                    pending.clear();
+                    completed.set(true);
+                    job.subscribers.remove(this);
+                    log.debug("任务 {} 的订阅已断开: {}", job.getId(), e.getMessage());
+                } finally {
+                    draining.set(false);
+                }
+            }
+        }
+    }
+}
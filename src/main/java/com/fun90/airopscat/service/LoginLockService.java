@@ -2,7 +2,6 @@ package com.fun90.airopscat.service;
 
 import com.fun90.airopscat.model.entity.User;
 import com.fun90.airopscat.repository.UserRepository;
-import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,21 +16,22 @@ public class LoginLockService {
     @Autowired
     private UserRepository userRepository;
 
-    @Transactional
+    @Autowired
+    private SqliteWriteExecutor writeExecutor;
+
     public void increaseFailedAttempts(User user) {
         int newFailedAttempts = user.getFailedAttempts() + 1;
         user.setFailedAttempts(newFailedAttempts);
-        userRepository.updateFailedAttempts(newFailedAttempts, user.getEmail());
+        writeExecutor.run(() -> userRepository.updateFailedAttempts(newFailedAttempts, user.getEmail()));
     }
 
-    @Transactional
     public void resetFailedAttempts(String username) {
-        userRepository.updateFailedAttempts(0, username);
+        writeExecutor.run(() -> userRepository.updateFailedAttempts(0, username));
     }
     
     public void lock(User user) {
         user.setLockTime(LocalDateTime.now());
-        userRepository.save(user);
+        writeExecutor.run(() -> userRepository.save(user));
     }
 
     public boolean isAccountNonLocked(User user) {
@@ -2,53 +2,62 @@ package com.fun90.airopscat.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fun90.airopscat.model.dto.CoreManagementResult;
+import com.fun90.airopscat.model.dto.CorePipelineResult;
 import com.fun90.airopscat.model.dto.DeploymentResult;
+import com.fun90.airopscat.model.dto.HealthProbeResult;
 import com.fun90.airopscat.model.dto.SshConfig;
-import com.fun90.airopscat.model.dto.xray.InboundConfig;
-import com.fun90.airopscat.model.dto.xray.OutboundConfig;
-import com.fun90.airopscat.model.dto.xray.XrayConfig;
-import com.fun90.airopscat.model.dto.xray.routing.RoutingRule;
-import com.fun90.airopscat.model.dto.xray.setting.InboundSetting;
-import com.fun90.airopscat.model.dto.xray.setting.inbound.VlessInboundSetting;
-import com.fun90.airopscat.model.dto.xray.setting.inbound.VlessInboundSetting.VlessClient;
 import com.fun90.airopscat.model.entity.Account;
 import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.model.entity.Server;
 import com.fun90.airopscat.model.entity.ServerConfig;
 import com.fun90.airopscat.model.entity.ServerNode;
-import com.fun90.airopscat.model.entity.Tag;
 import com.fun90.airopscat.model.enums.CoreOperation;
+import com.fun90.airopscat.model.event.NodeChangedEvent;
 import com.fun90.airopscat.repository.NodeRepository;
 import com.fun90.airopscat.repository.ServerConfigRepository;
 import com.fun90.airopscat.repository.ServerNodeRepository;
 import com.fun90.airopscat.repository.ServerRepository;
-import com.fun90.airopscat.repository.TagRepository;
+import com.fun90.airopscat.service.core.CoreHealthProbe;
 import com.fun90.airopscat.service.core.CoreManagementService;
-import com.fun90.airopscat.service.xray.registry.ConversionStrategyRegistry;
-import com.fun90.airopscat.service.xray.strategy.ConversionStrategy;
-import com.fun90.airopscat.utils.ConfigFileReader;
+import com.fun90.airopscat.service.core.CoreOperationPipeline;
+import com.fun90.airopscat.service.core.XrayUserSyncService;
+import com.fun90.airopscat.service.xray.XrayConfigAssembler;
+import com.fun90.airopscat.utils.ConfigHashUtil;
 import com.fun90.airopscat.utils.JsonUtil;
 
-import jakarta.transaction.Transactional;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * 节点部署服务 - 负责节点的部署和配置管理
+ * 多台服务器并发部署：每台服务器先在短事务内生成配置，事务外执行远程操作，再以独立事务提交部署状态
  */
 @Slf4j
 @Service
@@ -59,9 +68,29 @@ public class NodeDeploymentService {
     private final ServerRepository serverRepository;
     private final ServerNodeRepository serverNodeRepository;
     private final ServerConfigRepository serverConfigRepository;
-    private final ConversionStrategyRegistry strategyRegistry;
+    private final XrayConfigAssembler xrayConfigAssembler;
     private final CoreManagementService coreManagementService;
-    private final TagRepository tagRepository;
+    private final TagService tagService;
+    private final AccountSuspensionRegistry suspensionRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final XrayUserSyncService xrayUserSyncService;
+    private final TransactionTemplate transactionTemplate;
+    private final JobRegistry jobRegistry;
+    private final WaveRolloutPlanner wavePlanner;
+    private final CoreHealthProbe coreHealthProbe;
+
+    @Value("${airopscat.deploy.hot-user-sync:true}")
+    private boolean hotUserSync;
+
+    @Value("${airopscat.deploy.max-concurrency:8}")
+    private int maxConcurrency;
+
+    private final ExecutorService rolloutExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * 同一服务器同一时间只允许一个部署，避免并发批次互相覆盖配置
+     */
+    private final Map<Long, ReentrantLock> serverLocks = new ConcurrentHashMap<>();
 
     private static final String CORE_TYPE_HYSTERIA = "hysteria";
     private static final String CORE_TYPE_XRAY = "xray";
@@ -74,7 +103,6 @@ public class NodeDeploymentService {
      * @param nodeIds 节点ID列表，如果为空则部署所有未部署的节点
      * @return 部署结果列表
      */
-    @Transactional
     public List<DeploymentResult> deployNodes(List<Long> nodeIds) {
         log.info("开始批量部署节点，节点ID列表: {}", nodeIds);
 
@@ -85,19 +113,22 @@ public class NodeDeploymentService {
                 return Collections.emptyList();
             }
 
-            return processNodesByServer(undeployedNodes);
+            return startRollout(collectServerIds(undeployedNodes), "批量部署节点").await();
         } catch (Exception e) {
             log.error("批量部署节点失败", e);
             throw new RuntimeException("节点部署失败: " + e.getMessage(), e);
         }
     }
 
-    @Transactional
+    /**
+     * 强制部署节点所在的服务器：不比较配置摘要、不热同步，完整上传配置并重启，
+     * 用于修复被手动修改或与记录不一致的服务器
+     */
     public List<DeploymentResult> deployNodesForcibly(List<Node> nodes) {
-        log.info("开始批量部署节点，节点列表: {}", nodes);
+        log.info("开始强制部署节点，节点数量: {}", nodes.size());
 
         try {
-            return processNodesByServer(nodes);
+            return startRollout(collectServerIds(nodes), "强制部署节点", true).await();
         } catch (Exception e) {
             log.error("批量部署节点失败", e);
             throw new RuntimeException("节点部署失败: " + e.getMessage(), e);
@@ -105,228 +136,482 @@ public class NodeDeploymentService {
     }
 
     /**
-     * 获取未部署的节点列表
+     * 按当前数据重新部署节点所在的服务器，配置没有变化的跳过，仅用户变化的热同步
      */
-    private List<Node> getUndeployedNodes(List<Long> nodeIds) {
-        if (CollectionUtils.isNotEmpty(nodeIds)) {
-            return nodeRepository.findByDeployedAndIdIn(0, nodeIds);
-        } else {
-            return nodeRepository.findByDeployed(0);
+    public List<DeploymentResult> redeployNodes(List<Node> nodes, String description) {
+        try {
+            return startRedeploy(nodes, description).await();
+        } catch (Exception e) {
+            log.error("批量部署节点失败", e);
+            throw new RuntimeException("节点部署失败: " + e.getMessage(), e);
         }
     }
 
     /**
-     * 按服务器分组处理节点
+     * 在后台重新部署节点所在的服务器，立即返回进度句柄，规则同 redeployNodes
      */
-    private List<DeploymentResult> processNodesByServer(List<Node> nodes) {
-        List<DeploymentResult> results = new ArrayList<>();
-
-        Set<Long> serverIds = nodes.stream().map(Node::getServerId).collect(Collectors.toSet());
-
-        for (Long serverId : serverIds) {
-            List<Node> serverNodes = nodeRepository.findByServerId(serverId);
+    public DeploymentRollout startRedeploy(List<Node> nodes, String description) {
+        log.info("开始重新部署节点，节点数量: {}", nodes.size());
+        return startRollout(collectServerIds(nodes), description);
+    }
 
-            try {
-                results.addAll(deployNodesForServer(serverId, serverNodes));
-            } catch (Exception e) {
-                log.error("服务器 {} 的节点部署失败", serverId, e);
-                results.addAll(createFailureResults(serverNodes, e.getMessage()));
-            }
+    /**
+     * 在后台部署节点，立即返回进度句柄，进度通过同ID的后台任务推送
+     *
+     * @param nodeIds   节点ID列表，非强制部署时为空表示全部未部署的节点
+     * @param forcibly  是否连同已部署的节点一起重新部署
+     * @param waved     是否分批发布，每批通过健康检查后才继续
+     */
+    public DeploymentRollout startDeployment(List<Long> nodeIds, boolean forcibly, boolean waved) {
+        List<Node> nodes;
+        if (forcibly) {
+            nodes = CollectionUtils.isNotEmpty(nodeIds) ? nodeRepository.findAllById(nodeIds) : Collections.emptyList();
+        } else {
+            nodes = getUndeployedNodes(nodeIds);
         }
+        String description = forcibly ? "强制部署节点" : "批量部署节点";
+        return waved ? startWaveRollout(collectServerIds(nodes), description, forcibly)
+                : startRollout(collectServerIds(nodes), description, forcibly);
+    }
 
-        return results;
+    public DeploymentRollout startRollout(Collection<Long> serverIds) {
+        return startRollout(serverIds, "部署服务器");
+    }
+
+    public DeploymentRollout startRollout(Collection<Long> serverIds, String description) {
+        return startRollout(serverIds, description, false);
     }
 
     /**
-     * 为特定服务器部署节点
+     * 启动部署批次，立即返回进度句柄
+     * 各服务器并发部署，同时进行的数量不超过 airopscat.deploy.max-concurrency
+     *
+     * @param serverIds   需要重新部署的服务器ID
+     * @param description 后台任务说明
+     * @param forcibly    是否强制完整部署（不因配置摘要一致而跳过，也不热同步用户）
      */
-    private List<DeploymentResult> deployNodesForServer(Long serverId, List<Node> nodes) {
-        log.info("开始为服务器(ID: {}) 部署 {} 个节点", serverId, nodes.size());
-
-        Map<String, List<Node>> coreTypeNodeMap = nodes.stream()
-                .collect(Collectors.groupingBy(node -> determineCoreType(node.getProtocol())));
-
-        List<DeploymentResult> results = new ArrayList<>();
+    public DeploymentRollout startRollout(Collection<Long> serverIds, String description, boolean forcibly) {
+        Set<Long> targets = new LinkedHashSet<>(serverIds);
+        DeploymentRollout rollout = new DeploymentRollout(jobRegistry.create("deploy", description, targets.size()), targets.size());
+        log.info("部署批次 {} 开始，服务器数量: {}，并发上限: {}", rollout.getId(), targets.size(), maxConcurrency);
+
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+        CompletableFuture<?>[] tasks = targets.stream()
+                .map(serverId -> CompletableFuture.runAsync(() -> runServerDeployment(rollout, serverId, permits, forcibly), rolloutExecutor))
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(tasks).whenComplete((ignored, error) -> {
+            rollout.finish();
+            log.info("部署批次 {} 结束: {}", rollout.getId(), rollout.snapshot());
+        });
+        return rollout;
+    }
 
-        for (Map.Entry<String, List<Node>> coreEntry : coreTypeNodeMap.entrySet()) {
-            String coreType = coreEntry.getKey();
-            List<Node> coreNodes = coreEntry.getValue();
+    /**
+     * 分批部署：先部署金丝雀服务器，此后每批规模递增
+     * 每批部署完成后检查内核服务、节点端口和内核自检，全部通过才继续下一批；
+     * 任一服务器部署失败或检查未通过时停止发布，将已发布的服务器恢复为原配置，其余服务器不再部署
+     */
+    public DeploymentRollout startWaveRollout(Collection<Long> serverIds, String description, boolean forcibly) {
+        List<Long> targets = new ArrayList<>(new LinkedHashSet<>(serverIds));
+        List<List<Long>> waves = wavePlanner.plan(targets);
+        DeploymentRollout rollout = new DeploymentRollout(jobRegistry.create("deploy", description + "（分批）", targets.size()), targets.size());
+        log.info("分批部署 {} 开始，服务器数量: {}，共 {} 批", rollout.getId(), targets.size(), waves.size());
+
+        CompletableFuture.runAsync(() -> runWaves(rollout, waves, forcibly), rolloutExecutor).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("分批部署 {} 异常结束", rollout.getId(), error);
+            }
+            rollout.finish();
+            log.info("分批部署 {} 结束: {}", rollout.getId(), rollout.snapshot());
+        });
+        return rollout;
+    }
 
-            try {
-                results.addAll(deployNodesForCore(serverId, coreType, coreNodes));
-            } catch (Exception e) {
-                log.error("服务器 {} 的 {} 核心节点部署失败", serverId, coreType, e);
-                results.addAll(createFailureResults(coreNodes, e.getMessage()));
+    private void runWaves(DeploymentRollout rollout, List<List<Long>> waves, boolean forcibly) {
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+        List<ServerDeploymentPlan> released = new ArrayList<>();
+        for (int i = 0; i < waves.size(); i++) {
+            List<Long> wave = waves.get(i);
+            String waveName = String.format("第 %d/%d 批", i + 1, waves.size());
+            rollout.step(null, null, "wave", true, waveName + "开始，" + wave.size() + " 台服务器", 0);
+
+            List<CompletableFuture<ServerOutcome>> tasks = wave.stream()
+                    .map(serverId -> CompletableFuture.supplyAsync(() -> runServerDeployment(rollout, serverId, permits, forcibly), rolloutExecutor))
+                    .toList();
+            List<ServerOutcome> outcomes = tasks.stream().map(CompletableFuture::join).toList();
+            outcomes.stream().map(ServerOutcome::plan).filter(Objects::nonNull).forEach(released::add);
+
+            String failure = outcomes.stream()
+                    .filter(ServerOutcome::failed)
+                    .findFirst()
+                    .map(outcome -> "服务器 " + outcome.serverId() + " 部署失败")
+                    .orElseGet(() -> probeWave(rollout, outcomes));
+            if (failure != null) {
+                log.warn("部署批次 {} {}未通过: {}，停止发布并回滚 {} 台服务器", rollout.getId(), waveName, failure, released.size());
+                rollout.step(null, null, "halt", false, waveName + "未通过: " + failure + "，停止发布并回滚", 0);
+                released.forEach(plan -> rollbackServer(rollout, plan));
+                String cancelled = "前序批次未通过，已取消: " + failure;
+                waves.subList(i + 1, waves.size()).forEach(remaining -> remaining.forEach(serverId ->
+                        rollout.serverFinished(serverId, List.of(new DeploymentResult(null, serverId, false, cancelled)), false)));
+                return;
             }
+            rollout.step(null, null, "wave", true, waveName + "通过健康检查", 0);
         }
+    }
 
-        return results;
+    /**
+     * 并发检查本批中配置有变化的服务器
+     *
+     * @return 第一个未通过的原因，全部通过时返回null
+     */
+    private String probeWave(DeploymentRollout rollout, List<ServerOutcome> outcomes) {
+        List<CompletableFuture<String>> probes = new ArrayList<>();
+        for (ServerOutcome outcome : outcomes) {
+            ServerDeploymentPlan plan = outcome.plan();
+            if (plan == null || plan.getSshConfig() == null) {
+                continue;
+            }
+            Map<String, Set<Integer>> portsByCoreType = new HashMap<>();
+            for (DeploymentUnit unit : plan.getUnits()) {
+                if (unit.getError() == null && !unit.isUnchanged()) {
+                    Set<Integer> ports = portsByCoreType.computeIfAbsent(unit.getCoreType(), coreType -> new LinkedHashSet<>());
+                    unit.getNodes().stream().map(Node::getPort).filter(Objects::nonNull).forEach(ports::add);
+                }
+            }
+            if (portsByCoreType.isEmpty()) {
+                continue;
+            }
+            String host = plan.getSshConfig().getHost();
+            probes.add(CompletableFuture.supplyAsync(() -> {
+                HealthProbeResult probe = coreHealthProbe.probe(plan.getSshConfig(), portsByCoreType);
+                rollout.step(plan.getServerId(), host, "probe", probe.isHealthy(),
+                        probe.getMessage() + "（检查 " + probe.getAttempts() + " 次）", probe.getElapsedMillis());
+                return probe.isHealthy() ? null : "服务器 " + host + " " + probe.getMessage();
+            }, rolloutExecutor));
+        }
+        return probes.stream().map(CompletableFuture::join).filter(Objects::nonNull).findFirst().orElse(null);
     }
 
     /**
-     * 为特定核心类型部署节点
+     * 将已发布的服务器恢复为上次部署的配置，并把相关节点标记为未部署
      */
-    private List<DeploymentResult> deployNodesForCore(Long serverId, String coreType, List<Node> nodes) {
-        log.info("为服务器 {} 的 {} 核心部署 {} 个节点", serverId, coreType, nodes.size());
+    private void rollbackServer(DeploymentRollout rollout, ServerDeploymentPlan plan) {
+        Long serverId = plan.getServerId();
+        ReentrantLock lock = serverLocks.computeIfAbsent(serverId, id -> new ReentrantLock());
+        lock.lock();
+        try {
+            for (DeploymentUnit unit : plan.getUnits()) {
+                if (unit.getError() != null || unit.isUnchanged()) {
+                    continue;
+                }
+                String host = plan.getSshConfig().getHost();
+                String previous = unit.getDeployedConfig();
+                if (previous == null) {
+                    rollout.step(serverId, host, "rollback", false, unit.getCoreType() + " 没有可恢复的配置", 0);
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    deployConfigToServer(serverId, unit.getCoreType(), plan.getSshConfig(), previous,
+                            CoreOperationPipeline.Listener.NONE);
+                    List<Long> nodeIds = unit.getNodes().stream().map(Node::getId).toList();
+                    transactionTemplate.executeWithoutResult(status -> {
+                        saveServerConfig(serverId, unit.getCoreType(), previous, ConfigHashUtil.hash(previous));
+                        nodeRepository.markUndeployed(nodeIds, LocalDateTime.now());
+                        eventPublisher.publishEvent(new NodeChangedEvent(nodeIds, false));
+                    });
+                    rollout.step(serverId, host, "rollback", true, unit.getCoreType() + " 已恢复原配置",
+                            (System.nanoTime() - start) / 1_000_000);
+                } catch (Exception e) {
+                    log.error("服务器 {} 的 {} 配置回滚失败", serverId, unit.getCoreType(), e);
+                    rollout.step(serverId, host, "rollback", false, unit.getCoreType() + " 回滚失败: " + e.getMessage(),
+                            (System.nanoTime() - start) / 1_000_000);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        List<DeploymentResult> results = new ArrayList<>();
+    @PreDestroy
+    public void shutdownRolloutExecutor() {
+        rolloutExecutor.shutdown();
+    }
 
-        if (CORE_TYPE_XRAY.equals(coreType)) {
-            results.addAll(deployXrayNodes(serverId, nodes));
-        } else if (CORE_TYPE_HYSTERIA.equals(coreType)) {
-            results.addAll(deployHysteriaNodes(serverId, nodes));
+    /**
+     * 获取未部署的节点列表
+     */
+    private List<Node> getUndeployedNodes(List<Long> nodeIds) {
+        if (CollectionUtils.isNotEmpty(nodeIds)) {
+            return nodeRepository.findByDeployedAndIdIn(0, nodeIds);
         } else {
-            log.warn("不支持的核心类型: {}", coreType);
-            results.addAll(createFailureResults(nodes, "不支持的核心类型: " + coreType));
+            return nodeRepository.findByDeployed(0);
         }
+    }
 
-        return results;
+    private Set<Long> collectServerIds(List<Node> nodes) {
+        return nodes.stream().map(Node::getServerId).filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     /**
-     * 部署Xray节点
+     * 在部署线程上执行单台服务器的部署，并向进度句柄汇报
      */
-    private List<DeploymentResult> deployXrayNodes(Long serverId, List<Node> nodes) {
-        List<DeploymentResult> results = new ArrayList<>();
-
-        // 1. 生成Xray配置
-        XrayConfig xrayConfig = generateXrayConfig(nodes);
-
-        // 2. 保存服务器配置
-        ServerConfig serverConfig = saveServerConfig(serverId, CORE_TYPE_XRAY, xrayConfig);
+    private ServerOutcome runServerDeployment(DeploymentRollout rollout, Long serverId, Semaphore permits, boolean forcibly) {
+        ServerDeploymentPlan plan = null;
+        List<DeploymentResult> results = Collections.emptyList();
+        boolean succeeded = false;
+        ReentrantLock lock = serverLocks.computeIfAbsent(serverId, id -> new ReentrantLock());
+        try {
+            lock.lockInterruptibly();
+            try {
+                permits.acquire();
+                try {
+                    rollout.serverStarted(serverId);
+                    plan = deployServer(rollout, serverId, forcibly);
+                    results = plan != null ? plan.getResults() : Collections.emptyList();
+                    succeeded = true;
+                } finally {
+                    permits.release();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("服务器 {} 的部署被中断", serverId);
+        } catch (Exception e) {
+            log.error("服务器 {} 的节点部署失败", serverId, e);
+            results = List.of(new DeploymentResult(null, serverId, false, e.getMessage()));
+        } finally {
+            rollout.serverFinished(serverId, results, succeeded);
+        }
+        boolean failed = !succeeded || results.stream().anyMatch(result -> !result.isSuccess());
+        return new ServerOutcome(serverId, plan, failed);
+    }
 
-        // 3. 远程部署配置
-        deployConfigToServer(serverId, CORE_TYPE_XRAY, serverConfig.getConfig());
+    /**
+     * 为特定服务器部署节点
+     * 1. 短事务内读取节点并生成配置（出站节点为延迟加载，须在事务内访问）
+     * 2. 事务外上传配置、重启或热同步用户
+     * 3. 独立短事务保存配置与节点部署状态
+     *
+     * @param forcibly 是否强制完整部署
+     * @return 部署计划及各节点的部署结果，服务器上没有节点时返回null
+     */
+    private ServerDeploymentPlan deployServer(DeploymentRollout rollout, Long serverId, boolean forcibly) {
+        long planStart = System.nanoTime();
+        ServerDeploymentPlan plan = transactionTemplate.execute(status -> planServerDeployment(serverId));
+        if (plan == null || plan.getNodes().isEmpty()) {
+            return null;
+        }
+        plan.setForcibly(forcibly);
+        log.info("开始为服务器(ID: {}) 部署 {} 个节点", serverId, plan.getNodes().size());
+        String host = plan.getSshConfig() != null ? plan.getSshConfig().getHost() : null;
+        long planMillis = (System.nanoTime() - planStart) / 1_000_000;
+        for (DeploymentUnit unit : plan.getUnits()) {
+            rollout.step(serverId, host, "plan", unit.getError() == null,
+                    unit.getCoreType() + (unit.getError() == null ? " 配置已生成" : " 配置生成失败: " + unit.getError()), planMillis);
+        }
 
-        // 4. 更新节点状态
-        results.addAll(updateNodeDeploymentStatus(nodes));
+        for (DeploymentUnit unit : plan.getUnits()) {
+            if (unit.getError() == null) {
+                executeRemoteDeployment(rollout, plan, unit);
+            }
+        }
 
-        return results;
+        try {
+            plan.setResults(transactionTemplate.execute(status -> commitServerDeployment(plan)));
+        } catch (Exception e) {
+            log.error("服务器 {} 的部署状态提交失败", serverId, e);
+            plan.setResults(createFailureResults(plan.getNodes(), "状态更新失败: " + e.getMessage()));
+        }
+        return plan;
     }
 
     /**
-     * 部署Hysteria节点
+     * 生成服务器的部署计划，按核心类型划分部署单元
      */
-    private List<DeploymentResult> deployHysteriaNodes(Long serverId, List<Node> nodes) {
-        List<DeploymentResult> results = new ArrayList<>();
+    private ServerDeploymentPlan planServerDeployment(Long serverId) {
+        ServerDeploymentPlan plan = new ServerDeploymentPlan();
+        plan.setServerId(serverId);
+        plan.setNodes(nodeRepository.findByServerId(serverId));
+        if (plan.getNodes().isEmpty()) {
+            return plan;
+        }
 
-        for (Node node : nodes) {
-            try {
-                // Hysteria节点单独部署
-                String hysteriaConfig = generateHysteriaConfig(node);
-                ServerConfig serverConfig = saveServerConfig(serverId, CORE_TYPE_HYSTERIA, hysteriaConfig);
-                deployConfigToServer(serverId, CORE_TYPE_HYSTERIA, serverConfig.getConfig());
+        Optional<Server> server = serverRepository.findById(serverId);
+        Map<String, List<Node>> coreTypeNodeMap = plan.getNodes().stream()
+                .collect(Collectors.groupingBy(node -> determineCoreType(node.getProtocol())));
+        if (server.isEmpty()) {
+            coreTypeNodeMap.forEach((coreType, nodes) ->
+                    plan.getUnits().add(DeploymentUnit.failed(coreType, nodes, "服务器不存在: " + serverId)));
+            return plan;
+        }
+        plan.setSshConfig(createSshConfig(server.get()));
+        Map<String, ServerConfig> storedConfigs = serverConfigRepository.findByServerId(serverId).stream()
+                .collect(Collectors.toMap(ServerConfig::getConfigType, Function.identity(), (a, b) -> a));
 
-                results.add(updateSingleNodeDeploymentStatus(node));
+        List<Node> xrayNodes = coreTypeNodeMap.getOrDefault(CORE_TYPE_XRAY, Collections.emptyList());
+        if (!xrayNodes.isEmpty()) {
+            DeploymentUnit unit = new DeploymentUnit(CORE_TYPE_XRAY, xrayNodes);
+            try {
+                unit.setConfig(generateXrayConfig(xrayNodes));
+                applyStoredConfig(unit, storedConfigs.get(CORE_TYPE_XRAY));
             } catch (Exception e) {
-                log.error("Hysteria节点 {} 部署失败", node.getId(), e);
-                results.add(createFailureResult(node, e.getMessage()));
+                log.error("服务器 {} 的 {} 核心配置生成失败", serverId, CORE_TYPE_XRAY, e);
+                unit.setError(e.getMessage());
             }
+            plan.getUnits().add(unit);
         }
 
-        return results;
+        // Hysteria节点单独部署
+        for (Node node : coreTypeNodeMap.getOrDefault(CORE_TYPE_HYSTERIA, Collections.emptyList())) {
+            DeploymentUnit unit = new DeploymentUnit(CORE_TYPE_HYSTERIA, List.of(node));
+            try {
+                unit.setConfig(generateHysteriaConfig(node));
+                applyStoredConfig(unit, storedConfigs.get(CORE_TYPE_HYSTERIA));
+            } catch (Exception e) {
+                log.error("Hysteria节点 {} 配置生成失败", node.getId(), e);
+                unit.setError(e.getMessage());
+            }
+            plan.getUnits().add(unit);
+        }
+        return plan;
     }
 
     /**
-     * 生成Xray配置
+     * 计算配置摘要，并带上服务器上已生效的配置信息
      */
-    private XrayConfig generateXrayConfig(List<Node> nodes) {
-        String configTemplate = ConfigFileReader.readFileContent("templates/core/xray.json");
-        XrayConfig xrayConfig = JsonUtil.toObject(configTemplate, XrayConfig.class);
-
-        List<InboundConfig> inbounds = xrayConfig.getInbounds().stream().filter(o ->  StringUtils.startsWith(o.getTag(), "default-")).collect(Collectors.toList());
-        List<OutboundConfig> outbounds = xrayConfig.getOutbounds().stream().filter(o ->  StringUtils.startsWith(o.getTag(), "default-")).collect(Collectors.toList());
-        List<RoutingRule> routingRules = xrayConfig.getRouting().getRules().stream().filter(o -> StringUtils.startsWith(o.getRuleTag(), "default-")).collect(Collectors.toList());
-
-        for (Node node : nodes) {
-            processNodeConfiguration(node, inbounds, outbounds, routingRules);
+    private void applyStoredConfig(DeploymentUnit unit, ServerConfig stored) {
+        unit.setConfigHash(ConfigHashUtil.hash(unit.getConfig()));
+        if (stored == null) {
+            return;
+        }
+        unit.setDeployedHash(stored.getDeployedHash());
+        // 记录的配置被手动修改过且未下发时，不能作为热同步的基准
+        if (stored.getDeployedHash() == null || stored.getDeployedHash().equals(stored.getConfigHash())) {
+            unit.setDeployedConfig(stored.getConfig());
         }
-
-        xrayConfig.setInbounds(inbounds);
-        xrayConfig.setOutbounds(outbounds);
-        xrayConfig.getRouting().setRules(routingRules);
-
-        return xrayConfig;
     }
 
     /**
-     * 处理单个节点的配置
+     * 执行部署单元的远程操作，失败原因记录在单元上
      */
-    private void processNodeConfiguration(Node node, List<InboundConfig> inbounds, List<OutboundConfig> outbounds,
-            List<RoutingRule> routingRules) {
-
-        if (node.getInbound() == null) {
-            log.warn("节点 {} 的入站配置为空，跳过处理", node.getId());
+    private void executeRemoteDeployment(DeploymentRollout rollout, ServerDeploymentPlan plan, DeploymentUnit unit) {
+        Long serverId = plan.getServerId();
+        String host = plan.getSshConfig().getHost();
+        // 与记录的已下发配置一致，无需上传和重启；强制部署用于修复服务器上被改动的配置，不做比较
+        if (!plan.isForcibly() && unit.getConfigHash() != null && unit.getConfigHash().equals(unit.getDeployedHash())) {
+            log.info("服务器 {} 的 {} 配置没有变化，跳过部署", serverId, unit.getCoreType());
+            unit.setUnchanged(true);
+            rollout.step(serverId, host, "skip", true, unit.getCoreType() + " 配置没有变化", 0);
             return;
         }
+        try {
+            // 仅用户变化时热同步，不重启内核
+            long syncStart = System.nanoTime();
+            if (!plan.isForcibly() && CORE_TYPE_XRAY.equals(unit.getCoreType()) && hotUserSync && trySyncXrayUsers(plan, unit)) {
+                rollout.step(serverId, host, unit.isUnchanged() ? "skip" : "sync", true,
+                        unit.isUnchanged() ? "Xray配置没有变化" : "Xray用户已热同步", (System.nanoTime() - syncStart) / 1_000_000);
+                return;
+            }
+            deployConfigToServer(serverId, unit.getCoreType(), plan.getSshConfig(), unit.getConfig(),
+                    new CoreOperationPipeline.Listener() {
+                        @Override
+                        public void onConnected(long connectMillis) {
+                            rollout.step(serverId, host, "connect", true, "SSH连接已建立", connectMillis);
+                        }
+
+                        @Override
+                        public void onStep(CoreOperationPipeline.Step step, CoreManagementResult result) {
+                            rollout.step(serverId, host, step.getOperation().getCode(), result.isSuccess(),
+                                    unit.getCoreType() + " " + result.getMessage(), result.getDuration());
+                        }
+
+                        @Override
+                        public void onRollback(CoreOperationPipeline.Step step, CoreManagementResult result) {
+                            rollout.step(serverId, host, "rollback", result.isSuccess(),
+                                    unit.getCoreType() + " " + result.getMessage(), result.getDuration());
+                        }
+                    });
+        } catch (Exception e) {
+            log.error("服务器 {} 的 {} 核心节点部署失败", plan.getServerId(), unit.getCoreType(), e);
+            unit.setError(e.getMessage());
+        }
+    }
 
-        InboundConfig inbound = JsonUtil.toObject(node.getInbound(), InboundConfig.class);
-        InboundSetting inboundSetting = inbound.getSettings();
-        // 如果inboundSetting是VlessInboundSetting，则设置clients
-        if (inboundSetting instanceof VlessInboundSetting) {
-            VlessInboundSetting vlessInboundSetting = (VlessInboundSetting) inboundSetting;
-            Set<Tag> tags = node.getTags();
-            // 直接在数据库层面查询有效的账户，避免在应用层过滤
-            List<Account> accounts = tagRepository.findActiveAccountsByTagIds(
-                tags.stream().map(Tag::getId).collect(Collectors.toList()), 
-                LocalDateTime.now()
-            );
-            List<VlessClient> clients = accounts.stream().map(a -> {
-                VlessClient client = new VlessClient();
-                client.setId(a.getUuid());
-                client.setEmail(a.getAccountNo());
-                client.setFlow("xtls-rprx-vision");
-                return client;
-            }).collect(Collectors.toList());
-            vlessInboundSetting.setClients(clients);
+    /**
+     * 尝试以增删用户的方式同步到服务器
+     * 与上次部署的配置相比只有客户端变化时，通过xray api增删用户，再更新配置文件（不重启）
+     *
+     * @return 是否已完成同步，false时需要完整部署
+     */
+    private boolean trySyncXrayUsers(ServerDeploymentPlan plan, DeploymentUnit unit) {
+        Long serverId = plan.getServerId();
+        XrayUserSyncService.UserDelta delta = xrayUserSyncService.diff(unit.getDeployedConfig(), unit.getConfig());
+        if (delta == null) {
+            return false;
+        }
+        if (delta.isEmpty()) {
+            log.info("服务器 {} 的Xray配置没有变化，跳过部署", serverId);
+            unit.setUnchanged(true);
+            return true;
         }
-        inbound.setTag(node.getTag());
-        inbound.setPort(node.getPort());
-        inbounds.add(inbound);
 
-        if (node.getOutId() != null) {
-            addOutboundConfiguration(node, outbounds);
+        try {
+            xrayUserSyncService.apply(plan.getSshConfig(), delta);
+        } catch (Exception e) {
+            log.warn("服务器 {} 用户热同步失败，改为完整部署: {}", serverId, e.getMessage());
+            return false;
         }
 
-        if (node.getRule() != null) {
-            addRoutingRule(node, routingRules);
+        // 持久化配置文件，内核下次重启时仍保持一致
+        CoreManagementResult configResult = coreManagementService.executeOperation(CORE_TYPE_XRAY, CoreOperation.CONFIG,
+                plan.getSshConfig(), unit.getConfig());
+        if (configResult == null || !configResult.isSuccess()) {
+            log.warn("服务器 {} 配置文件更新失败，改为完整部署: {}", serverId,
+                    configResult != null ? configResult.getMessage() : "未知错误");
+            return false;
         }
+        return true;
     }
 
     /**
-     * 添加出站配置
+     * 提交服务器的部署结果：保存已下发的配置并更新节点状态
+     * 配置仅在远程部署成功后保存，保证记录的始终是服务器上实际运行的配置
      */
-    private void addOutboundConfiguration(Node node, List<OutboundConfig> outbounds) {
-        Node outNode = node.getOutNode();
-        if (outNode == null) {
-            return;
-        }
-        InboundConfig outInbound = JsonUtil.toObject(outNode.getInbound(), InboundConfig.class);
-        Server outServer = serverRepository.findById(outNode.getServerId())
-                .orElseThrow(() -> new IllegalArgumentException("出站服务器不存在: " + outNode.getServerId()));
-
-        ConversionStrategy strategy = strategyRegistry.getStrategy(outInbound.getProtocol());
-        if (strategy != null) {
-            String host = StringUtils.isBlank(outServer.getHost()) ? outServer.getIp() : outServer.getHost();
-            OutboundConfig outbound = strategy.convert(outInbound, host, outNode.getPort());
-            outbound.setTag(node.getId().toString());
-            outbounds.add(outbound);
+    private List<DeploymentResult> commitServerDeployment(ServerDeploymentPlan plan) {
+        List<DeploymentResult> results = new ArrayList<>();
+        List<Node> deployedNodes = new ArrayList<>();
+        for (DeploymentUnit unit : plan.getUnits()) {
+            if (unit.getError() != null) {
+                results.addAll(createFailureResults(unit.getNodes(), unit.getError()));
+                continue;
+            }
+            saveServerConfig(plan.getServerId(), unit.getCoreType(), unit.getConfig(), unit.getConfigHash());
+            deployedNodes.addAll(unit.getNodes());
+            for (Node node : unit.getNodes()) {
+                DeploymentResult result = createSuccessResult(node, unit.isUnchanged() ? "配置没有变化，跳过部署" : "节点部署成功");
+                result.setUnchanged(unit.isUnchanged());
+                results.add(result);
+            }
         }
+        updateNodeDeploymentStatus(plan.getServerId(), deployedNodes);
+        return results;
     }
 
     /**
-     * 添加路由规则
+     * 生成Xray配置
      */
-    private void addRoutingRule(Node node, List<RoutingRule> routingRules) {
-        Node outNode = node.getOutNode();
-        if (outNode == null) {
-            return;
-        }
-        RoutingRule routingRule = new RoutingRule();
-        routingRule.setInboundTag(Collections.singletonList(node.getTag()));
-        routingRule.setOutboundTag(outNode.getTag());
-        routingRule.setType("field");
-        routingRules.add(routingRule);
+    private String generateXrayConfig(List<Node> nodes) {
+        // 一次查询解析全部节点的授权账户，排除因超出在线IP上限而临时停用的账户
+        Map<Long, List<Account>> clientsByNode = new HashMap<>();
+        tagService.getActiveAccountsByNodes(nodes.stream().map(Node::getId).toList())
+                .forEach((nodeId, accounts) -> clientsByNode.put(nodeId, accounts.stream()
+                        .filter(a -> !suspensionRegistry.isSuspended(a.getAccountNo()))
+                        .toList()));
+        return xrayConfigAssembler.assemble(nodes, clientsByNode);
     }
 
     /**
@@ -343,17 +628,14 @@ public class NodeDeploymentService {
     }
 
     /**
-     * 保存服务器配置
+     * 保存服务器配置，并记录为服务器上已生效的配置
      */
-    private ServerConfig saveServerConfig(Long serverId, String coreType, Object config) {
+    private ServerConfig saveServerConfig(Long serverId, String coreType, String config, String configHash) {
         ServerConfig serverConfig = serverConfigRepository.findByServerIdAndConfigType(serverId, coreType)
-                .orElse(createNewServerConfig(serverId, coreType));
-
-        if (config instanceof XrayConfig) {
-            serverConfig.setConfig(JsonUtil.toJsonStringPretty(config));
-        } else {
-            serverConfig.setConfig(config.toString());
-        }
+                .orElseGet(() -> createNewServerConfig(serverId, coreType));
+        serverConfig.setConfig(config);
+        serverConfig.setConfigHash(configHash);
+        serverConfig.setDeployedHash(configHash);
         return serverConfigRepository.save(serverConfig);
     }
 
@@ -369,31 +651,21 @@ public class NodeDeploymentService {
     }
 
     /**
-     * 部署配置到服务器
+     * 部署配置到服务器：同一会话内上传配置并重启，重启失败时恢复原配置
      */
-    private void deployConfigToServer(Long serverId, String coreType, String config) {
-        Server server = serverRepository.findById(serverId)
-                .orElseThrow(() -> new IllegalArgumentException("服务器不存在: " + serverId));
-
-        SshConfig sshConfig = createSshConfig(server);
-
-        // 上传配置
-        CoreManagementResult configResult = coreManagementService.executeOperation(coreType, CoreOperation.CONFIG,
-                sshConfig, config);
-
-        if (configResult == null || !configResult.isSuccess()) {
-            throw new RuntimeException("配置上传失败: " + (configResult != null ? configResult.getMessage() : "未知错误"));
-        }
-
-        // 重启服务
-        CoreManagementResult restartResult = coreManagementService.executeOperation(coreType, CoreOperation.RESTART,
-                sshConfig);
-
-        if (restartResult == null || !restartResult.isSuccess()) {
-            throw new RuntimeException("服务重启失败: " + (restartResult != null ? restartResult.getMessage() : "未知错误"));
+    private void deployConfigToServer(Long serverId, String coreType, SshConfig sshConfig, String config,
+                                      CoreOperationPipeline.Listener listener) {
+        CorePipelineResult result = coreManagementService.executePipeline(
+                CoreOperationPipeline.deployConfig(coreType, config), sshConfig, listener);
+
+        if (!result.isSuccess()) {
+            String stage = CoreOperation.RESTART.name().equals(result.getFailedOperation()) ? "服务重启失败: " : "配置上传失败: ";
+            throw new RuntimeException(stage + Objects.toString(result.getMessage(), "未知错误")
+                    + (result.isRolledBack() ? "（已恢复原配置）" : ""));
         }
 
-        log.info("服务器 {} 的 {} 配置部署成功", serverId, coreType);
+        log.info("服务器 {} 的 {} 配置部署成功，耗时 {}ms（连接 {}ms）", serverId, coreType,
+                result.getTotalMillis(), result.getConnectMillis());
     }
 
     /**
@@ -418,71 +690,35 @@ public class NodeDeploymentService {
     }
 
     /**
-     * 更新节点部署状态
+     * 更新节点部署状态，同一服务器的节点在一次提交内完成
      */
-    private List<DeploymentResult> updateNodeDeploymentStatus(List<Node> nodes) {
-        List<DeploymentResult> results = new ArrayList<>();
-
-        for (Node node : nodes) {
-            try {
-                results.add(updateSingleNodeDeploymentStatus(node));
-            } catch (Exception e) {
-                log.error("更新节点 {} 状态失败", node.getId(), e);
-                results.add(createFailureResult(node, "状态更新失败: " + e.getMessage()));
-            }
+    private void updateNodeDeploymentStatus(Long serverId, List<Node> nodes) {
+        if (nodes.isEmpty()) {
+            return;
         }
 
-        return results;
-    }
-
-    /**
-     * 更新单个节点的部署状态
-     */
-    private DeploymentResult updateSingleNodeDeploymentStatus(Node node) {
-        try {
-            // 创建或更新ServerNode
-            ServerNode serverNode = serverNodeRepository.findByServerId(node.getServerId()).stream()
-                    .filter(sn -> sn.getId().equals(node.getId())).findFirst().orElse(null);
-
-            if (serverNode == null) {
-                serverNode = createServerNodeFromNode(node);
-            } else {
-                updateServerNodeFromNode(serverNode, node);
-            }
-
-            serverNodeRepository.save(serverNode);
-
-            // 更新节点部署状态
-            node.setDeployed(1);
-            nodeRepository.save(node);
-
-            return createSuccessResult(node, "节点部署成功");
-        } catch (Exception e) {
-            log.error("更新节点 {} 部署状态失败", node.getId(), e);
-            return createFailureResult(node, "状态更新失败: " + e.getMessage());
+        // 创建或更新ServerNode
+        Map<Long, ServerNode> existing = serverNodeRepository.findByServerId(serverId).stream()
+                .collect(Collectors.toMap(ServerNode::getId, Function.identity(), (a, b) -> a));
+        List<ServerNode> serverNodes = new ArrayList<>();
+        for (Node node : nodes) {
+            ServerNode serverNode = existing.getOrDefault(node.getId(), new ServerNode());
+            copyNodeToServerNode(serverNode, node);
+            serverNodes.add(serverNode);
         }
-    }
+        serverNodeRepository.saveAll(serverNodes);
 
-    /**
-     * 从Node创建ServerNode
-     */
-    private ServerNode createServerNodeFromNode(Node node) throws JsonProcessingException {
-        ServerNode serverNode = new ServerNode();
-        copyNodeToServerNode(serverNode, node);
-        return serverNode;
-    }
-
-    /**
-     * 从Node更新ServerNode
-     */
-    private void updateServerNodeFromNode(ServerNode serverNode, Node node) throws JsonProcessingException {
-        copyNodeToServerNode(serverNode, node);
+        // 更新节点部署状态（节点在计划阶段加载，已脱离会话，直接按ID更新）
+        List<Long> nodeIds = nodes.stream().map(Node::getId).toList();
+        nodeRepository.markDeployed(nodeIds, LocalDateTime.now());
+        nodes.forEach(node -> node.setDeployed(1));
+        eventPublisher.publishEvent(new NodeChangedEvent(nodeIds, false));
     }
 
     /**
      * 复制Node属性到ServerNode
      */
-    private void copyNodeToServerNode(ServerNode serverNode, Node node) throws JsonProcessingException {
+    private void copyNodeToServerNode(ServerNode serverNode, Node node) {
         serverNode.setServerId(node.getServerId());
         serverNode.setId(node.getId());
         serverNode.setPort(node.getPort());
@@ -540,4 +776,53 @@ public class NodeDeploymentService {
     private List<DeploymentResult> createFailureResults(List<Node> nodes, String message) {
         return nodes.stream().map(node -> createFailureResult(node, message)).collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    /**
+     * 单台服务器的部署计划，远程操作只依赖其中已加载的数据
+     */
+    @Data
+    private static class ServerDeploymentPlan {
+        private Long serverId;
+        private List<Node> nodes = Collections.emptyList();
+        private SshConfig sshConfig;
+        /**
+         * 强制部署：跳过配置摘要比较和用户热同步
+         */
+        private boolean forcibly;
+        private final List<DeploymentUnit> units = new ArrayList<>();
+        private List<DeploymentResult> results = Collections.emptyList();
+    }
+
+    /**
+     * 单台服务器的部署结果，分批部署时用于健康检查和回滚
+     */
+    private record ServerOutcome(Long serverId, ServerDeploymentPlan plan, boolean failed) {
+    }
+
+    /**
+     * 部署单元：Xray节点共用一份配置，Hysteria节点各自一份
+     */
+    @Data
+    private static class DeploymentUnit {
+        private final String coreType;
+        private final List<Node> nodes;
+        private String config;
+        private String configHash;
+        /**
+         * 上次成功部署的配置，用于判断能否热同步用户，也是分批发布回滚时恢复的配置
+         */
+        private String deployedConfig;
+        /**
+         * 服务器上已生效的配置摘要
+         */
+        private String deployedHash;
+        private boolean unchanged;
+        private String error;
+
+        static DeploymentUnit failed(String coreType, List<Node> nodes, String error) {
+            DeploymentUnit unit = new DeploymentUnit(coreType, nodes);
+            unit.setError(error);
+            return unit;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.model.entity.Server;
 import com.fun90.airopscat.model.enums.NodeType;
 import com.fun90.airopscat.model.enums.ProtocolType;
+import com.fun90.airopscat.model.event.NodeChangedEvent;
 import com.fun90.airopscat.repository.NodeRepository;
 import com.fun90.airopscat.repository.ServerRepository;
 import jakarta.persistence.EntityNotFoundException;
@@ -19,6 +20,7 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -38,14 +40,17 @@ public class NodeService {
     private final NodeRepository nodeRepository;
     private final ServerRepository serverRepository;
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public NodeService(NodeRepository nodeRepository, 
                       ServerRepository serverRepository, 
-                      ObjectMapper objectMapper) {
+                      ObjectMapper objectMapper,
+                      ApplicationEventPublisher eventPublisher) {
         this.nodeRepository = nodeRepository;
         this.serverRepository = serverRepository;
         this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<Node> getNodePage(int page, int size, String search, Long serverId, Integer type, Boolean disabled) {
@@ -223,6 +228,7 @@ public class NodeService {
         Node updatedNode = nodeRepository.save(existingNode);
         Server server = serverRepository.findById(updatedNode.getServerId()).orElse(null);
         updatedNode.setServer(server);
+        eventPublisher.publishEvent(NodeChangedEvent.of(updatedNode.getId()));
         return updatedNode;
     }
 
@@ -300,6 +306,7 @@ public class NodeService {
     @Transactional
     public void deleteNode(Long id) {
         nodeRepository.deleteById(id);
+        eventPublisher.publishEvent(NodeChangedEvent.of(id));
     }
 
     @Transactional
@@ -309,7 +316,9 @@ public class NodeService {
             Node node = optionalNode.get();
             node.setDisabled(disabled ? 1 : 0);
             node.setDeployed(0);
-            return nodeRepository.save(node);
+            Node savedNode = nodeRepository.save(node);
+            eventPublisher.publishEvent(NodeChangedEvent.of(id));
+            return savedNode;
         }
         return null;
     }
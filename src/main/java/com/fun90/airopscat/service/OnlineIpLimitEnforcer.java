@@ -0,0 +1,205 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.model.entity.Node;
+import com.fun90.airopscat.repository.AccountRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线IP上限执行器
+ * 订阅在线索引的超限状态变化（每次心跳只做O(1)的状态登记），
+ * 持续超限达到观察期后临时停用账户并重新部署其节点，停用期满且不再超限时恢复
+ * 全局限制每分钟的执行次数，避免反复上下线的客户端引发部署风暴
+ */
+@Slf4j
+@Service
+public class OnlineIpLimitEnforcer implements OnlinePresenceIndex.LimitListener {
+
+    private final OnlinePresenceIndex presenceIndex;
+    private final AccountSuspensionRegistry suspensionRegistry;
+    private final AccountRepository accountRepository;
+    private final TagService tagService;
+    private final NodeDeploymentService nodeDeploymentService;
+
+    @Value("${airopscat.online.enforce.enabled:false}")
+    private boolean enabled;
+
+    @Value("${airopscat.online.enforce.sustain-seconds:60}")
+    private long sustainSeconds;
+
+    @Value("${airopscat.online.enforce.suspend-minutes:15}")
+    private long suspendMinutes;
+
+    @Value("${airopscat.online.enforce.max-actions-per-minute:10}")
+    private int maxActionsPerMinute;
+
+    /**
+     * 账户进入超限状态的时间（毫秒）
+     */
+    private final Map<String, Long> overLimitSince = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一分钟内的执行时间，仅在调度线程访问
+     */
+    private final Deque<Long> recentActions = new ArrayDeque<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "online-limit-enforcer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OnlineIpLimitEnforcer(OnlinePresenceIndex presenceIndex,
+                                 AccountSuspensionRegistry suspensionRegistry,
+                                 AccountRepository accountRepository,
+                                 TagService tagService,
+                                 NodeDeploymentService nodeDeploymentService) {
+        this.presenceIndex = presenceIndex;
+        this.suspensionRegistry = suspensionRegistry;
+        this.accountRepository = accountRepository;
+        this.tagService = tagService;
+        this.nodeDeploymentService = nodeDeploymentService;
+    }
+
+    @PostConstruct
+    public void register() {
+        if (enabled) {
+            presenceIndex.addLimitListener(this);
+            log.info("在线IP上限执行已启用，观察期 {} 秒，停用 {} 分钟", sustainSeconds, suspendMinutes);
+        }
+    }
+
+    /**
+     * 重启后为持久化的停用登记重新安排解除，已到期的立即解除并重新部署
+     * 未启用执行时也会解除，避免账户在所有节点上一直被排除
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rescheduleLifts() {
+        LocalDateTime now = LocalDateTime.now();
+        suspensionRegistry.getSuspendedAccounts().forEach((accountNo, until) -> {
+            long delayMillis = Math.max(0, Duration.between(now, until).toMillis());
+            scheduler.schedule(() -> lift(accountNo), delayMillis, TimeUnit.MILLISECONDS);
+            log.info("账户 {} 的临时停用将于 {} 解除", accountNo, until);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void onLimitStateChanged(String accountNo, boolean overLimit, int ipCount) {
+        if (!overLimit) {
+            overLimitSince.remove(accountNo);
+            return;
+        }
+        if (overLimitSince.putIfAbsent(accountNo, System.currentTimeMillis()) == null) {
+            log.debug("账户 {} 在线IP数 {} 超出上限，进入观察期", accountNo, ipCount);
+            scheduler.schedule(() -> evaluate(accountNo), sustainSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 观察期结束后确认是否仍持续超限
+     */
+    private void evaluate(String accountNo) {
+        Long since = overLimitSince.get(accountNo);
+        if (since == null || suspensionRegistry.isSuspended(accountNo)) {
+            return;
+        }
+        long remaining = since + TimeUnit.SECONDS.toMillis(sustainSeconds) - System.currentTimeMillis();
+        if (remaining > 0) {
+            // 期间曾回落又再次超限，按新的起点继续观察
+            scheduler.schedule(() -> evaluate(accountNo), remaining, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (!tryAcquireAction()) {
+            log.warn("在线IP上限执行达到每分钟 {} 次上限，账户 {} 延后处理", maxActionsPerMinute, accountNo);
+            scheduler.schedule(() -> evaluate(accountNo), 1, TimeUnit.MINUTES);
+            return;
+        }
+
+        log.warn("账户 {} 在线IP数 {} 持续超出上限 {}，临时停用 {} 分钟",
+                accountNo, presenceIndex.countOnlineIps(accountNo), presenceIndex.getAccountLimit(accountNo), suspendMinutes);
+        suspensionRegistry.suspend(accountNo, LocalDateTime.now().plusMinutes(suspendMinutes));
+        redeployAccountNodes(accountNo);
+        scheduler.schedule(() -> lift(accountNo), suspendMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 停用期满：仍超限则顺延，否则恢复并重新部署
+     */
+    private void lift(String accountNo) {
+        if (!suspensionRegistry.isSuspended(accountNo)) {
+            return;
+        }
+        if (overLimitSince.containsKey(accountNo) || !tryAcquireAction()) {
+            scheduler.schedule(() -> lift(accountNo), 1, TimeUnit.MINUTES);
+            return;
+        }
+        suspensionRegistry.lift(accountNo);
+        redeployAccountNodes(accountNo);
+    }
+
+    /**
+     * 仅重新部署该账户可用节点所在的服务器
+     * 只启动部署批次、不等待完成，调度线程不被SSH部署占用，其他账户的观察期判定和解除按时执行
+     */
+    private void redeployAccountNodes(String accountNo) {
+        try {
+            Optional<Account> account = accountRepository.findByAccountNo(accountNo);
+            if (account.isEmpty()) {
+                suspensionRegistry.lift(accountNo);
+                return;
+            }
+            List<Node> nodes = tagService.getAvailableNodesByAccount(account.get().getId()).stream()
+                    .filter(node -> Integer.valueOf(1).equals(node.getDeployed()))
+                    .toList();
+            if (nodes.isEmpty()) {
+                return;
+            }
+            DeploymentRollout rollout = nodeDeploymentService.startRedeploy(nodes, "在线IP上限");
+            rollout.getCompletion().whenComplete((results, error) -> {
+                if (error != null) {
+                    log.error("账户 {} 相关节点重新部署失败: {}", accountNo, error.getMessage());
+                    return;
+                }
+                long failures = results.stream().filter(result -> !result.isSuccess()).count();
+                log.info("账户 {} 相关节点重新部署完成，服务器: {}，失败: {}", accountNo, results.size(), failures);
+            });
+        } catch (Exception e) {
+            log.error("账户 {} 相关节点重新部署失败: {}", accountNo, e.getMessage());
+        }
+    }
+
+    private boolean tryAcquireAction() {
+        long now = System.currentTimeMillis();
+        while (!recentActions.isEmpty() && now - recentActions.peekFirst() > TimeUnit.MINUTES.toMillis(1)) {
+            recentActions.pollFirst();
+        }
+        if (recentActions.size() >= maxActionsPerMinute) {
+            return false;
+        }
+        recentActions.addLast(now);
+        return true;
+    }
+}
@@ -0,0 +1,431 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.model.event.AccountChangedEvent;
+import com.fun90.airopscat.model.telemetry.AccountOnlineIp;
+import com.fun90.airopscat.repository.telemetry.AccountOnlineIpRepository;
+import com.fun90.airopscat.repository.AccountRepository;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线状态内存索引
+ * 按账户、按节点维护活跃的客户端IP，心跳按分钟分桶，超出检查窗口的桶整体过期
+ * 查询只读内存，耗时与结果规模成正比，不访问数据库
+ */
+@Slf4j
+@Service
+public class OnlinePresenceIndex {
+
+    /**
+     * 上限缓存中表示不限制的值，已加载但不限制的账户也在缓存中，避免心跳时重复查询
+     */
+    private static final int UNLIMITED = 0;
+
+    /**
+     * 不存在账户的记忆数量上限和有效期，心跳接口未鉴权，须防止被随机账户号撑满
+     */
+    private static final int UNKNOWN_ACCOUNT_CAPACITY = 10000;
+    private static final long UNKNOWN_ACCOUNT_TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final AccountOnlineIpRepository accountOnlineIpRepository;
+    private final AccountRepository accountRepository;
+
+    @Value("${airopscat.online.check-minutes:5}")
+    private int checkMinutes;
+
+    /**
+     * 每个在线组合的最近心跳时间
+     */
+    private final Map<Presence, LocalDateTime> lastSeen = new ConcurrentHashMap<>();
+    /**
+     * 每个在线组合当前所在的分钟桶
+     */
+    private final Map<Presence, Long> bucketOf = new ConcurrentHashMap<>();
+    /**
+     * 分钟桶 -> 该分钟内最后一次心跳的组合
+     */
+    private final NavigableMap<Long, Set<Presence>> buckets = new ConcurrentSkipListMap<>();
+    /**
+     * 账户 -> 客户端IP -> 该IP在线的节点数
+     */
+    private final Map<String, Map<String, Integer>> ipsByAccount = new ConcurrentHashMap<>();
+    /**
+     * 账户 -> 在线组合
+     */
+    private final Map<String, Set<Presence>> presencesByAccount = new ConcurrentHashMap<>();
+    /**
+     * 节点 -> 在线组合
+     */
+    private final Map<String, Set<Presence>> presencesByNode = new ConcurrentHashMap<>();
+    /**
+     * 账户在线IP上限缓存，包含全部已知账户，无限制的账户为 UNLIMITED
+     */
+    private final Map<String, Integer> limitByAccount = new ConcurrentHashMap<>();
+    /**
+     * 账户ID -> 账户编号，账户编号变更时据此移除旧编号
+     */
+    private final Map<Long, String> accountNoById = new ConcurrentHashMap<>();
+    /**
+     * 已确认不存在的账户 -> 记忆到期时间，按最近访问淘汰，避免重复查询
+     */
+    private final Map<String, Long> unknownAccounts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > UNKNOWN_ACCOUNT_CAPACITY;
+        }
+    };
+    /**
+     * 当前超出在线IP上限的账户
+     */
+    private final Set<String> overLimitAccounts = ConcurrentHashMap.newKeySet();
+
+    private final List<LimitListener> limitListeners = new CopyOnWriteArrayList<>();
+
+    private final Object writeLock = new Object();
+
+    public OnlinePresenceIndex(AccountOnlineIpRepository accountOnlineIpRepository, AccountRepository accountRepository) {
+        this.accountOnlineIpRepository = accountOnlineIpRepository;
+        this.accountRepository = accountRepository;
+    }
+
+    /**
+     * 启动后从数据库重建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        LocalDateTime checkStartTime = LocalDateTime.now().minusMinutes(checkMinutes);
+        List<AccountOnlineIp> records = accountOnlineIpRepository.findByLastOnlineTimeAfter(checkStartTime);
+        synchronized (writeLock) {
+            limitByAccount.clear();
+            accountNoById.clear();
+            for (Account account : accountRepository.findAll()) {
+                cacheAccount(account);
+            }
+            for (AccountOnlineIp record : records) {
+                record(record.getAccountNo(), record.getClientIp(), record.getNodeIp(), record.getLastOnlineTime());
+            }
+        }
+        log.info("Online presence index rebuilt with {} active records", records.size());
+    }
+
+    /**
+     * 记录一次心跳
+     * 同一分钟内重复心跳只更新时间，不加锁；不存在的账户的心跳直接丢弃
+     * @return 是否已记录
+     */
+    public boolean record(String accountNo, String clientIp, String nodeIp, LocalDateTime time) {
+        Presence presence = new Presence(accountNo, clientIp, nodeIp);
+        if (!limitByAccount.containsKey(accountNo) && !loadLimit(accountNo)) {
+            return false;
+        }
+        long bucket = toMinute(time);
+        LocalDateTime previous = lastSeen.put(presence, time);
+        if (previous != null && Objects.equals(bucketOf.get(presence), bucket)) {
+            return true;
+        }
+        synchronized (writeLock) {
+            lastSeen.merge(presence, time, (current, incoming) -> incoming.isAfter(current) ? incoming : current);
+            Long oldBucket = bucketOf.put(presence, bucket);
+            if (oldBucket != null) {
+                if (oldBucket == bucket) {
+                    return true;
+                }
+                Set<Presence> members = buckets.get(oldBucket);
+                if (members != null) {
+                    members.remove(presence);
+                }
+            }
+            buckets.computeIfAbsent(bucket, key -> ConcurrentHashMap.newKeySet()).add(presence);
+            if (oldBucket == null) {
+                addPresence(presence);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 每分钟清理超出检查窗口的分钟桶
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void expire() {
+        long oldestValidBucket = toMinute(LocalDateTime.now().minusMinutes(checkMinutes));
+        int removed = 0;
+        synchronized (writeLock) {
+            NavigableMap<Long, Set<Presence>> expired = buckets.headMap(oldestValidBucket, false);
+            for (Set<Presence> members : expired.values()) {
+                for (Presence presence : members) {
+                    bucketOf.remove(presence);
+                    lastSeen.remove(presence);
+                    removePresence(presence);
+                    removed++;
+                }
+            }
+            expired.clear();
+        }
+        if (removed > 0) {
+            log.debug("Expired {} online presences", removed);
+        }
+    }
+
+    /**
+     * 账户在线IP上限变更
+     */
+    public void updateAccountLimit(String accountNo, Integer maxOnlineIps) {
+        if (accountNo == null) {
+            return;
+        }
+        forgetUnknown(accountNo);
+        synchronized (writeLock) {
+            cacheLimit(accountNo, maxOnlineIps);
+            evaluateLimit(accountNo);
+        }
+    }
+
+    /**
+     * 账户变更提交后刷新上限缓存（含账户编号变更），已删除的账户由 removeAccount 处理
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        if (!event.isDeploymentRelevant() || event.getAccountIds() == null || event.getAccountIds().isEmpty()) {
+            return;
+        }
+        for (Account account : accountRepository.findAllById(event.getAccountIds())) {
+            if (account.getAccountNo() == null) {
+                continue;
+            }
+            forgetUnknown(account.getAccountNo());
+            synchronized (writeLock) {
+                cacheAccount(account);
+                evaluateLimit(account.getAccountNo());
+            }
+        }
+    }
+
+    /**
+     * 账户删除时移除缓存的上限
+     */
+    public void removeAccount(String accountNo) {
+        synchronized (writeLock) {
+            limitByAccount.remove(accountNo);
+            accountNoById.values().remove(accountNo);
+            overLimitAccounts.remove(accountNo);
+        }
+    }
+
+    /**
+     * 节点上的在线组合及最近心跳时间
+     */
+    public Map<Presence, LocalDateTime> getPresencesByNode(String nodeIp) {
+        return snapshot(presencesByNode.getOrDefault(nodeIp, Collections.emptySet()));
+    }
+
+    /**
+     * 账户的在线组合及最近心跳时间
+     */
+    public Map<Presence, LocalDateTime> getPresencesByAccount(String accountNo) {
+        return snapshot(presencesByAccount.getOrDefault(accountNo, Collections.emptySet()));
+    }
+
+    /**
+     * 全部在线组合及最近心跳时间
+     */
+    public Map<Presence, LocalDateTime> getAllPresences() {
+        return new LinkedHashMap<>(lastSeen);
+    }
+
+    /**
+     * 账户当前在线的客户端IP数
+     */
+    public int countOnlineIps(String accountNo) {
+        Map<String, Integer> ips = ipsByAccount.get(accountNo);
+        return ips != null ? ips.size() : 0;
+    }
+
+    /**
+     * 当前在线账户数
+     */
+    public int countOnlineAccounts() {
+        return ipsByAccount.size();
+    }
+
+    /**
+     * 超出在线IP上限的账户 -> 当前在线IP数
+     */
+    public Map<String, Integer> getAccountsExceedingLimit() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String accountNo : overLimitAccounts) {
+            result.put(accountNo, countOnlineIps(accountNo));
+        }
+        return result;
+    }
+
+    /**
+     * 注册超限状态监听器，监听器在索引写锁内同步调用，必须快速返回
+     */
+    public void addLimitListener(LimitListener listener) {
+        limitListeners.add(listener);
+    }
+
+    /**
+     * 账户的在线IP上限，无限制返回null
+     */
+    public Integer getAccountLimit(String accountNo) {
+        Integer limit = limitByAccount.get(accountNo);
+        return limit != null && limit != UNLIMITED ? limit : null;
+    }
+
+    private void addPresence(Presence presence) {
+        presencesByNode.computeIfAbsent(presence.getNodeIp(), key -> ConcurrentHashMap.newKeySet()).add(presence);
+        presencesByAccount.computeIfAbsent(presence.getAccountNo(), key -> ConcurrentHashMap.newKeySet()).add(presence);
+        ipsByAccount.computeIfAbsent(presence.getAccountNo(), key -> new ConcurrentHashMap<>())
+                .merge(presence.getClientIp(), 1, Integer::sum);
+        evaluateLimit(presence.getAccountNo());
+    }
+
+    private void removePresence(Presence presence) {
+        removeFrom(presencesByNode, presence.getNodeIp(), presence);
+        removeFrom(presencesByAccount, presence.getAccountNo(), presence);
+        Map<String, Integer> ips = ipsByAccount.get(presence.getAccountNo());
+        if (ips != null) {
+            ips.computeIfPresent(presence.getClientIp(), (ip, count) -> count > 1 ? count - 1 : null);
+            if (ips.isEmpty()) {
+                ipsByAccount.remove(presence.getAccountNo());
+            }
+        }
+        evaluateLimit(presence.getAccountNo());
+    }
+
+    private static void removeFrom(Map<String, Set<Presence>> index, String key, Presence presence) {
+        Set<Presence> presences = index.get(key);
+        if (presences != null) {
+            presences.remove(presence);
+            if (presences.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void evaluateLimit(String accountNo) {
+        Integer limit = getAccountLimit(accountNo);
+        int ipCount = countOnlineIps(accountNo);
+        boolean overLimit = limit != null && ipCount > limit;
+        boolean changed = overLimit ? overLimitAccounts.add(accountNo) : overLimitAccounts.remove(accountNo);
+        if (changed) {
+            for (LimitListener listener : limitListeners) {
+                try {
+                    listener.onLimitStateChanged(accountNo, overLimit, ipCount);
+                } catch (Exception e) {
+                    log.warn("Online limit listener failed for account {}: {}", accountNo, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询并缓存账户上限
+     * @return 账户是否存在；不存在的账户在有效期内不再查询
+     */
+    private boolean loadLimit(String accountNo) {
+        if (accountNo == null || isKnownUnknown(accountNo)) {
+            return false;
+        }
+        Optional<Account> account = accountRepository.findByAccountNo(accountNo);
+        if (account.isEmpty()) {
+            synchronized (unknownAccounts) {
+                unknownAccounts.put(accountNo, System.nanoTime() + UNKNOWN_ACCOUNT_TTL_NANOS);
+            }
+            return false;
+        }
+        synchronized (writeLock) {
+            cacheAccount(account.get());
+        }
+        return true;
+    }
+
+    private boolean isKnownUnknown(String accountNo) {
+        synchronized (unknownAccounts) {
+            Long expiresAt = unknownAccounts.get(accountNo);
+            if (expiresAt == null) {
+                return false;
+            }
+            if (System.nanoTime() - expiresAt > 0) {
+                unknownAccounts.remove(accountNo);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private void forgetUnknown(String accountNo) {
+        synchronized (unknownAccounts) {
+            unknownAccounts.remove(accountNo);
+        }
+    }
+
+    private void cacheAccount(Account account) {
+        if (account.getAccountNo() == null) {
+            return;
+        }
+        String previousAccountNo = account.getId() != null ? accountNoById.put(account.getId(), account.getAccountNo()) : null;
+        if (previousAccountNo != null && !previousAccountNo.equals(account.getAccountNo())) {
+            limitByAccount.remove(previousAccountNo);
+            overLimitAccounts.remove(previousAccountNo);
+        }
+        cacheLimit(account.getAccountNo(), account.getMaxOnlineIps());
+    }
+
+    private void cacheLimit(String accountNo, Integer maxOnlineIps) {
+        if (accountNo == null) {
+            return;
+        }
+        // 0或空表示不限制
+        limitByAccount.put(accountNo, maxOnlineIps != null && maxOnlineIps > 0 ? maxOnlineIps : UNLIMITED);
+    }
+
+    private Map<Presence, LocalDateTime> snapshot(Collection<Presence> presences) {
+        Map<Presence, LocalDateTime> result = new LinkedHashMap<>();
+        for (Presence presence : presences) {
+            LocalDateTime time = lastSeen.get(presence);
+            if (time != null) {
+                result.put(presence, time);
+            }
+        }
+        return result;
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond() / 60;
+    }
+
+    /**
+     * 账户超限状态变化监听器（进入或离开超限状态时各触发一次）
+     */
+    public interface LimitListener {
+        void onLimitStateChanged(String accountNo, boolean overLimit, int ipCount);
+    }
+
+    /**
+     * 在线组合：账户 + 客户端IP + 节点IP
+     */
+    @Data
+    public static class Presence {
+        private final String accountNo;
+        private final String clientIp;
+        private final String nodeIp;
+    }
+}
@@ -2,7 +2,7 @@ package com.fun90.airopscat.service;
 
 import com.fun90.airopscat.model.dto.DeploymentResult;
 import com.fun90.airopscat.model.entity.Account;
-import com.fun90.airopscat.model.entity.AccountTrafficStats;
+import com.fun90.airopscat.model.telemetry.AccountTrafficStats;
 import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.model.entity.Server;
 import com.fun90.airopscat.model.entity.ServerConfig;
@@ -13,20 +13,30 @@ import com.fun90.airopscat.model.dto.xray.setting.inbound.ShadowsocksInboundSett
 import com.fun90.airopscat.model.dto.xray.setting.inbound.SocksInboundSetting;
 import com.fun90.airopscat.model.dto.SshConfig;
 import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.TrafficCollectionReport;
+import com.fun90.airopscat.model.dto.TrafficUsage;
 import com.fun90.airopscat.repository.AccountRepository;
 import com.fun90.airopscat.repository.ServerConfigRepository;
 import com.fun90.airopscat.repository.ServerRepository;
 import com.fun90.airopscat.service.ssh.SshConnection;
 import com.fun90.airopscat.service.ssh.SshConnectionService;
 import com.fun90.airopscat.utils.JsonUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import jakarta.transaction.Transactional;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -46,7 +56,21 @@ public class ScheduledTaskService {
     private final ServerRepository serverRepository;
     private final SshConnectionService sshConnectionService;
     private final AccountTrafficStatsService accountTrafficStatsService;
-    private final AccountOnlineIpService accountOnlineIpService;
+
+    // 流量采集：虚拟线程执行SSH采集，单线程看门狗负责单机超时
+    private final ExecutorService trafficCollectorExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService trafficCollectorWatchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "traffic-collector-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile TrafficCollectionReport lastTrafficCollectionReport;
+
+    @Value("${airopscat.traffic.max-concurrency:16}")
+    private int trafficMaxConcurrency;
+
+    @Value("${airopscat.traffic.host-timeout-seconds:60}")
+    private long trafficHostTimeoutSeconds;
 
     /**
      * 每天凌晨5点执行的任务
@@ -67,17 +91,9 @@ public class ScheduledTaskService {
             
             log.info("找到 {} 个未禁用但已过期的账户", expiredAccounts.size());
             
-            // 2. 获取这些账户关联的所有节点ID
-            Set<Node> nodes = expiredAccounts.stream()
-                    .flatMap(account -> {
-                        try {
-                            return tagService.getAvailableNodesByAccount(account.getId()).stream();
-                        } catch (Exception e) {
-                            log.error("获取账户 {} 关联节点时发生错误: {}", account.getId(), e.getMessage());
-                            return java.util.stream.Stream.<Node>empty();
-                        }
-                    })
-                    .collect(Collectors.toSet());
+            // 2. 一次查询获取这些账户关联的所有节点
+            List<Node> nodes = tagService.getAvailableNodesByAccounts(
+                    expiredAccounts.stream().map(Account::getId).toList());
             
             if (nodes.isEmpty()) {
                 log.info("过期账户没有关联的节点，任务结束");
@@ -87,9 +103,7 @@ public class ScheduledTaskService {
             log.info("需要重新部署的节点数量: {}", nodes.size());
             
             // 3. 批量重新部署节点
-            List<DeploymentResult> deploymentResults = nodeDeploymentService.deployNodesForcibly(
-                    nodes.stream().toList()
-            );
+            List<DeploymentResult> deploymentResults = nodeDeploymentService.redeployNodes(nodes, "过期账户重新部署");
 
             // 4. 批量禁用过期账户 (使用编程式事务)
             try {
@@ -129,6 +143,7 @@ public class ScheduledTaskService {
     /**
      * 每隔15分钟执行的任务
      * 统计用户使用的流量，通过xray api命令获取数据并保存到AccountTrafficStats
+     * 各服务器并发采集（受全局SSH会话上限约束），单机超过期限即中断，采集结果按完成顺序提交给写线程，多台服务器的写入可合并为一次提交
      */
     @Scheduled(fixedRate = 15 * 60 * 1000) // 15分钟 = 15 * 60 * 1000毫秒
     public void collectUserTrafficStats() {
@@ -148,10 +163,12 @@ public class ScheduledTaskService {
             // 2. 当前时间（用于记录统计时间）
             LocalDateTime now = LocalDateTime.now();
             
-            int successCount = 0;
-            int failureCount = 0;
+            TrafficCollectionReport report = new TrafficCollectionReport();
+            report.setStartTime(now);
+            long startNanos = System.nanoTime();
             
-            // 3. 遍历每个Xray配置
+            // 3. 准备每台服务器的采集任务（数据库读取在当前线程完成，采集线程只做SSH和解析）
+            List<HostCollectionTask> tasks = new ArrayList<>();
             for (ServerConfig serverConfig : xrayConfigs) {
                 try {
                     // 获取服务器信息
@@ -165,25 +182,41 @@ public class ScheduledTaskService {
                     XrayConfig xrayConfig = JsonUtil.toObject(serverConfig.getConfig(), XrayConfig.class);
                     if (xrayConfig == null || xrayConfig.getInbounds() == null) {
                         log.warn("Xray配置解析失败，跳过服务器 {}", server.getId());
+                        report.setSkippedHosts(report.getSkippedHosts() + 1);
                         continue;
                     }
                     
-                    // 收集该服务器上所有用户的流量统计
-                    int serverSuccessCount = collectServerTrafficStats(server, xrayConfig);
-                    successCount += serverSuccessCount;
+                    // 遍历所有入站配置，提取用户邮箱
+                    Set<String> userEmails = new HashSet<>();
+                    for (InboundConfig inbound : xrayConfig.getInbounds()) {
+                        if (inbound.getSettings() != null) {
+                            userEmails.addAll(extractUserEmailsFromInbound(inbound));
+                        }
+                    }
+                    tasks.add(new HostCollectionTask(server, createSshConfig(server), userEmails));
                     
                 } catch (Exception e) {
                     log.error("处理服务器配置 {} 时发生错误: {}", serverConfig.getId(), e.getMessage());
-                    failureCount++;
+                    report.setSkippedHosts(report.getSkippedHosts() + 1);
                 }
             }
+            report.setTotalHosts(tasks.size());
             
-            log.info("流量统计收集完成 - 成功处理: {} 个配置, 失败: {} 个配置", successCount, failureCount);
+            // 4. 并发采集并按完成顺序写库
+            List<Long> hostMillis = collectHostsConcurrently(tasks, report);
+            
+            hostMillis.sort(Comparator.naturalOrder());
+            report.setP50Millis(percentile(hostMillis, 50));
+            report.setP99Millis(percentile(hostMillis, 99));
+            report.setMaxMillis(hostMillis.isEmpty() ? 0 : hostMillis.get(hostMillis.size() - 1));
+            report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            lastTrafficCollectionReport = report;
+            
+            log.info("流量统计收集完成 - {}", report.getSummary());
             
             // 发送通知
-            if (failureCount > 0) {
-                barkService.sendWarningNotification("AirOpsCat 流量统计", 
-                    String.format("流量统计收集完成，成功: %d, 失败: %d", successCount, failureCount));
+            if (report.hasFailures()) {
+                barkService.sendWarningNotification("AirOpsCat 流量统计", "流量统计收集完成，" + report.getSummary());
             }
             
         } catch (Exception e) {
@@ -195,74 +228,172 @@ public class ScheduledTaskService {
     }
     
     /**
-     * 收集单个服务器的流量统计
+     * 获取最近一次流量采集报告
      */
-    private int collectServerTrafficStats(Server server, XrayConfig xrayConfig) {
-        int successCount = 0;
+    public TrafficCollectionReport getLastTrafficCollectionReport() {
+        return lastTrafficCollectionReport;
+    }
+    
+    /**
+     * 并发采集所有服务器的流量统计，返回每台服务器的采集耗时（毫秒）
+     */
+    private List<Long> collectHostsConcurrently(List<HostCollectionTask> tasks, TrafficCollectionReport report) throws InterruptedException {
+        List<Long> hostMillis = new ArrayList<>();
+        if (tasks.isEmpty()) {
+            return hostMillis;
+        }
         
-        try {
-            // 创建SSH连接
-            SshConfig sshConfig = createSshConfig(server);
+        int permits = Math.max(1, trafficMaxConcurrency);
+        Semaphore sshPermits = new Semaphore(permits);
+        CompletionService<HostCollectionResult> completionService = new ExecutorCompletionService<>(trafficCollectorExecutor);
+        List<Future<HostCollectionResult>> futures = new ArrayList<>();
+        for (HostCollectionTask task : tasks) {
+            futures.add(completionService.submit(() -> collectHost(task, sshPermits)));
+        }
+        
+        // 整轮兜底期限：按并发窗口分批估算，再多留一个单机期限
+        long rounds = (tasks.size() + permits - 1) / permits + 1;
+        long runDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(trafficHostTimeoutSeconds * rounds);
+        
+        List<CompletableFuture<Integer>> persisted = new ArrayList<>();
+        int received = 0;
+        while (received < tasks.size()) {
+            long remaining = runDeadline - System.nanoTime();
+            Future<HostCollectionResult> future = remaining > 0
+                    ? completionService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (future == null) {
+                int pending = tasks.size() - received;
+                log.error("流量采集整轮超时，仍有 {} 台服务器未返回，放弃等待", pending);
+                report.setTimedOutHosts(report.getTimedOutHosts() + pending);
+                futures.forEach(f -> f.cancel(true));
+                break;
+            }
+            received++;
             
-            try (SshConnection connection = sshConnectionService.createConnection(sshConfig)) {
-                
-                // 使用statsquery一次性获取所有流量统计数据
-                Map<String, TrafficStats> allTrafficStats = getAllXrayTrafficStats(connection);
-                
-                if (allTrafficStats.isEmpty()) {
-                    log.info("服务器 {} 没有流量统计数据", server.getId());
-                    return 0;
-                }
-                
-                // 遍历所有入站配置，提取用户邮箱
-                Set<String> userEmails = new HashSet<>();
-                for (InboundConfig inbound : xrayConfig.getInbounds()) {
-                    if (inbound.getSettings() != null) {
-                        userEmails.addAll(extractUserEmailsFromInbound(inbound));
-                    }
-                }
-                
-                // 处理每个用户的流量统计
-                for (String userEmail : userEmails) {
-                    TrafficStats trafficStats = allTrafficStats.get(userEmail);
-                    
-                    if (trafficStats != null) {
-                        try {
-                            // 查找对应的账户
-                            Optional<Account> accountOpt = accountRepository.findByAccountNo(userEmail);
-                            if (accountOpt.isPresent()) {
-                                Account account = accountOpt.get();
-                                
-                                // 智能保存或更新流量统计（根据当前时间查询已有记录，匹配则累加，否则新增）
-                                accountTrafficStatsService.saveOrUpdateTrafficStats(
-                                    account.getId(),
-                                    account.getUserId(),
-                                    account.getPeriodType(),
-                                    trafficStats.getUploadBytes(),
-                                    trafficStats.getDownloadBytes()
-                                );
-                                successCount++;
-                                
-                                log.debug("处理用户 {} 流量统计: 上传 {} 字节, 下载 {} 字节", 
-                                    userEmail, trafficStats.getUploadBytes(), trafficStats.getDownloadBytes());
-                            } else {
-                                log.warn("未找到用户邮箱 {} 对应的账户", userEmail);
-                            }
-                        } catch (Exception e) {
-                            log.error("处理用户 {} 流量统计失败: {}", userEmail, e.getMessage());
-                        }
-                    } else {
-                        log.debug("用户 {} 没有流量数据", userEmail);
-                    }
-                }
-                
+            HostCollectionResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                log.error("流量采集任务异常: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                report.setFailedHosts(report.getFailedHosts() + 1);
+                continue;
             }
             
+            hostMillis.add(result.getElapsedMillis());
+            Server server = result.getTask().getServer();
+            if (result.isTimedOut()) {
+                log.warn("服务器 {} 流量采集超时（{}秒），已中断", server.getId(), trafficHostTimeoutSeconds);
+                report.setTimedOutHosts(report.getTimedOutHosts() + 1);
+            } else if (!result.isSuccess()) {
+                log.error("收集服务器 {} 流量统计失败: {}", server.getId(), result.getError());
+                report.setFailedHosts(report.getFailedHosts() + 1);
+            } else {
+                report.setCompletedHosts(report.getCompletedHosts() + 1);
+                persisted.add(persistServerTrafficStats(server, result.getTask().getUserEmails(), result.getTrafficStats()));
+            }
+        }
+        for (CompletableFuture<Integer> future : persisted) {
+            report.setProcessedUsers(report.getProcessedUsers() + future.join());
+        }
+        return hostMillis;
+    }
+    
+    /**
+     * 采集单个服务器的流量统计（运行于采集线程，不访问数据库）
+     */
+    private HostCollectionResult collectHost(HostCollectionTask task, Semaphore sshPermits) {
+        HostCollectionResult result = new HostCollectionResult(task);
+        try {
+            sshPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.setError("等待SSH会话许可时被中断");
+            return result;
+        }
+        
+        long startNanos = System.nanoTime();
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        Thread worker = Thread.currentThread();
+        // 单机期限：到期后中断采集线程，连接由try-with-resources关闭
+        ScheduledFuture<?> deadline = trafficCollectorWatchdog.schedule(() -> {
+            timedOut.set(true);
+            worker.interrupt();
+        }, trafficHostTimeoutSeconds, TimeUnit.SECONDS);
+        
+        try (SshConnection connection = sshConnectionService.createConnection(task.getSshConfig())) {
+            // 使用statsquery一次性获取所有流量统计数据
+            result.setTrafficStats(getAllXrayTrafficStats(connection));
+            // 计数器已被重置，取到的结果必须保留，之后关闭连接时不再计入超时
+            deadline.cancel(false);
+            result.setSuccess(true);
         } catch (Exception e) {
-            log.error("收集服务器 {} 流量统计失败: {}", server.getId(), e.getMessage());
+            result.setError(e.getMessage());
+        } finally {
+            deadline.cancel(false);
+            sshPermits.release();
+            result.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            if (timedOut.get() && result.getTrafficStats() == null) {
+                result.setTimedOut(true);
+                result.setSuccess(false);
+            }
+            // 清除看门狗可能留下的中断标记
+            Thread.interrupted();
+        }
+        return result;
+    }
+    
+    /**
+     * 保存单个服务器的流量统计（整台服务器的用户增量一次批量写入），返回写入的用户数，失败时为0
+     */
+    private CompletableFuture<Integer> persistServerTrafficStats(Server server, Set<String> userEmails, Map<String, TrafficUsage> allTrafficStats) {
+        if (allTrafficStats == null || allTrafficStats.isEmpty()) {
+            log.info("服务器 {} 没有流量统计数据", server.getId());
+            return CompletableFuture.completedFuture(0);
         }
         
-        return successCount;
+        // 只统计当前配置中的用户
+        Map<String, TrafficUsage> usageByAccountNo = new HashMap<>();
+        for (String userEmail : userEmails) {
+            TrafficUsage usage = allTrafficStats.get(userEmail);
+            if (usage != null) {
+                usageByAccountNo.put(userEmail, usage);
+            }
+        }
+        if (usageByAccountNo.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        
+        try {
+            return accountTrafficStatsService.submitTrafficStats(server.getId(), usageByAccountNo)
+                    .handle((count, error) -> {
+                        if (error != null) {
+                            log.error("保存服务器 {} 流量统计失败: {}", server.getId(), error.getMessage());
+                            return 0;
+                        }
+                        log.debug("服务器 {} 写入 {} 个用户流量统计", server.getId(), count);
+                        return count;
+                    });
+        } catch (RejectedExecutionException e) {
+            log.error("保存服务器 {} 流量统计失败: {}", server.getId(), e.getMessage());
+            return CompletableFuture.completedFuture(0);
+        }
+    }
+    
+    /**
+     * 计算已排序耗时列表的百分位
+     */
+    private long percentile(List<Long> sortedMillis, int percentile) {
+        if (sortedMillis.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedMillis.size()) - 1;
+        return sortedMillis.get(Math.max(0, Math.min(index, sortedMillis.size() - 1)));
+    }
+    
+    @PreDestroy
+    public void shutdownTrafficCollector() {
+        trafficCollectorWatchdog.shutdownNow();
+        trafficCollectorExecutor.shutdownNow();
     }
     
     /**
@@ -305,46 +436,36 @@ public class ScheduledTaskService {
     
     /**
      * 通过xray api statsquery一次性获取所有流量统计数据
+     * 命令执行失败或SSH异常时抛出，该服务器计为采集失败而不是采集到空结果
      */
-    private Map<String, TrafficStats> getAllXrayTrafficStats(SshConnection connection) {
-        Map<String, TrafficStats> trafficStatsMap = new HashMap<>();
+    private Map<String, TrafficUsage> getAllXrayTrafficStats(SshConnection connection) throws IOException {
+        // 使用statsquery命令一次性获取所有统计数据，并重置计数器
+        String command = "xray api statsquery --server=127.0.0.1:100 --reset=true";
         
-        try {
-            // 使用statsquery命令一次性获取所有统计数据，并重置计数器
-            String command = "xray api statsquery --server=127.0.0.1:100 --reset=true";
-            
-            CommandResult result = connection.executeCommand(command);
-            
-            if (!result.isSuccess()) {
-                log.error("执行xray statsquery命令失败: {}", result.getStderr());
-                return trafficStatsMap;
-            }
-            
-            // 解析JSON响应
-            String output = result.getStdout();
-            if (output == null || output.trim().isEmpty()) {
-                log.debug("xray statsquery返回空结果");
-                return trafficStatsMap;
-            }
-            
-            Map<String, TrafficStats> userTrafficMap = parseXrayStatsQueryOutput(output);
-            trafficStatsMap.putAll(userTrafficMap);
-            
-            log.debug("成功获取 {} 个用户的流量统计", userTrafficMap.size());
-            
-        } catch (Exception e) {
-            log.error("获取xray流量统计失败: {}", e.getMessage());
+        CommandResult result = connection.executeCommand(command);
+        
+        if (!result.isSuccess()) {
+            throw new IOException("执行xray statsquery命令失败: " + StringUtils.defaultIfBlank(result.getStderr(), result.getStdout()));
         }
         
-        return trafficStatsMap;
+        // 解析JSON响应
+        String output = result.getStdout();
+        if (output == null || output.trim().isEmpty()) {
+            log.debug("xray statsquery返回空结果");
+            return new HashMap<>();
+        }
+        
+        Map<String, TrafficUsage> userTrafficMap = parseXrayStatsQueryOutput(output);
+        log.debug("成功获取 {} 个用户的流量统计", userTrafficMap.size());
+        return userTrafficMap;
     }
     
     /**
      * 解析xray statsquery命令输出
      * 输出格式为: {"stat": [{"name": "user>>>username>>>traffic>>>uplink", "value": 173163}, ...]}
      */
-    private Map<String, TrafficStats> parseXrayStatsQueryOutput(String output) {
-        Map<String, TrafficStats> userTrafficMap = new HashMap<>();
+    private Map<String, TrafficUsage> parseXrayStatsQueryOutput(String output) {
+        Map<String, TrafficUsage> userTrafficMap = new HashMap<>();
         
         if (output == null || output.trim().isEmpty()) {
             return userTrafficMap;
@@ -416,7 +537,7 @@ public class ScheduledTaskService {
                 
                 // 只有当流量大于0时才记录
                 if (uploadBytes > 0 || downloadBytes > 0) {
-                    userTrafficMap.put(username, new TrafficStats(uploadBytes, downloadBytes));
+                    userTrafficMap.put(username, new TrafficUsage(uploadBytes, downloadBytes));
                 }
             }
             
@@ -449,44 +570,26 @@ public class ScheduledTaskService {
     }
     
     /**
-     * 流量统计数据类
+     * 单台服务器的采集任务
      */
-    private static class TrafficStats {
-        private final long uploadBytes;
-        private final long downloadBytes;
-        
-        public TrafficStats(long uploadBytes, long downloadBytes) {
-            this.uploadBytes = uploadBytes;
-            this.downloadBytes = downloadBytes;
-        }
-        
-        public long getUploadBytes() {
-            return uploadBytes;
-        }
-        
-        public long getDownloadBytes() {
-            return downloadBytes;
-        }
+    @Getter
+    @RequiredArgsConstructor
+    private static class HostCollectionTask {
+        private final Server server;
+        private final SshConfig sshConfig;
+        private final Set<String> userEmails;
     }
-
-//    /**
-//     * 每小时执行一次的任务
-//     * 清理过期的在线IP记录
-//     */
-//    @Scheduled(cron = "0 0 * * * ?") // 每小时执行一次
-//    @Transactional
-//    public void cleanupExpiredOnlineRecords() {
-//        log.info("开始执行定时任务：清理过期的在线IP记录");
-//
-//        try {
-//            accountOnlineIpService.cleanupExpiredRecords();
-//            log.info("过期在线IP记录清理完成");
-//
-//        } catch (Exception e) {
-//            log.error("清理过期在线IP记录时发生错误", e);
-//            barkService.sendErrorNotification("AirOpsCat 在线记录清理失败", "清理过期在线IP记录时发生错误: " + e.getMessage());
-//        }
-//
-//        log.info("在线IP记录清理任务执行完成");
-//    }
-} 
\ No newline at end of file
+    
+    /**
+     * 单台服务器的采集结果
+     */
+    @Data
+    private static class HostCollectionResult {
+        private final HostCollectionTask task;
+        private boolean success;
+        private boolean timedOut;
+        private String error;
+        private long elapsedMillis;
+        private Map<String, TrafficUsage> trafficStats;
+    }
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.fun90.airopscat.service;
 
 import com.fun90.airopscat.model.dto.CoreManagementResult;
+import com.fun90.airopscat.model.dto.CorePipelineResult;
 import com.fun90.airopscat.model.dto.ServerConfigDto;
 import com.fun90.airopscat.model.dto.ServerConfigRequest;
 import com.fun90.airopscat.model.dto.SshConfig;
@@ -10,6 +11,8 @@ import com.fun90.airopscat.model.enums.CoreOperation;
 import com.fun90.airopscat.repository.ServerConfigRepository;
 import com.fun90.airopscat.repository.ServerRepository;
 import com.fun90.airopscat.service.core.CoreManagementService;
+import com.fun90.airopscat.service.core.CoreOperationPipeline;
+import com.fun90.airopscat.utils.ConfigHashUtil;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
@@ -124,6 +127,7 @@ public class ServerConfigService {
             throw new EntityNotFoundException("Server with ID " + serverConfig.getServerId() + " not found");
         }
 
+        serverConfig.setConfigHash(ConfigHashUtil.hash(serverConfig.getConfig()));
         return serverConfigRepository.save(serverConfig);
     }
 
@@ -137,6 +141,7 @@ public class ServerConfigService {
 
         // 复制非null属性
         BeanUtils.copyProperties(serverConfig, existingConfig, getNullPropertyNames(serverConfig));
+        existingConfig.setConfigHash(ConfigHashUtil.hash(existingConfig.getConfig()));
 
         return serverConfigRepository.save(existingConfig);
     }
@@ -164,26 +169,32 @@ public class ServerConfigService {
         // 创建SSH配置
         SshConfig sshConfig = createSshConfig(server);
 
-        // 上传配置
-        CoreManagementResult result = coreManagementService.executeOperation(
-                serverConfig.getConfigType(), 
-                CoreOperation.CONFIG, 
-                sshConfig, 
-                serverConfig.getConfig()
-        );
-
-        if (result.isSuccess()) {
-            // 重启服务
-            CoreManagementResult restartResult = coreManagementService.executeOperation(
-                    serverConfig.getConfigType(), 
-                    CoreOperation.RESTART, 
-                    sshConfig
-            );
-            
-            if (!restartResult.isSuccess()) {
-                result.setSuccess(false);
-                result.setMessage("配置上传成功，但服务重启失败: " + restartResult.getMessage());
-            }
+        // 同一会话内上传配置并重启服务
+        CorePipelineResult pipelineResult = coreManagementService.executePipeline(
+                CoreOperationPipeline.deployConfig(serverConfig.getConfigType(), serverConfig.getConfig()), sshConfig);
+
+        CoreManagementResult result;
+        if (pipelineResult.getSteps().isEmpty()) {
+            result = new CoreManagementResult();
+            result.setSuccess(false);
+            result.setMessage(pipelineResult.getMessage());
+            result.setOperation(CoreOperation.CONFIG.name());
+            result.setOperationTime(pipelineResult.getOperationTime());
+            result.setServerAddress(pipelineResult.getServerAddress());
+        } else {
+            result = pipelineResult.getSteps().getFirst();
+        }
+        result.setDuration(pipelineResult.getTotalMillis());
+
+        if (pipelineResult.isSuccess()) {
+            // 记录服务器上已生效的配置
+            serverConfig.setConfigHash(ConfigHashUtil.hash(serverConfig.getConfig()));
+            serverConfig.setDeployedHash(serverConfig.getConfigHash());
+            serverConfigRepository.save(serverConfig);
+        } else if (result.isSuccess()) {
+            result.setSuccess(false);
+            result.setMessage("配置上传成功，但服务重启失败: " + pipelineResult.getMessage()
+                    + (pipelineResult.isRolledBack() ? "，已恢复原配置" : ""));
         }
 
         return result;
@@ -221,6 +232,28 @@ public class ServerConfigService {
         return stats;
     }
 
+    /**
+     * 以后台任务的形式对多台服务器执行内核操作，立即返回任务，进度通过任务事件订阅
+     * waves=true 时分批执行，每批检查通过后才继续，未通过时停止并回滚已执行的服务器
+     *
+     * @param version 安装、更新时的目标版本，为空时由内核策略决定
+     */
+    public JobRegistry.Job startCoreOperation(List<Long> serverIds, String coreType, CoreOperation operation,
+                                              String version, boolean waves) {
+        if (operation == CoreOperation.CONFIG) {
+            throw new IllegalArgumentException("配置下发请通过服务器配置上传执行");
+        }
+        List<Server> servers = serverRepository.findAllById(serverIds);
+        if (servers.isEmpty()) {
+            throw new EntityNotFoundException("Server not found");
+        }
+        List<SshConfig> sshConfigs = servers.stream().map(this::createSshConfig).toList();
+        Object[] params = StringUtils.hasText(version) ? new Object[]{version} : new Object[0];
+        return waves
+                ? coreManagementService.startWaveOperation(coreType, operation, sshConfigs, params)
+                : coreManagementService.startBatchOperation(coreType, operation, sshConfigs, params);
+    }
+
     /**
      * 创建SSH配置
      */
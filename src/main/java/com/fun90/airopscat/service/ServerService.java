@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fun90.airopscat.model.dto.ServerDto;
 import com.fun90.airopscat.model.entity.Server;
 import com.fun90.airopscat.model.enums.ServerAuthType;
+import com.fun90.airopscat.model.event.ServerChangedEvent;
 import com.fun90.airopscat.repository.ServerRepository;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.criteria.Predicate;
@@ -13,6 +14,7 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -32,11 +34,14 @@ public class ServerService {
 
     private final ServerRepository serverRepository;
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public ServerService(ServerRepository serverRepository, ObjectMapper objectMapper) {
+    public ServerService(ServerRepository serverRepository, ObjectMapper objectMapper,
+                         ApplicationEventPublisher eventPublisher) {
         this.serverRepository = serverRepository;
         this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<Server> getServerPage(int page, int size, String search, String supplier, Boolean expired, Boolean disabled) {
@@ -247,7 +252,9 @@ public class ServerService {
         // 使用工具方法复制非null属性
         copyNonNullProperties(server, existingServer);
 
-        return serverRepository.save(existingServer);
+        Server savedServer = serverRepository.save(existingServer);
+        eventPublisher.publishEvent(new ServerChangedEvent(savedServer.getId()));
+        return savedServer;
     }
 
     // 工具方法：复制非null属性
@@ -273,6 +280,7 @@ public class ServerService {
     @Transactional
     public void deleteServer(Long id) {
         serverRepository.deleteById(id);
+        eventPublisher.publishEvent(new ServerChangedEvent(id));
     }
 
     @Transactional
@@ -281,7 +289,9 @@ public class ServerService {
         if (optionalServer.isPresent()) {
             Server server = optionalServer.get();
             server.setDisabled(disabled ? 1 : 0);
-            return serverRepository.save(server);
+            Server savedServer = serverRepository.save(server);
+            eventPublisher.publishEvent(new ServerChangedEvent(id));
+            return savedServer;
         }
         return null;
     }
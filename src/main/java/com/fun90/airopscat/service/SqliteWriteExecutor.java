@@ -0,0 +1,205 @@
+package com.fun90.airopscat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * SQLite单写线程执行器
+ * SQLite同一时刻只允许一个写事务，多个线程各自开事务写入时只能靠锁等待和重试。
+ * 这里把写操作放入有界队列，由唯一的写线程按批取出，同一批在一个事务中提交（组提交），
+ * 调用方通过Future取得各自的结果；WAL模式下读操作不受写事务影响，仍走连接池的其它连接。
+ * 一批中任一写操作失败时整批回滚，再逐个单独提交，失败只影响该操作自身的Future。
+ * 每个数据库文件各有一个实例，见 DatabaseConfig 与 TelemetryDatabaseConfig
+ */
+@Slf4j
+public class SqliteWriteExecutor {
+
+    @Value("${airopscat.db.writer.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${airopscat.db.writer.max-batch-size:64}")
+    private int maxBatchSize;
+
+    @Value("${airopscat.db.writer.offer-timeout-ms:5000}")
+    private long offerTimeoutMs;
+
+    @Value("${airopscat.db.writer.transaction-timeout-seconds:30}")
+    private int transactionTimeoutSeconds;
+
+    private final String name;
+    private final TransactionTemplate transactionTemplate;
+    private BlockingQueue<WriteTask<?>> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    public SqliteWriteExecutor(String name, PlatformTransactionManager transactionManager) {
+        this.name = name;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate.setTimeout(transactionTimeoutSeconds);
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        writer = new Thread(this::runWriter, name);
+        writer.start();
+    }
+
+    /**
+     * 停止接收新的写操作，等待队列中已提交的写操作全部完成
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(transactionTimeoutSeconds));
+    }
+
+    /**
+     * 提交有返回值的写操作
+     * 队列已满时最多等待 offer-timeout-ms，仍无空位则抛出 RejectedExecutionException
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        WriteTask<T> task = new WriteTask<>(work);
+        if (Thread.currentThread() == writer) {
+            // 写操作内部再提交写操作时直接并入当前事务，避免写线程等待自己
+            task.run();
+            task.complete();
+            return task.future;
+        }
+        if (!running) {
+            throw new RejectedExecutionException("数据库写线程已停止");
+        }
+        try {
+            if (!queue.offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("数据库写入队列已满（" + queueCapacity + "）");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("等待数据库写入队列时被中断", e);
+        }
+        return task.future;
+    }
+
+    /**
+     * 提交无返回值的写操作
+     */
+    public CompletableFuture<Void> execute(Runnable work) {
+        return submit(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * 提交写操作并等待提交完成，写操作抛出的运行时异常原样抛给调用方
+     * 不要在已开启写事务的线程中调用，否则该事务持有的写锁会阻塞写线程
+     */
+    public <T> T call(Supplier<T> work) {
+        try {
+            return submit(work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 执行无返回值的写操作并等待提交完成
+     */
+    public void run(Runnable work) {
+        call(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runWriter() {
+        List<WriteTask<?>> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                WriteTask<?> first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, Math.max(1, maxBatchSize) - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        // 被中断退出时，未执行的写操作以异常结束，避免调用方无限等待
+        WriteTask<?> task;
+        while ((task = queue.poll()) != null) {
+            task.future.completeExceptionally(new RejectedExecutionException("数据库写线程已停止"));
+        }
+        log.info("数据库写线程 {} 已停止", name);
+    }
+
+    /**
+     * 同一批写操作在一个事务中提交，提交成功后再完成各自的Future
+     */
+    private void commit(List<WriteTask<?>> batch) {
+        if (batch.size() == 1) {
+            commitAlone(batch.get(0));
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(WriteTask::run));
+            batch.forEach(WriteTask::complete);
+            log.trace("组提交 {} 个写操作", batch.size());
+        } catch (Exception e) {
+            log.debug("组提交 {} 个写操作失败，逐个重新提交: {}", batch.size(), e.getMessage());
+            batch.forEach(this::commitAlone);
+        }
+    }
+
+    private void commitAlone(WriteTask<?> task) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> task.run());
+            task.complete();
+        } catch (Throwable e) {
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 写操作及其结果，结果在事务提交后才交给调用方
+     */
+    private static class WriteTask<T> {
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+
+        WriteTask(Supplier<T> work) {
+            this.work = work;
+        }
+
+        void run() {
+            result = work.get();
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+}
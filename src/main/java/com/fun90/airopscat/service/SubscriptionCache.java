@@ -0,0 +1,181 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.dto.SubscrptionDto;
+import com.fun90.airopscat.model.event.AccountChangedEvent;
+import com.fun90.airopscat.model.event.NodeChangedEvent;
+import com.fun90.airopscat.model.event.ServerChangedEvent;
+import com.fun90.airopscat.model.event.TagChangedEvent;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 订阅内容缓存
+ * 按 authCode + 操作系统 + 应用 缓存渲染结果，账户、节点、服务器或标签变更提交后按反向索引精确失效
+ * 失效与写入通过代数校验，渲染期间发生的失效不会让旧结果进入缓存
+ */
+@Slf4j
+@Service
+public class SubscriptionCache {
+
+    @Value("${airopscat.subscription.cache.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<String, CachedSubscription> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Long, Set<String>> keysByAccount = new HashMap<>();
+    private final Map<Long, Set<String>> keysByNode = new HashMap<>();
+    private final Map<Long, Set<String>> keysByServer = new HashMap<>();
+    private long generation;
+
+    public static String key(String authCode, String osName, String appName) {
+        return authCode + "|" + osName.toLowerCase() + "|" + appName.toLowerCase();
+    }
+
+    /**
+     * 获取未过期的缓存订阅
+     */
+    public synchronized CachedSubscription get(String key) {
+        CachedSubscription cached = entries.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.getValidUntil() != null && !cached.getValidUntil().isAfter(LocalDateTime.now())) {
+            remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * 渲染开始前记录的代数，写入时用于判断期间是否发生过失效
+     */
+    public synchronized long currentGeneration() {
+        return generation;
+    }
+
+    /**
+     * 写入缓存，渲染期间发生过失效则放弃
+     */
+    public synchronized void put(String key, CachedSubscription cached, long expectedGeneration) {
+        if (expectedGeneration != generation) {
+            return;
+        }
+        remove(key);
+        entries.put(key, cached);
+        index(keysByAccount, cached.getAccountId(), key);
+        cached.getNodeIds().forEach(nodeId -> index(keysByNode, nodeId, key));
+        cached.getServerIds().forEach(serverId -> index(keysByServer, serverId, key));
+
+        Iterator<Map.Entry<String, CachedSubscription>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Map.Entry<String, CachedSubscription> entry = eldest.next();
+            eldest.remove();
+            unindex(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountChanged(AccountChangedEvent event) {
+        invalidate(keysByAccount, event.getAccountIds());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNodeChanged(NodeChangedEvent event) {
+        invalidate(keysByNode, event.getNodeIds());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onServerChanged(ServerChangedEvent event) {
+        invalidate(keysByServer, List.of(event.getServerId()));
+    }
+
+    /**
+     * 标签本身的启用、禁用或删除可能影响任意账户，全部失效
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTagChanged(TagChangedEvent event) {
+        invalidateAll();
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        keysByAccount.clear();
+        keysByNode.clear();
+        keysByServer.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void invalidate(Map<Long, Set<String>> index, Collection<Long> ids) {
+        generation++;
+        if (ids == null) {
+            return;
+        }
+        int removed = 0;
+        for (Long id : ids) {
+            Set<String> keys = index.get(id);
+            if (keys == null) {
+                continue;
+            }
+            for (String key : new ArrayList<>(keys)) {
+                if (remove(key)) {
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.debug("Invalidated {} cached subscriptions", removed);
+        }
+    }
+
+    private boolean remove(String key) {
+        CachedSubscription cached = entries.remove(key);
+        if (cached == null) {
+            return false;
+        }
+        unindex(key, cached);
+        return true;
+    }
+
+    private void unindex(String key, CachedSubscription cached) {
+        unindex(keysByAccount, cached.getAccountId(), key);
+        cached.getNodeIds().forEach(nodeId -> unindex(keysByNode, nodeId, key));
+        cached.getServerIds().forEach(serverId -> unindex(keysByServer, serverId, key));
+    }
+
+    private static void unindex(Map<Long, Set<String>> index, Long id, String key) {
+        Set<String> keys = index.get(id);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            index.remove(id);
+        }
+    }
+
+    private static void index(Map<Long, Set<String>> index, Long id, String key) {
+        if (id != null) {
+            index.computeIfAbsent(id, k -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * 缓存的订阅及其依赖
+     */
+    @Data
+    public static class CachedSubscription {
+        private final SubscrptionDto subscription;
+        private final Long accountId;
+        private final Set<Long> nodeIds;
+        private final Set<Long> serverIds;
+        /**
+         * 账户到期时间，到期后缓存不再有效
+         */
+        private final LocalDateTime validUntil;
+    }
+}
@@ -2,26 +2,32 @@ package com.fun90.airopscat.service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.fun90.airopscat.model.convert.NodeConverter;
+import com.fun90.airopscat.model.dto.AccountNodeDto;
 import com.fun90.airopscat.model.dto.ApiResponseDto;
 import com.fun90.airopscat.model.dto.NodeDto;
 import com.fun90.airopscat.model.dto.SubscrptionDto;
 import com.fun90.airopscat.model.entity.Account;
-import com.fun90.airopscat.model.entity.AccountTrafficStats;
-import com.fun90.airopscat.model.entity.Node;
+import com.fun90.airopscat.model.telemetry.AccountTrafficStats;
 import com.fun90.airopscat.repository.AccountRepository;
-import com.fun90.airopscat.repository.AccountTrafficStatsRepository;
+import com.fun90.airopscat.repository.telemetry.AccountTrafficStatsRepository;
+import com.fun90.airopscat.service.SubscriptionCache.CachedSubscription;
 import com.fun90.airopscat.utils.ConfigFileReader;
 import com.fun90.airopscat.utils.ThymeleafUtil;
 
@@ -32,6 +38,7 @@ public class SubscriptionService {
     private final AccountTrafficStatsRepository accountTrafficRepository;
     private final TagService tagService;
     private final ThymeleafUtil thymeleafUtil;
+    private final SubscriptionCache subscriptionCache;
     private final String subscriptionUrl;
 
     @Autowired
@@ -40,11 +47,13 @@ public class SubscriptionService {
             AccountTrafficStatsRepository accountTrafficRepository,
             TagService tagService,
             ThymeleafUtil thymeleafUtil,
+            SubscriptionCache subscriptionCache,
             @Value("${airopscat.subscription.url}") String subscriptionUrl) {
         this.accountRepository = accountRepository;
         this.accountTrafficRepository = accountTrafficRepository;
         this.tagService = tagService;
         this.thymeleafUtil = thymeleafUtil;
+        this.subscriptionCache = subscriptionCache;
         this.subscriptionUrl = subscriptionUrl;
     }
 
@@ -89,7 +98,8 @@ public class SubscriptionService {
         }
 
         // 获取账户可用的节点
-        List<Node> availableNodes = tagService.getAvailableNodesByAccount(account.getId());
+        List<AccountNodeDto> availableNodes = tagService.getAccountNodes(List.of(account.getId()), false)
+                .getOrDefault(account.getId(), Collections.emptyList());
         
         if (availableNodes.isEmpty()) {
             return "错误: 当前账户没有可用的节点，请联系管理员";
@@ -97,8 +107,7 @@ public class SubscriptionService {
 
         // 过滤已部署且启用的节点
         List<NodeDto> activeNodes = availableNodes.stream()
-                .filter(node -> node.getDeployed() != null && node.getDeployed() == 1)
-                .filter(node -> node.getDisabled() == null || node.getDisabled() == 0)
+                .filter(AccountNodeDto::isActive)
                 .map(NodeConverter::toDto)
                 .collect(Collectors.toList());
 
@@ -122,7 +131,7 @@ public class SubscriptionService {
             return "错误: 找不到对应的节点模板: " + appType;
         }
 
-        String result = thymeleafUtil.processStringTemplate(templateContent, templateData);
+        String result = thymeleafUtil.processStringTemplate(templateName, templateContent, templateData);
         // 清理多余的空行
         return result.replaceAll("(?m)^\\s*$[\n\r]+", "").trim();
     }
@@ -142,6 +151,14 @@ public class SubscriptionService {
             return ApiResponseDto.error("应用名称不能为空");
         }
 
+        // 命中缓存直接返回，账户、节点、服务器或标签变更时会被失效
+        String cacheKey = SubscriptionCache.key(authCode, osName, appName);
+        CachedSubscription cached = subscriptionCache.get(cacheKey);
+        if (cached != null) {
+            return ApiResponseDto.success(cached.getSubscription());
+        }
+        long generation = subscriptionCache.currentGeneration();
+
         // 根据authCode查找账户
         Optional<Account> optionalAccount = accountRepository.findByAuthCode(authCode);
         if (optionalAccount.isEmpty()) {
@@ -161,15 +178,15 @@ public class SubscriptionService {
         }
 
         // 获取账户可用的节点
-        List<Node> availableNodes = tagService.getAvailableNodesByAccount(account.getId());
+        List<AccountNodeDto> availableNodes = tagService.getAccountNodes(List.of(account.getId()), false)
+                .getOrDefault(account.getId(), Collections.emptyList());
         if (availableNodes.isEmpty()) {
             return ApiResponseDto.error("当前账户没有可用的节点，请联系管理员");
         }
 
         // 过滤已部署且启用的节点
         List<NodeDto> activeNodes = availableNodes.stream()
-                .filter(node -> node.getDeployed() != null && node.getDeployed() == 1)
-                .filter(node -> node.getDisabled() == null || node.getDisabled() == 0)
+                .filter(AccountNodeDto::isActive)
                 .map(NodeConverter::toDto)
                 .collect(Collectors.toList());
 
@@ -191,7 +208,25 @@ public class SubscriptionService {
         List<AccountTrafficStats> trafficStatsList = accountTrafficRepository.findByAccountIdAndCurrentTime(account.getId(), currentTime);
         AccountTrafficStats accountTrafficStats = trafficStatsList.isEmpty() ? null : trafficStatsList.getFirst();
         long usedFlow = accountTrafficStats != null ? accountTrafficStats.getUploadBytes() + accountTrafficStats.getDownloadBytes() : 0L;
-        SubscrptionDto subscriptionDto = new SubscrptionDto(fileName, content, expireDate, usedFlow, bandwidth);
+        String etag = "\"" + DigestUtils.sha256Hex(String.join("\n",
+                fileName, expireDate, String.valueOf(usedFlow), String.valueOf(bandwidth), content)) + "\"";
+        SubscrptionDto subscriptionDto = new SubscrptionDto(fileName, content, expireDate, usedFlow, bandwidth, etag);
+
+        // 依赖包含未部署的可用节点及出站节点，其部署状态变化同样需要失效
+        Set<Long> nodeIds = new HashSet<>();
+        for (AccountNodeDto node : availableNodes) {
+            nodeIds.add(node.getNodeId());
+            if (node.getOutId() != null) {
+                nodeIds.add(node.getOutId());
+            }
+        }
+        Set<Long> serverIds = availableNodes.stream()
+                .map(AccountNodeDto::getServerId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        subscriptionCache.put(cacheKey,
+                new CachedSubscription(subscriptionDto, account.getId(), nodeIds, serverIds, account.getToDate()),
+                generation);
         return ApiResponseDto.success(subscriptionDto);
     }
 
@@ -214,7 +249,7 @@ public class SubscriptionService {
             return null;
         }
 
-        return thymeleafUtil.processStringTemplate(templateContent, templateData);
+        return thymeleafUtil.processStringTemplate(templateName, templateContent, templateData);
     }
 
     /**
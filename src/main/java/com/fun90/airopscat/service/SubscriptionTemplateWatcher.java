@@ -0,0 +1,73 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.utils.ConfigFileReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订阅模板热更新
+ * 定期检查 templates/subscription/ 下文件的修改时间，变化后清除文件内容缓存和已渲染的订阅
+ * 已解析模板按内容摘要缓存，内容变化后自然使用新的缓存键，无需单独清理
+ */
+@Slf4j
+@Service
+public class SubscriptionTemplateWatcher {
+
+    private static final String TEMPLATE_DIR = "templates/subscription/";
+
+    private final SubscriptionCache subscriptionCache;
+    private final ResourcePatternResolver resourceResolver = new PathMatchingResourcePatternResolver();
+
+    @Value("${airopscat.template.hot-reload:false}")
+    private boolean hotReload;
+
+    /**
+     * 模板路径 -> 最近一次看到的修改时间，仅在调度线程访问
+     */
+    private final Map<String, Long> lastModifiedByPath = new HashMap<>();
+
+    public SubscriptionTemplateWatcher(SubscriptionCache subscriptionCache) {
+        this.subscriptionCache = subscriptionCache;
+    }
+
+    @Scheduled(fixedDelayString = "${airopscat.template.reload-interval-ms:5000}")
+    public void checkForChanges() {
+        if (!hotReload) {
+            return;
+        }
+        try {
+            int changed = 0;
+            for (Resource resource : resourceResolver.getResources("classpath*:" + TEMPLATE_DIR + "**/*")) {
+                if (!resource.isReadable()) {
+                    continue;
+                }
+                String url = resource.getURL().toString();
+                int index = url.lastIndexOf(TEMPLATE_DIR);
+                if (index < 0) {
+                    continue;
+                }
+                String path = url.substring(index);
+                long lastModified = resource.lastModified();
+                Long previous = lastModifiedByPath.put(path, lastModified);
+                if (previous != null && previous != lastModified) {
+                    ConfigFileReader.clearCache(path);
+                    log.info("订阅模板已更新: {}", path);
+                    changed++;
+                }
+            }
+            if (changed > 0) {
+                subscriptionCache.invalidateAll();
+            }
+        } catch (Exception e) {
+            log.warn("检查订阅模板更新失败: {}", e.getMessage());
+        }
+    }
+}
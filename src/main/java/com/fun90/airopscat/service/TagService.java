@@ -1,17 +1,23 @@
 package com.fun90.airopscat.service;
 
+import com.fun90.airopscat.model.dto.AccountNodeDto;
 import com.fun90.airopscat.model.dto.TagDto;
 import com.fun90.airopscat.model.entity.Account;
 import com.fun90.airopscat.model.entity.Node;
 import com.fun90.airopscat.model.entity.Tag;
+import com.fun90.airopscat.model.event.AccountChangedEvent;
+import com.fun90.airopscat.model.event.NodeChangedEvent;
+import com.fun90.airopscat.model.event.TagChangedEvent;
 import com.fun90.airopscat.repository.AccountRepository;
 import com.fun90.airopscat.repository.NodeRepository;
 import com.fun90.airopscat.repository.TagRepository;
+import com.fun90.airopscat.utils.BatchLoader;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -20,6 +26,7 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -29,12 +36,15 @@ public class TagService {
     private final TagRepository tagRepository;
     private final NodeRepository nodeRepository;
     private final AccountRepository accountRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public TagService(TagRepository tagRepository, NodeRepository nodeRepository, AccountRepository accountRepository) {
+    public TagService(TagRepository tagRepository, NodeRepository nodeRepository, AccountRepository accountRepository,
+                      ApplicationEventPublisher eventPublisher) {
         this.tagRepository = tagRepository;
         this.nodeRepository = nodeRepository;
         this.accountRepository = accountRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<Tag> getTagPage(int page, int size, String search, Integer disabled) {
@@ -80,22 +90,38 @@ public class TagService {
     }
 
     public TagDto convertToDto(Tag tag) {
-        TagDto dto = new TagDto();
-        
-        // 手动设置属性，避免触发@Transient方法
-        dto.setId(tag.getId());
-        dto.setName(tag.getName());
-        dto.setDescription(tag.getDescription());
-        dto.setColor(tag.getColor());
-        dto.setDisabled(tag.getDisabled());
-        dto.setCreateTime(tag.getCreateTime());
-        dto.setUpdateTime(tag.getUpdateTime());
-        
-        // 使用专门的查询来获取统计信息，避免触发懒加载
-        dto.setNodeCount(tagRepository.countNodesByTagId(tag.getId()));
-        dto.setAccountCount(tagRepository.countAccountsByTagId(tag.getId()));
+        return convertToDtos(List.of(tag)).get(0);
+    }
+
+    /**
+     * 批量转换标签，节点数和账户数各一次分组计数查询
+     */
+    public List<TagDto> convertToDtos(List<Tag> tags) {
+        Set<Long> tagIds = BatchLoader.collectKeys(tags, Tag::getId);
+        Map<Long, Integer> nodeCounts = tagIds.isEmpty() ? Map.of()
+                : BatchLoader.toCountMap(tagRepository.countNodesByTagIds(tagIds));
+        Map<Long, Integer> accountCounts = tagIds.isEmpty() ? Map.of()
+                : BatchLoader.toCountMap(tagRepository.countAccountsByTagIds(tagIds));
         
-        return dto;
+        List<TagDto> dtos = new ArrayList<>(tags.size());
+        for (Tag tag : tags) {
+            TagDto dto = new TagDto();
+            
+            // 手动设置属性，避免触发@Transient方法
+            dto.setId(tag.getId());
+            dto.setName(tag.getName());
+            dto.setDescription(tag.getDescription());
+            dto.setColor(tag.getColor());
+            dto.setDisabled(tag.getDisabled());
+            dto.setCreateTime(tag.getCreateTime());
+            dto.setUpdateTime(tag.getUpdateTime());
+            
+            // 使用分组计数查询获取统计信息，避免触发懒加载
+            dto.setNodeCount(nodeCounts.getOrDefault(tag.getId(), 0));
+            dto.setAccountCount(accountCounts.getOrDefault(tag.getId(), 0));
+            dtos.add(dto);
+        }
+        return dtos;
     }
 
     @Transactional
@@ -117,7 +143,9 @@ public class TagService {
         existingTag.setColor(tag.getColor());
         existingTag.setDisabled(tag.getDisabled());
 
-        return tagRepository.save(existingTag);
+        Tag savedTag = tagRepository.save(existingTag);
+        eventPublisher.publishEvent(new TagChangedEvent(savedTag.getId()));
+        return savedTag;
     }
 
     @Transactional
@@ -127,6 +155,8 @@ public class TagService {
         
         // Remove associations using direct repository operations to avoid lazy loading
         // The associations will be automatically removed by cascade operations
+        // 先发布事件，监听方可在关联被删除前解析受影响的服务器
+        eventPublisher.publishEvent(new TagChangedEvent(id));
         tagRepository.deleteById(id);
     }
 
@@ -136,7 +166,9 @@ public class TagService {
         if (optionalTag.isPresent()) {
             Tag tag = optionalTag.get();
             tag.setDisabled(disabled ? 1 : 0);
-            return tagRepository.save(tag);
+            Tag savedTag = tagRepository.save(tag);
+            eventPublisher.publishEvent(new TagChangedEvent(id));
+            return savedTag;
         }
         return null;
     }
@@ -158,6 +190,7 @@ public class TagService {
         
         if (!alreadyExists) {
             tagRepository.insertNodeTag(nodeId, tagId);
+            publishNodeTagsChanged(nodeId, List.of(tagId));
         }
     }
 
@@ -173,6 +206,7 @@ public class TagService {
 
         // 直接删除关联记录
         tagRepository.deleteNodeTag(nodeId, tagId);
+        publishNodeTagsChanged(nodeId, List.of(tagId));
     }
 
     @Transactional
@@ -191,6 +225,7 @@ public class TagService {
         
         if (!alreadyExists) {
             tagRepository.insertAccountTag(accountId, tagId);
+            eventPublisher.publishEvent(AccountChangedEvent.of(accountId));
         }
     }
 
@@ -206,6 +241,7 @@ public class TagService {
 
         // 直接删除关联记录
         tagRepository.deleteAccountTag(accountId, tagId);
+        eventPublisher.publishEvent(AccountChangedEvent.of(accountId));
     }
 
     @Transactional
@@ -215,6 +251,11 @@ public class TagService {
             throw new EntityNotFoundException("Node not found");
         }
 
+        // 新旧标签的账户都会受影响
+        Set<Long> affectedTagIds = tagRepository.findByNodeId(nodeId).stream()
+                .map(Tag::getId)
+                .collect(Collectors.toSet());
+
         // 删除现有的标签关联
         tagRepository.deleteAllNodeTagsByNodeId(nodeId);
 
@@ -230,7 +271,9 @@ public class TagService {
             for (Long tagId : tagIds) {
                 tagRepository.insertNodeTag(nodeId, tagId);
             }
+            affectedTagIds.addAll(tagIds);
         }
+        publishNodeTagsChanged(nodeId, affectedTagIds);
     }
 
     @Transactional
@@ -256,6 +299,23 @@ public class TagService {
                 tagRepository.insertAccountTag(accountId, tagId);
             }
         }
+        eventPublisher.publishEvent(AccountChangedEvent.of(accountId));
+    }
+
+    /**
+     * 节点标签变化：节点本身需要重新部署，持有这些标签的账户可用节点随之变化
+     */
+    private void publishNodeTagsChanged(Long nodeId, Collection<Long> tagIds) {
+        eventPublisher.publishEvent(NodeChangedEvent.of(nodeId));
+        Set<Long> accountIds = new HashSet<>();
+        for (Long tagId : tagIds) {
+            for (Account account : tagRepository.findAccountsByTagId(tagId)) {
+                accountIds.add(account.getId());
+            }
+        }
+        if (!accountIds.isEmpty()) {
+            eventPublisher.publishEvent(new AccountChangedEvent(accountIds, false));
+        }
     }
 
     // 查询关联关系的方法
@@ -279,31 +339,59 @@ public class TagService {
 
     // 根据标签获取匹配的Node和Account
     public List<Node> getAvailableNodesByAccount(Long accountId) {
-        List<Tag> accountTags = getTagsByAccount(accountId);
-        if (accountTags.isEmpty()) {
-            return Collections.emptyList();
-        }
+        return tagRepository.findNodesByAccountIds(List.of(accountId));
+    }
 
-        Set<Node> availableNodes = new HashSet<>();
-        for (Tag tag : accountTags) {
-            availableNodes.addAll(getNodesByTag(tag.getId()));
+    /**
+     * 多个账户可用节点的并集（去重），每批一次查询
+     */
+    public List<Node> getAvailableNodesByAccounts(Collection<Long> accountIds) {
+        Map<Long, Node> nodes = new LinkedHashMap<>();
+        for (List<Long> batch : BatchLoader.partition(accountIds)) {
+            for (Node node : tagRepository.findNodesByAccountIds(batch)) {
+                nodes.putIfAbsent(node.getId(), node);
+            }
         }
+        return new ArrayList<>(nodes.values());
+    }
 
-        return new ArrayList<>(availableNodes);
+    /**
+     * 按账户解析可用节点投影，账户标签、节点标签、节点、服务器一次联表
+     *
+     * @param activeOnly 仅返回已部署且启用的节点
+     * @return 账户ID -> 可用节点，没有可用节点的账户不在结果中
+     */
+    public Map<Long, List<AccountNodeDto>> getAccountNodes(Collection<Long> accountIds, boolean activeOnly) {
+        Map<Long, List<AccountNodeDto>> result = new HashMap<>();
+        for (List<Long> batch : BatchLoader.partition(accountIds)) {
+            List<AccountNodeDto> rows = activeOnly
+                    ? tagRepository.findActiveAccountNodesByAccountIds(batch)
+                    : tagRepository.findAccountNodesByAccountIds(batch);
+            for (AccountNodeDto row : rows) {
+                result.computeIfAbsent(row.getAccountId(), k -> new ArrayList<>()).add(row);
+            }
+        }
+        return result;
     }
 
     public List<Account> getAuthorizedAccountsByNode(Long nodeId) {
-        List<Tag> nodeTags = getTagsByNode(nodeId);
-        if (nodeTags.isEmpty()) {
-            return Collections.emptyList();
-        }
+        return tagRepository.findAccountsByNodeId(nodeId);
+    }
 
-        Set<Account> authorizedAccounts = new HashSet<>();
-        for (Tag tag : nodeTags) {
-            authorizedAccounts.addAll(getAccountsByTag(tag.getId()));
+    /**
+     * 按节点解析当前有效（未禁用、未过期）的授权账户，每批一次查询
+     *
+     * @return 节点ID -> 授权账户，没有授权账户的节点不在结果中
+     */
+    public Map<Long, List<Account>> getActiveAccountsByNodes(Collection<Long> nodeIds) {
+        Map<Long, List<Account>> result = new HashMap<>();
+        LocalDateTime currentTime = LocalDateTime.now();
+        for (List<Long> batch : BatchLoader.partition(nodeIds)) {
+            for (Object[] row : tagRepository.findActiveAccountsByNodeIds(batch, currentTime)) {
+                result.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Account) row[1]);
+            }
         }
-
-        return new ArrayList<>(authorizedAccounts);
+        return result;
     }
 
     // 统计方法
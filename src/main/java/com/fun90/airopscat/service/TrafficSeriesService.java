@@ -0,0 +1,279 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.config.TelemetryDatabaseConfig;
+import com.fun90.airopscat.model.dto.TrafficSeries;
+import com.fun90.airopscat.model.dto.TrafficUsage;
+import com.fun90.airopscat.model.enums.TrafficResolution;
+import com.fun90.airopscat.utils.BatchLoader;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流量时间序列
+ * 每次采集按账户和服务器记录一个15分钟样本，后台压缩任务将已结束的小时汇总为小时桶、再汇总为按本地日对齐的天桶，
+ * 各分辨率按各自的保留期清理。三种分辨率同存一张 WITHOUT ROWID 表，时间均为epoch秒整数；
+ * 主键 (resolution, account_id, bucket, server_id) 使按账户的区间查询为一次索引范围扫描。
+ * 已压缩到的位置（水位）与压缩结果在同一事务中更新，查询在同一读事务内读取水位、粗粒度桶和水位之后尚未压缩的样本，结果不重不漏
+ */
+@Slf4j
+@Service
+public class TrafficSeriesService {
+
+    private static final String WATERMARK_KEY = "compacted_until";
+
+    private static final String UPSERT_SAMPLE_SQL =
+            "INSERT INTO traffic_series (resolution, account_id, bucket, server_id, upload_bytes, download_bytes) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT(resolution, account_id, bucket, server_id) DO UPDATE SET " +
+            "upload_bytes = upload_bytes + excluded.upload_bytes, download_bytes = download_bytes + excluded.download_bytes";
+
+    /**
+     * 由细粒度桶汇总为粗粒度桶，重复执行结果相同
+     * 参数依次为：目标分辨率、桶偏移、桶宽、桶宽、桶偏移、来源分辨率、起始桶、结束桶
+     */
+    private static final String ROLLUP_SQL =
+            "INSERT INTO traffic_series (resolution, account_id, bucket, server_id, upload_bytes, download_bytes) " +
+            "SELECT ?, account_id, (bucket + ?) / ? * ? - ? AS rolled, server_id, SUM(upload_bytes), SUM(download_bytes) " +
+            "FROM traffic_series WHERE resolution = ? AND bucket >= ? AND bucket < ? " +
+            "GROUP BY account_id, rolled, server_id " +
+            "ON CONFLICT(resolution, account_id, bucket, server_id) DO UPDATE SET " +
+            "upload_bytes = excluded.upload_bytes, download_bytes = excluded.download_bytes";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqliteWriteExecutor writeExecutor;
+    private final TransactionTemplate readTemplate;
+
+    @Value("${airopscat.traffic.series.raw-retention-days:7}")
+    private int rawRetentionDays;
+
+    @Value("${airopscat.traffic.series.hourly-retention-days:90}")
+    private int hourlyRetentionDays;
+
+    @Value("${airopscat.traffic.series.daily-retention-days:1095}")
+    private int dailyRetentionDays;
+
+    @Value("${airopscat.traffic.series.max-points:400}")
+    private int maxPoints;
+
+    public TrafficSeriesService(@Qualifier("telemetryJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                @Qualifier("telemetryWriteExecutor") SqliteWriteExecutor writeExecutor,
+                                @Qualifier(TelemetryDatabaseConfig.TRANSACTION_MANAGER) PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeExecutor = writeExecutor;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void createSchema() {
+        writeExecutor.run(() -> {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS traffic_series (" +
+                    "resolution INTEGER NOT NULL, account_id INTEGER NOT NULL, bucket INTEGER NOT NULL, " +
+                    "server_id INTEGER NOT NULL, upload_bytes INTEGER NOT NULL, download_bytes INTEGER NOT NULL, " +
+                    "PRIMARY KEY (resolution, account_id, bucket, server_id)) WITHOUT ROWID");
+            // 压缩和保留期清理按分辨率和时间扫描
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_traffic_series_bucket ON traffic_series (resolution, bucket)");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS traffic_series_meta (" +
+                    "name TEXT PRIMARY KEY, value INTEGER NOT NULL) WITHOUT ROWID");
+        });
+    }
+
+    /**
+     * 记录一台服务器一次采集的样本，须在遥测写事务内调用（由流量统计写入一并提交）
+     *
+     * @param usageByAccountId 账户ID -> 流量增量
+     */
+    public void record(Long serverId, Instant sampleTime, Map<Long, TrafficUsage> usageByAccountId) {
+        if (usageByAccountId.isEmpty()) {
+            return;
+        }
+        long bucket = align(sampleTime.getEpochSecond(), TrafficResolution.RAW, 0);
+        long server = serverId != null ? serverId : 0;
+        List<Object[]> batchArgs = new ArrayList<>(usageByAccountId.size());
+        usageByAccountId.forEach((accountId, usage) -> batchArgs.add(new Object[]{
+                TrafficResolution.RAW.getSeconds(), accountId, bucket, server,
+                usage.getUploadBytes(), usage.getDownloadBytes()}));
+        jdbcTemplate.batchUpdate(UPSERT_SAMPLE_SQL, batchArgs);
+    }
+
+    /**
+     * 压缩已结束的小时并按保留期清理
+     * 上一个已压缩小时会重新汇总一次，以包含跨越整点才写入的样本
+     */
+    @Scheduled(fixedDelayString = "${airopscat.traffic.series.compact-interval-ms:300000}")
+    public void compact() {
+        long now = Instant.now().getEpochSecond();
+        long hourEnd = align(now, TrafficResolution.HOUR, 0);
+        long dayOffset = localOffsetSeconds();
+        try {
+            writeExecutor.run(() -> {
+                Long watermark = readWatermark();
+                long hourStart = watermark != null ? watermark - TrafficResolution.HOUR.getSeconds()
+                        : Optional.ofNullable(jdbcTemplate.queryForObject(
+                                "SELECT MIN(bucket) FROM traffic_series WHERE resolution = ?", Long.class,
+                                TrafficResolution.RAW.getSeconds())).orElse(hourEnd);
+                hourStart = align(hourStart, TrafficResolution.HOUR, 0);
+                if (hourStart < hourEnd) {
+                    rollup(TrafficResolution.RAW, TrafficResolution.HOUR, 0, hourStart, hourEnd);
+                    rollup(TrafficResolution.HOUR, TrafficResolution.DAY, dayOffset,
+                            align(hourStart, TrafficResolution.DAY, dayOffset), hourEnd);
+                    jdbcTemplate.update("INSERT INTO traffic_series_meta (name, value) VALUES (?, ?) " +
+                            "ON CONFLICT(name) DO UPDATE SET value = excluded.value", WATERMARK_KEY, hourEnd);
+                }
+                purge(TrafficResolution.RAW, now - TimeUnit.DAYS.toSeconds(rawRetentionDays));
+                purge(TrafficResolution.HOUR, now - TimeUnit.DAYS.toSeconds(hourlyRetentionDays));
+                purge(TrafficResolution.DAY, now - TimeUnit.DAYS.toSeconds(dailyRetentionDays));
+            });
+        } catch (Exception e) {
+            log.warn("流量时间序列压缩失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查询一组账户的流量时间序列
+     * 未指定分辨率时按时间跨度选择点数不超过 max-points 的最细分辨率；起点早于该分辨率保留期时改用更粗的分辨率
+     *
+     * @param accountIds 账户ID，为空时返回空序列
+     * @param serverId   只统计指定服务器，为null时汇总全部服务器
+     * @param from       起始epoch秒（含）
+     * @param to         结束epoch秒（不含）
+     */
+    public TrafficSeries query(Collection<Long> accountIds, Long serverId, long from, long to, TrafficResolution requested) {
+        long now = Instant.now().getEpochSecond();
+        TrafficResolution resolution = requested != null ? requested : resolutionForSpan(to - from);
+        while (resolution != TrafficResolution.DAY && from < now - retentionSeconds(resolution)) {
+            resolution = resolution == TrafficResolution.RAW ? TrafficResolution.HOUR : TrafficResolution.DAY;
+        }
+        long offset = resolution == TrafficResolution.DAY ? localOffsetSeconds() : 0;
+
+        TrafficSeries series = new TrafficSeries();
+        series.setResolution(resolution);
+        series.setFrom(align(from, resolution, offset));
+        series.setTo(to);
+        if (accountIds == null || accountIds.isEmpty() || series.getFrom() >= to) {
+            return series;
+        }
+
+        TrafficResolution target = resolution;
+        Map<Long, long[]> buckets = readTemplate.execute(status -> {
+            Map<Long, long[]> result = new TreeMap<>();
+            if (target == TrafficResolution.RAW) {
+                accumulate(result, TrafficResolution.RAW, 0, TrafficResolution.RAW, accountIds, serverId, series.getFrom(), to);
+                return result;
+            }
+            // 水位之前读粗粒度桶，水位之后读尚未压缩的原始样本并按同样的桶对齐
+            long watermark = Optional.ofNullable(readWatermark()).orElse(Long.MIN_VALUE);
+            long split = Math.max(series.getFrom(), Math.min(watermark, to));
+            if (watermark > series.getFrom()) {
+                accumulate(result, target, offset, target, accountIds, serverId, series.getFrom(), split);
+            }
+            accumulate(result, target, offset, TrafficResolution.RAW, accountIds, serverId, split, to);
+            return result;
+        });
+
+        for (Map.Entry<Long, long[]> entry : buckets.entrySet()) {
+            long[] bytes = entry.getValue();
+            series.getPoints().add(new TrafficSeries.Point(entry.getKey(), bytes[0], bytes[1]));
+            series.setTotalUploadBytes(series.getTotalUploadBytes() + bytes[0]);
+            series.setTotalDownloadBytes(series.getTotalDownloadBytes() + bytes[1]);
+        }
+        return series;
+    }
+
+    /**
+     * 读取 source 分辨率中 [from, to) 的行，按 target 桶对齐后累加到 result
+     * 账户较多时按 IN 查询参数上限分批，各批结果累加到同一个桶
+     */
+    private void accumulate(Map<Long, long[]> result, TrafficResolution target, long offset, TrafficResolution source,
+                            Collection<Long> accountIds, Long serverId, long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        for (List<Long> batch : BatchLoader.partition(accountIds)) {
+            accumulateBatch(result, target, offset, source, batch, serverId, from, to);
+        }
+    }
+
+    private void accumulateBatch(Map<Long, long[]> result, TrafficResolution target, long offset, TrafficResolution source,
+                                 List<Long> accountIds, Long serverId, long from, long to) {
+        int width = target.getSeconds();
+        StringBuilder sql = new StringBuilder("SELECT (bucket + ?) / ? * ? - ? AS aligned, SUM(upload_bytes), SUM(download_bytes) " +
+                "FROM traffic_series WHERE resolution = ? AND account_id IN (")
+                .append(String.join(",", Collections.nCopies(accountIds.size(), "?")))
+                .append(") AND bucket >= ? AND bucket < ?");
+        List<Object> args = new ArrayList<>(List.of(offset, width, width, offset, source.getSeconds()));
+        args.addAll(accountIds);
+        args.add(from);
+        args.add(to);
+        if (serverId != null) {
+            sql.append(" AND server_id = ?");
+            args.add(serverId);
+        }
+        sql.append(" GROUP BY aligned");
+        jdbcTemplate.query(sql.toString(), rs -> {
+            long[] bytes = result.computeIfAbsent(rs.getLong(1), key -> new long[2]);
+            bytes[0] += rs.getLong(2);
+            bytes[1] += rs.getLong(3);
+        }, args.toArray());
+    }
+
+    private void rollup(TrafficResolution source, TrafficResolution target, long offset, long from, long to) {
+        int width = target.getSeconds();
+        int rows = jdbcTemplate.update(ROLLUP_SQL, target.getSeconds(), offset, width, width, offset,
+                source.getSeconds(), from, to);
+        log.debug("流量时间序列压缩 {} -> {}: {} 行", source, target, rows);
+    }
+
+    private void purge(TrafficResolution resolution, long before) {
+        int rows = jdbcTemplate.update("DELETE FROM traffic_series WHERE resolution = ? AND bucket < ?",
+                resolution.getSeconds(), before);
+        if (rows > 0) {
+            log.info("清理 {} 条过期的{}流量样本", rows, resolution.getDescription());
+        }
+    }
+
+    private Long readWatermark() {
+        List<Long> values = jdbcTemplate.queryForList("SELECT value FROM traffic_series_meta WHERE name = ?",
+                Long.class, WATERMARK_KEY);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    private TrafficResolution resolutionForSpan(long spanSeconds) {
+        for (TrafficResolution resolution : TrafficResolution.values()) {
+            if (spanSeconds / resolution.getSeconds() <= maxPoints) {
+                return resolution;
+            }
+        }
+        return TrafficResolution.DAY;
+    }
+
+    private long retentionSeconds(TrafficResolution resolution) {
+        return TimeUnit.DAYS.toSeconds(switch (resolution) {
+            case RAW -> rawRetentionDays;
+            case HOUR -> hourlyRetentionDays;
+            case DAY -> dailyRetentionDays;
+        });
+    }
+
+    /**
+     * 天桶按本地零点对齐
+     */
+    private static long localOffsetSeconds() {
+        return ZoneId.systemDefault().getRules().getOffset(Instant.now()).getTotalSeconds();
+    }
+
+    private static long align(long epochSecond, TrafficResolution resolution, long offset) {
+        return Math.floorDiv(epochSecond + offset, resolution.getSeconds()) * resolution.getSeconds() - offset;
+    }
+}
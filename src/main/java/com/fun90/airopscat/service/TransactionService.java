@@ -10,6 +10,7 @@ import com.fun90.airopscat.repository.AccountRepository;
 import com.fun90.airopscat.repository.DomainRepository;
 import com.fun90.airopscat.repository.ServerRepository;
 import com.fun90.airopscat.repository.TransactionRepository;
+import com.fun90.airopscat.utils.BatchLoader;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.transaction.Transactional;
@@ -30,6 +31,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.function.Function;
 
 @Service
 public class TransactionService {
@@ -140,34 +142,85 @@ public class TransactionService {
     }
 
     public TransactionDto convertToDto(Transaction transaction) {
-        TransactionDto dto = new TransactionDto();
-        BeanUtils.copyProperties(transaction, dto);
-        
-        // Set transaction type description
-        TransactionType transactionType = TransactionType.fromValue(transaction.getType());
-        if (transactionType != null) {
-            dto.setTypeDescription(transactionType.getDescription());
+        return convertToDtos(List.of(transaction)).get(0);
+    }
+
+    /**
+     * 批量转换交易记录，关联业务按 businessTable 分组，每种业务一次批量查询
+     */
+    public List<TransactionDto> convertToDtos(List<Transaction> transactions) {
+        Map<String, Map<Long, String>> businessNames = getBusinessNames(transactions);
+        List<TransactionDto> dtos = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            TransactionDto dto = new TransactionDto();
+            BeanUtils.copyProperties(transaction, dto);
+            
+            // Set transaction type description
+            TransactionType transactionType = TransactionType.fromValue(transaction.getType());
+            if (transactionType != null) {
+                dto.setTypeDescription(transactionType.getDescription());
+            }
+            
+            // Get business name based on table and ID
+            if (transaction.getBusinessTable() != null && transaction.getBusinessId() != null) {
+                String businessTable = transaction.getBusinessTable().toLowerCase();
+                String businessName = businessNames.getOrDefault(businessTable, Map.of()).get(transaction.getBusinessId());
+                dto.setBusinessName(businessName != null ? businessName : getUnknownBusinessName(businessTable));
+            }
+            dtos.add(dto);
         }
-        
-        // Get business name based on table and ID
-        if (transaction.getBusinessTable() != null && transaction.getBusinessId() != null) {
-            dto.setBusinessName(getBusinessName(transaction.getBusinessTable(), transaction.getBusinessId()));
+        return dtos;
+    }
+    
+    /**
+     * 关联业务名称：业务表 -> (业务ID -> 名称)
+     */
+    private Map<String, Map<Long, String>> getBusinessNames(List<Transaction> transactions) {
+        Map<String, Set<Long>> idsByTable = new HashMap<>();
+        for (Transaction transaction : transactions) {
+            if (transaction.getBusinessTable() != null && transaction.getBusinessId() != null) {
+                idsByTable.computeIfAbsent(transaction.getBusinessTable().toLowerCase(), table -> new HashSet<>())
+                        .add(transaction.getBusinessId());
+            }
         }
         
-        return dto;
+        Map<String, Map<Long, String>> businessNames = new HashMap<>();
+        idsByTable.forEach((businessTable, ids) -> {
+            switch (businessTable) {
+                case "account":
+                    businessNames.put(businessTable, toNames(
+                            BatchLoader.load(ids, accountRepository::findAllById, Account::getId), Account::getUuid));
+                    break;
+                case "domain":
+                    businessNames.put(businessTable, toNames(
+                            BatchLoader.load(ids, domainRepository::findAllById, Domain::getId), Domain::getDomain));
+                    break;
+                case "server":
+                    businessNames.put(businessTable, toNames(
+                            BatchLoader.load(ids, serverRepository::findAllById, Server::getId),
+                            server -> server.getIp() + (server.getName() != null ? " (" + server.getName() + ")" : "")));
+                    break;
+                default:
+                    break;
+            }
+        });
+        return businessNames;
+    }
+    
+    private static <V> Map<Long, String> toNames(Map<Long, V> entities, Function<V, String> nameOf) {
+        Map<Long, String> names = new HashMap<>();
+        entities.forEach((id, entity) -> names.put(id, nameOf.apply(entity)));
+        return names;
     }
     
-    private String getBusinessName(String businessTable, Long businessId) {
-        switch (businessTable.toLowerCase()) {
+    private String getUnknownBusinessName(String businessTable) {
+        switch (businessTable) {
             case "account":
-                Optional<Account> account = accountRepository.findById(businessId);
-                return account.map(a -> a.getUuid()).orElse("未知账户");
+                return "未知账户";
             case "domain":
-                Optional<Domain> domain = domainRepository.findById(businessId);
-                return domain.map(d -> d.getDomain()).orElse("未知域名");
+                return "未知域名";
             case "server":
-                Optional<Server> server = serverRepository.findById(businessId);
-                return server.map(s -> s.getIp() + (s.getName() != null ? " (" + s.getName() + ")" : "")).orElse("未知服务器");
+                return "未知服务器";
             default:
                 return "未知关联业务";
         }
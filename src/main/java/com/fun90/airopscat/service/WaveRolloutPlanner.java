@@ -0,0 +1,41 @@
+package com.fun90.airopscat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分批发布规划
+ * 第一批为金丝雀，此后每批按倍数增长直到上限；每批结束后须通过健康检查才继续下一批
+ */
+@Component
+public class WaveRolloutPlanner {
+
+    @Value("${airopscat.deploy.waves.canary-size:1}")
+    private int canarySize;
+
+    @Value("${airopscat.deploy.waves.growth-factor:2}")
+    private int growthFactor;
+
+    @Value("${airopscat.deploy.waves.max-wave-size:32}")
+    private int maxWaveSize;
+
+    /**
+     * 按原有顺序将目标划分为若干批
+     */
+    public <T> List<List<T>> plan(List<T> targets) {
+        List<List<T>> waves = new ArrayList<>();
+        int size = Math.max(1, canarySize);
+        int limit = Math.max(size, maxWaveSize);
+        int index = 0;
+        while (index < targets.size()) {
+            int end = Math.min(targets.size(), index + size);
+            waves.add(new ArrayList<>(targets.subList(index, end)));
+            index = end;
+            size = Math.min(limit, size * Math.max(1, growthFactor));
+        }
+        return waves;
+    }
+}
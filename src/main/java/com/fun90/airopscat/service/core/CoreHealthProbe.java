@@ -0,0 +1,143 @@
+package com.fun90.airopscat.service.core;
+
+import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.HealthProbeResult;
+import com.fun90.airopscat.model.dto.SshConfig;
+import com.fun90.airopscat.service.core.registry.CoreManagementStrategyRegistry;
+import com.fun90.airopscat.service.core.strategy.CoreManagementStrategy;
+import com.fun90.airopscat.service.ssh.SshConnection;
+import com.fun90.airopscat.service.ssh.SshConnectionService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 内核健康检查
+ * 在一个SSH会话内检查服务是否处于运行状态、节点端口是否已监听、内核自检命令是否正常；
+ * 服务重启后需要一点时间才能就绪，未通过时按间隔重复检查，直到全部通过或超出时限
+ */
+@Slf4j
+@Service
+public class CoreHealthProbe {
+
+    private final CoreManagementStrategyRegistry strategyRegistry;
+    private final SshConnectionService sshConnectionService;
+
+    @Value("${airopscat.deploy.waves.probe-budget-ms:15000}")
+    private long budgetMillis;
+
+    @Value("${airopscat.deploy.waves.probe-interval-ms:1000}")
+    private long intervalMillis;
+
+    public CoreHealthProbe(CoreManagementStrategyRegistry strategyRegistry, SshConnectionService sshConnectionService) {
+        this.strategyRegistry = strategyRegistry;
+        this.sshConnectionService = sshConnectionService;
+    }
+
+    /**
+     * 检查服务器上的内核
+     *
+     * @param portsByCoreType 核心类型 -> 应处于监听状态的端口，端口可为空
+     */
+    public HealthProbeResult probe(SshConfig sshConfig, Map<String, ? extends Collection<Integer>> portsByCoreType) {
+        HealthProbeResult result = new HealthProbeResult();
+        result.setServerAddress(sshConfig.getHost());
+        long start = System.nanoTime();
+        long deadline = start + budgetMillis * 1_000_000;
+
+        try (SshConnection connection = sshConnectionService.createConnection(sshConfig)) {
+            String failure;
+            do {
+                result.setAttempts(result.getAttempts() + 1);
+                failure = check(connection, portsByCoreType, Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+                if (failure == null || System.nanoTime() + intervalMillis * 1_000_000 > deadline) {
+                    break;
+                }
+                Thread.sleep(intervalMillis);
+            } while (true);
+            result.setHealthy(failure == null);
+            result.setMessage(failure == null ? "健康检查通过" : failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.setHealthy(false);
+            result.setMessage("健康检查被中断");
+        } catch (Exception e) {
+            result.setHealthy(false);
+            result.setMessage("健康检查失败: " + e.getMessage());
+        }
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        if (!result.isHealthy()) {
+            log.warn("服务器 {} 健康检查未通过: {}", sshConfig.getHost(), result.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 执行一轮检查
+     *
+     * @return 第一个失败项，全部通过时返回null
+     */
+    private String check(SshConnection connection, Map<String, ? extends Collection<Integer>> portsByCoreType,
+                         long timeoutMillis) throws IOException {
+        Set<Integer> ports = new TreeSet<>();
+        for (Map.Entry<String, ? extends Collection<Integer>> entry : portsByCoreType.entrySet()) {
+            CoreManagementStrategy strategy = strategyRegistry.getStrategy(entry.getKey());
+            CommandResult active = connection.executeCommand("systemctl is-active --quiet " + strategy.getServiceName(), timeoutMillis);
+            if (!active.isSuccess()) {
+                return strategy.getServiceName() + " 服务未运行";
+            }
+            String healthCheck = strategy.getHealthCheckCommand();
+            if (healthCheck != null) {
+                CommandResult health = connection.executeCommand(healthCheck, timeoutMillis);
+                if (!health.isSuccess()) {
+                    return entry.getKey() + " 自检失败: " + StringUtils.defaultIfBlank(health.getStderr(), health.getStdout());
+                }
+            }
+            if (entry.getValue() != null) {
+                entry.getValue().stream().filter(Objects::nonNull).forEach(ports::add);
+            }
+        }
+        if (ports.isEmpty()) {
+            return null;
+        }
+
+        CommandResult sockets = connection.executeCommand("ss -lntu", timeoutMillis);
+        if (!sockets.isSuccess()) {
+            return "无法获取监听端口: " + Objects.toString(sockets.getStderr(), "");
+        }
+        Set<Integer> listening = parseListeningPorts(sockets.getStdout());
+        List<Integer> missing = ports.stream().filter(port -> !listening.contains(port)).toList();
+        return missing.isEmpty() ? null : "端口未监听: " + missing;
+    }
+
+    /**
+     * 解析 ss 输出第5列的本地地址（如 0.0.0.0:443、[::]:443、*:443）中的端口
+     */
+    private Set<Integer> parseListeningPorts(String output) {
+        Set<Integer> ports = new HashSet<>();
+        if (output == null) {
+            return ports;
+        }
+        for (String line : output.split("\n")) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length < 5) {
+                continue;
+            }
+            String local = columns[4];
+            int index = local.lastIndexOf(':');
+            if (index < 0) {
+                continue;
+            }
+            try {
+                ports.add(Integer.parseInt(local.substring(index + 1)));
+            } catch (NumberFormatException ignored) {
+                // 表头或非数字端口
+            }
+        }
+        return ports;
+    }
+}
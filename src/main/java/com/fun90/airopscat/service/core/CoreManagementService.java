@@ -2,8 +2,12 @@ package com.fun90.airopscat.service.core;
 
 import com.fun90.airopscat.model.dto.BatchCoreManagementResult;
 import com.fun90.airopscat.model.dto.CoreManagementResult;
+import com.fun90.airopscat.model.dto.CorePipelineResult;
+import com.fun90.airopscat.model.dto.HealthProbeResult;
 import com.fun90.airopscat.model.dto.SshConfig;
 import com.fun90.airopscat.model.enums.CoreOperation;
+import com.fun90.airopscat.service.JobRegistry;
+import com.fun90.airopscat.service.WaveRolloutPlanner;
 import com.fun90.airopscat.service.core.registry.CoreManagementStrategyRegistry;
 import com.fun90.airopscat.service.core.strategy.CoreManagementStrategy;
 import com.fun90.airopscat.service.ssh.SshConnection;
@@ -13,10 +17,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * 内核管理服务
@@ -27,13 +36,22 @@ public class CoreManagementService {
 
     private final CoreManagementStrategyRegistry strategyRegistry;
     private final SshConnectionService sshConnectionService;
+    private final JobRegistry jobRegistry;
+    private final WaveRolloutPlanner wavePlanner;
+    private final CoreHealthProbe coreHealthProbe;
     private final ExecutorService executorService = Executors.newCachedThreadPool();
 
     @Autowired
     public CoreManagementService(CoreManagementStrategyRegistry strategyRegistry, 
-                                SshConnectionService sshConnectionService) {
+                                SshConnectionService sshConnectionService,
+                                JobRegistry jobRegistry,
+                                WaveRolloutPlanner wavePlanner,
+                                CoreHealthProbe coreHealthProbe) {
         this.strategyRegistry = strategyRegistry;
         this.sshConnectionService = sshConnectionService;
+        this.jobRegistry = jobRegistry;
+        this.wavePlanner = wavePlanner;
+        this.coreHealthProbe = coreHealthProbe;
     }
 
     /**
@@ -94,6 +112,321 @@ public class CoreManagementService {
         return batchResult;
     }
 
+    /**
+     * 在一个SSH会话内按顺序执行流水线中的操作
+     * 任一步失败即停止，并按相反顺序执行已完成步骤的回滚
+     */
+    public CorePipelineResult executePipeline(CoreOperationPipeline pipeline, SshConfig sshConfig) {
+        return executePipeline(pipeline, sshConfig, CoreOperationPipeline.Listener.NONE);
+    }
+
+    /**
+     * 执行流水线，连接建立、每一步完成和每次回滚时回调 listener
+     */
+    public CorePipelineResult executePipeline(CoreOperationPipeline pipeline, SshConfig sshConfig,
+                                              CoreOperationPipeline.Listener listener) {
+        CorePipelineResult result = new CorePipelineResult();
+        result.setCoreType(pipeline.getCoreType());
+        result.setServerAddress(sshConfig.getHost());
+        result.setOperationTime(LocalDateTime.now());
+        long start = System.nanoTime();
+
+        try {
+            CoreManagementStrategy strategy = strategyRegistry.getStrategy(pipeline.getCoreType());
+
+            try (SshConnection connection = sshConnectionService.createConnection(sshConfig)) {
+                result.setConnectMillis(elapsedMillis(start));
+                listener.onConnected(result.getConnectMillis());
+                runPipeline(pipeline, strategy, connection, result, listener);
+            }
+
+        } catch (Exception e) {
+            log.error("执行内核操作流水线失败 [{}@{}]: {}", pipeline.getCoreType(), sshConfig.getHost(), e.getMessage());
+            result.setSuccess(false);
+            if (result.getMessage() == null) {
+                result.setMessage("操作执行失败: " + e.getMessage());
+            }
+        }
+
+        result.setTotalMillis(elapsedMillis(start));
+        return result;
+    }
+
+    /**
+     * 对多台服务器并发执行同一流水线，每台服务器一个会话
+     */
+    public List<CorePipelineResult> executeBatchPipeline(CoreOperationPipeline pipeline, List<SshConfig> sshConfigs) {
+        List<CompletableFuture<CorePipelineResult>> futures = sshConfigs.stream()
+            .map(config -> CompletableFuture.supplyAsync(() ->
+                executePipeline(pipeline, config), executorService))
+            .toList();
+
+        return futures.stream()
+            .map(CompletableFuture::join)
+            .toList();
+    }
+
+    /**
+     * 以后台任务的形式对多台服务器执行流水线，立即返回任务
+     * 每台服务器的连接、各步骤和回滚作为任务事件推送，全部结束后任务完成
+     */
+    public JobRegistry.Job startBatchPipeline(CoreOperationPipeline pipeline, List<SshConfig> sshConfigs) {
+        JobRegistry.Job job = jobRegistry.create("core", describe(pipeline), sshConfigs.size());
+
+        CompletableFuture<?>[] futures = sshConfigs.stream()
+            .map(config -> CompletableFuture.supplyAsync(() ->
+                executePipelineForJob(job, pipeline, config), executorService))
+            .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(futures).whenComplete((ignored, error) -> {
+            long failed = Arrays.stream(futures)
+                .filter(future -> !((CorePipelineResult) future.join()).isSuccess())
+                .count();
+            job.finish(failed == 0, String.format("共 %d 台服务器，成功 %d，失败 %d",
+                sshConfigs.size(), sshConfigs.size() - failed, failed));
+        });
+        return job;
+    }
+
+    /**
+     * 以后台任务的形式批量执行单个内核操作
+     */
+    public JobRegistry.Job startBatchOperation(String coreType, CoreOperation operation,
+                                               List<SshConfig> sshConfigs, Object... params) {
+        return startBatchPipeline(CoreOperationPipeline.of(coreType).then(operation, params), sshConfigs);
+    }
+
+    /**
+     * 以后台任务的形式分批执行流水线，适用于内核升级等需要谨慎推进的操作
+     * 每批结束后检查内核服务和自检命令，全部通过才继续下一批；任一服务器失败或检查未通过时停止，
+     * 对已执行成功的服务器重新连接并执行流水线中登记的回滚，其余服务器不再执行
+     */
+    public JobRegistry.Job startWavePipeline(CoreOperationPipeline pipeline, List<SshConfig> sshConfigs) {
+        List<List<SshConfig>> waves = wavePlanner.plan(sshConfigs);
+        JobRegistry.Job job = jobRegistry.create("core", describe(pipeline) + "（分批）", sshConfigs.size());
+        CompletableFuture.runAsync(() -> runPipelineWaves(job, pipeline, waves), executorService)
+            .whenComplete((ignored, error) -> {
+                if (error != null) {
+                    log.error("分批执行任务 {} 异常结束", job.getId(), error);
+                    job.finish(false, "执行异常: " + error.getMessage());
+                }
+            });
+        return job;
+    }
+
+    /**
+     * 以后台任务的形式分批执行单个内核操作
+     */
+    public JobRegistry.Job startWaveOperation(String coreType, CoreOperation operation,
+                                              List<SshConfig> sshConfigs, Object... params) {
+        return startWavePipeline(CoreOperationPipeline.of(coreType).then(operation, params), sshConfigs);
+    }
+
+    private void runPipelineWaves(JobRegistry.Job job, CoreOperationPipeline pipeline, List<List<SshConfig>> waves) {
+        // 停止或卸载内核后服务本就不应运行，不做健康检查
+        boolean probe = pipeline.getSteps().stream()
+            .noneMatch(step -> step.getOperation() == CoreOperation.STOP || step.getOperation() == CoreOperation.UNINSTALL);
+        List<SshConfig> releasedConfigs = new ArrayList<>();
+        List<CorePipelineResult> releasedResults = new ArrayList<>();
+        int total = waves.stream().mapToInt(List::size).sum();
+
+        for (int i = 0; i < waves.size(); i++) {
+            List<SshConfig> wave = waves.get(i);
+            String waveName = String.format("第 %d/%d 批", i + 1, waves.size());
+            job.emit(null, null, "wave", true, waveName + "开始，" + wave.size() + " 台服务器", 0);
+
+            List<CompletableFuture<CorePipelineResult>> futures = wave.stream()
+                .map(config -> CompletableFuture.supplyAsync(() ->
+                    executePipelineForJob(job, pipeline, config), executorService))
+                .toList();
+            List<CorePipelineResult> results = futures.stream().map(CompletableFuture::join).toList();
+            for (int j = 0; j < wave.size(); j++) {
+                if (results.get(j).isSuccess()) {
+                    releasedConfigs.add(wave.get(j));
+                    releasedResults.add(results.get(j));
+                }
+            }
+
+            String failure = results.stream()
+                .filter(result -> !result.isSuccess())
+                .findFirst()
+                .map(result -> "服务器 " + result.getServerAddress() + " 执行失败: " + result.getMessage())
+                .orElseGet(() -> probe ? probeWave(job, pipeline.getCoreType(), wave) : null);
+            if (failure != null) {
+                log.warn("分批执行任务 {} {}未通过: {}", job.getId(), waveName, failure);
+                job.emit(null, null, "halt", false, waveName + "未通过: " + failure + "，停止执行并回滚", 0);
+                for (int j = 0; j < releasedConfigs.size(); j++) {
+                    rollbackPipeline(job, pipeline, releasedConfigs.get(j), releasedResults.get(j));
+                }
+                waves.subList(i + 1, waves.size()).forEach(remaining -> remaining.forEach(config ->
+                    job.emit(null, config.getHost(), JobRegistry.STEP_FAILED, false, "前序批次未通过，已取消", 0)));
+                job.finish(false, String.format("共 %d 台服务器，%s未通过，已停止: %s", total, waveName, failure));
+                return;
+            }
+            job.emit(null, null, "wave", true, waveName + "通过健康检查", 0);
+        }
+        job.finish(true, String.format("共 %d 台服务器，全部执行成功", total));
+    }
+
+    /**
+     * 并发检查本批服务器的内核服务和自检命令
+     *
+     * @return 第一个未通过的原因，全部通过时返回null
+     */
+    private String probeWave(JobRegistry.Job job, String coreType, List<SshConfig> wave) {
+        List<CompletableFuture<String>> probes = wave.stream()
+            .map(config -> CompletableFuture.supplyAsync(() -> {
+                HealthProbeResult probe = coreHealthProbe.probe(config, Map.of(coreType, List.<Integer>of()));
+                job.emit(null, config.getHost(), "probe", probe.isHealthy(),
+                    probe.getMessage() + "（检查 " + probe.getAttempts() + " 次）", probe.getElapsedMillis());
+                return probe.isHealthy() ? null : "服务器 " + config.getHost() + " " + probe.getMessage();
+            }, executorService))
+            .toList();
+        return probes.stream().map(CompletableFuture::join).filter(Objects::nonNull).findFirst().orElse(null);
+    }
+
+    /**
+     * 对已成功执行的服务器重新连接，按相反顺序执行流水线中登记的回滚
+     */
+    private void rollbackPipeline(JobRegistry.Job job, CoreOperationPipeline pipeline, SshConfig sshConfig,
+                                  CorePipelineResult executed) {
+        List<CoreOperationPipeline.Step> steps = pipeline.getSteps();
+        if (steps.stream().noneMatch(step -> step.getRollback() != null)) {
+            job.emit(null, sshConfig.getHost(), "rollback", false, "流水线中没有可回滚的操作", 0);
+            return;
+        }
+        CorePipelineResult result = new CorePipelineResult();
+        result.setServerAddress(sshConfig.getHost());
+        try {
+            CoreManagementStrategy strategy = strategyRegistry.getStrategy(pipeline.getCoreType());
+            try (SshConnection connection = sshConnectionService.createConnection(sshConfig)) {
+                rollback(steps, executed.getSteps(), strategy, connection, result, new CoreOperationPipeline.Listener() {
+                    @Override
+                    public void onRollback(CoreOperationPipeline.Step step, CoreManagementResult rollbackResult) {
+                        job.emit(null, sshConfig.getHost(), "rollback", rollbackResult.isSuccess(),
+                            step.getOperation().getDescription() + ": " + rollbackResult.getMessage(), rollbackResult.getDuration());
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.error("服务器 {} 回滚失败: {}", sshConfig.getHost(), e.getMessage());
+            job.emit(null, sshConfig.getHost(), "rollback", false, "回滚失败: " + e.getMessage(), 0);
+        }
+    }
+
+    private static String describe(CoreOperationPipeline pipeline) {
+        return pipeline.getCoreType() + " " + pipeline.getSteps().stream()
+                .map(step -> step.getOperation().getCode())
+                .collect(Collectors.joining(","));
+    }
+
+    private CorePipelineResult executePipelineForJob(JobRegistry.Job job, CoreOperationPipeline pipeline,
+                                                     SshConfig sshConfig) {
+        String host = sshConfig.getHost();
+        CorePipelineResult result = executePipeline(pipeline, sshConfig, new CoreOperationPipeline.Listener() {
+            @Override
+            public void onConnected(long connectMillis) {
+                job.emit(null, host, "connect", true, "SSH连接已建立", connectMillis);
+            }
+
+            @Override
+            public void onStep(CoreOperationPipeline.Step step, CoreManagementResult stepResult) {
+                job.emit(null, host, step.getOperation().getCode(), stepResult.isSuccess(),
+                    stepResult.getMessage(), stepResult.getDuration());
+            }
+
+            @Override
+            public void onRollback(CoreOperationPipeline.Step step, CoreManagementResult rollbackResult) {
+                job.emit(null, host, "rollback", rollbackResult.isSuccess(),
+                    step.getOperation().getDescription() + ": " + rollbackResult.getMessage(), rollbackResult.getDuration());
+            }
+        });
+        job.emit(null, host, result.isSuccess() ? JobRegistry.STEP_DONE : JobRegistry.STEP_FAILED,
+            result.isSuccess(), result.getMessage(), result.getTotalMillis());
+        return result;
+    }
+
+    private void runPipeline(CoreOperationPipeline pipeline, CoreManagementStrategy strategy,
+                             SshConnection connection, CorePipelineResult result,
+                             CoreOperationPipeline.Listener listener) {
+        List<CoreOperationPipeline.Step> completedSteps = new ArrayList<>();
+        List<CoreManagementResult> completedResults = new ArrayList<>();
+
+        for (CoreOperationPipeline.Step step : pipeline.getSteps()) {
+            CoreOperation operation = step.getOperation();
+            long stepStart = System.nanoTime();
+            CoreManagementResult stepResult;
+            try {
+                stepResult = executeOperationInternal(strategy, operation, connection, step.getParams());
+                if (stepResult == null) {
+                    stepResult = failedResult(operation, "不支持的操作: " + operation.getDescription());
+                }
+            } catch (Exception e) {
+                stepResult = failedResult(operation, "操作执行失败: " + e.getMessage());
+            }
+            stepResult.setDuration(elapsedMillis(stepStart));
+            stepResult.setServerAddress(result.getServerAddress());
+            result.getSteps().add(stepResult);
+            listener.onStep(step, stepResult);
+
+            if (!stepResult.isSuccess()) {
+                result.setSuccess(false);
+                result.setFailedOperation(operation.name());
+                result.setMessage(stepResult.getMessage());
+                rollback(completedSteps, completedResults, strategy, connection, result, listener);
+                return;
+            }
+            completedSteps.add(step);
+            completedResults.add(stepResult);
+        }
+
+        result.setSuccess(true);
+        result.setMessage("全部操作执行成功");
+    }
+
+    private void rollback(List<CoreOperationPipeline.Step> completedSteps, List<CoreManagementResult> completedResults,
+                          CoreManagementStrategy strategy, SshConnection connection, CorePipelineResult result,
+                          CoreOperationPipeline.Listener listener) {
+        for (int i = completedSteps.size() - 1; i >= 0; i--) {
+            CoreOperationPipeline.RollbackHook hook = completedSteps.get(i).getRollback();
+            if (hook == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            CoreManagementResult rollbackResult;
+            try {
+                rollbackResult = hook.rollback(connection, strategy, completedResults.get(i));
+                if (rollbackResult == null) {
+                    rollbackResult = failedResult(completedSteps.get(i).getOperation(), "回滚没有返回结果");
+                }
+            } catch (Exception e) {
+                rollbackResult = failedResult(completedSteps.get(i).getOperation(), "回滚失败: " + e.getMessage());
+            }
+            rollbackResult.setDuration(elapsedMillis(start));
+            rollbackResult.setServerAddress(result.getServerAddress());
+            result.getRollbackSteps().add(rollbackResult);
+            result.setRolledBack(true);
+            listener.onRollback(completedSteps.get(i), rollbackResult);
+            if (!rollbackResult.isSuccess()) {
+                log.warn("服务器 {} 回滚 {} 失败: {}", result.getServerAddress(),
+                        completedSteps.get(i).getOperation(), rollbackResult.getMessage());
+            }
+        }
+    }
+
+    private CoreManagementResult failedResult(CoreOperation operation, String message) {
+        CoreManagementResult result = new CoreManagementResult();
+        result.setSuccess(false);
+        result.setMessage(message);
+        result.setOperationTime(LocalDateTime.now());
+        result.setOperation(operation.name());
+        return result;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
     private CoreManagementResult executeOperationInternal(CoreManagementStrategy strategy, 
                                                          CoreOperation operation,
                                                          SshConnection connection, 
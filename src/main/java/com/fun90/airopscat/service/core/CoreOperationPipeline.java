@@ -0,0 +1,140 @@
+package com.fun90.airopscat.service.core;
+
+import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.CoreManagementResult;
+import com.fun90.airopscat.model.enums.CoreOperation;
+import com.fun90.airopscat.service.core.strategy.CoreManagementStrategy;
+import com.fun90.airopscat.service.ssh.SshConnection;
+import com.fun90.airopscat.utils.RemoteFileUtil;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 内核操作流水线
+ * 描述在同一SSH会话内按顺序执行的一组操作：任一步失败即停止，并按相反顺序执行已完成步骤的回滚
+ * 构建完成后不再修改，可在多台服务器之间复用
+ */
+@Getter
+public class CoreOperationPipeline {
+
+    /**
+     * 恢复配置更新前的备份并重启内核，用于配置已写入但后续步骤失败的情况
+     */
+    public static final RollbackHook RESTORE_CONFIG = (connection, strategy, stepResult) -> {
+        Map<String, Object> metadata = stepResult.getMetadata();
+        Object backupPath = metadata != null ? metadata.get(CoreManagementResult.META_BACKUP_PATH) : null;
+        Object configPath = metadata != null ? metadata.get(CoreManagementResult.META_CONFIG_PATH) : null;
+        if (backupPath == null || configPath == null) {
+            CoreManagementResult result = new CoreManagementResult();
+            result.setOperation("rollback");
+            result.setSuccess(false);
+            result.setMessage("没有可恢复的配置备份");
+            result.setOperationTime(LocalDateTime.now());
+            return result;
+        }
+        CommandResult restore = connection.executeCommand(String.format("mv -f %s %s",
+                RemoteFileUtil.quote(backupPath.toString()), RemoteFileUtil.quote(configPath.toString())));
+        if (!restore.isSuccess()) {
+            CoreManagementResult result = new CoreManagementResult();
+            result.setOperation("rollback");
+            result.setSuccess(false);
+            result.setMessage("恢复配置备份失败: " + Objects.toString(restore.getStderr(), ""));
+            result.setOperationTime(LocalDateTime.now());
+            return result;
+        }
+        return strategy.restart(connection);
+    };
+
+    private final String coreType;
+    private final List<Step> steps = new ArrayList<>();
+
+    private CoreOperationPipeline(String coreType) {
+        this.coreType = coreType;
+    }
+
+    public static CoreOperationPipeline of(String coreType) {
+        return new CoreOperationPipeline(coreType);
+    }
+
+    /**
+     * 上传配置并重启内核，重启失败时恢复原配置
+     */
+    public static CoreOperationPipeline deployConfig(String coreType, String config) {
+        return of(coreType)
+                .then(CoreOperation.CONFIG, config).onRollback(RESTORE_CONFIG)
+                .then(CoreOperation.RESTART);
+    }
+
+    /**
+     * 追加一个操作
+     */
+    public CoreOperationPipeline then(CoreOperation operation, Object... params) {
+        steps.add(new Step(operation, params, null));
+        return this;
+    }
+
+    /**
+     * 为最近追加的操作设置回滚，该操作成功而后续步骤失败时执行
+     */
+    public CoreOperationPipeline onRollback(RollbackHook rollback) {
+        if (steps.isEmpty()) {
+            throw new IllegalStateException("流水线中还没有操作");
+        }
+        Step last = steps.removeLast();
+        steps.add(new Step(last.getOperation(), last.getParams(), rollback));
+        return this;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * 回滚钩子，在同一SSH会话内执行
+     */
+    @FunctionalInterface
+    public interface RollbackHook {
+        /**
+         * @param stepResult 被回滚步骤的执行结果
+         */
+        CoreManagementResult rollback(SshConnection connection, CoreManagementStrategy strategy,
+                                      CoreManagementResult stepResult) throws IOException;
+    }
+
+    /**
+     * 流水线执行进度回调，在执行流水线的线程上调用
+     */
+    public interface Listener {
+        Listener NONE = new Listener() {
+        };
+
+        default void onConnected(long connectMillis) {
+        }
+
+        default void onStep(Step step, CoreManagementResult result) {
+        }
+
+        default void onRollback(Step step, CoreManagementResult result) {
+        }
+    }
+
+    @Getter
+    public static class Step {
+        private final CoreOperation operation;
+        private final Object[] params;
+        private final RollbackHook rollback;
+
+        Step(CoreOperation operation, Object[] params, RollbackHook rollback) {
+            this.operation = operation;
+            this.params = params;
+            this.rollback = rollback;
+        }
+    }
+}
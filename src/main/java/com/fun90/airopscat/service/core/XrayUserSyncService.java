@@ -0,0 +1,212 @@
+package com.fun90.airopscat.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.SshConfig;
+import com.fun90.airopscat.service.ssh.SshConnection;
+import com.fun90.airopscat.service.ssh.SshConnectionService;
+import com.fun90.airopscat.utils.JsonUtil;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Xray用户热同步
+ * 对比上次部署的配置与目标配置，仅客户端列表变化时通过 HandlerService（xray api adu/rmu）增删用户，
+ * 不重启内核、不影响其他用户的连接；入站、出站、路由等结构变化仍需完整部署
+ */
+@Slf4j
+@Service
+public class XrayUserSyncService {
+
+    private static final String API_SERVER = "127.0.0.1:100";
+
+    private final SshConnectionService sshConnectionService;
+
+    public XrayUserSyncService(SshConnectionService sshConnectionService) {
+        this.sshConnectionService = sshConnectionService;
+    }
+
+    /**
+     * 计算用户差异
+     *
+     * @return 仅客户端变化时返回差异（可能为空），存在结构变化或无法按用户同步时返回null
+     */
+    public UserDelta diff(String deployedConfig, String desiredConfig) {
+        if (deployedConfig == null || desiredConfig == null) {
+            return null;
+        }
+        JsonNode deployed;
+        JsonNode desired;
+        try {
+            deployed = JsonUtil.toJsonNode(deployedConfig);
+            desired = JsonUtil.toJsonNode(desiredConfig);
+        } catch (Exception e) {
+            log.debug("配置解析失败，无法热同步: {}", e.getMessage());
+            return null;
+        }
+
+        Map<String, Map<String, JsonNode>> deployedClients = new HashMap<>();
+        Map<String, Map<String, JsonNode>> desiredClients = new HashMap<>();
+        JsonNode deployedSkeleton = stripClients(deployed, deployedClients);
+        JsonNode desiredSkeleton = stripClients(desired, desiredClients);
+        if (deployedSkeleton == null || desiredSkeleton == null || !deployedSkeleton.equals(desiredSkeleton)) {
+            return null;
+        }
+
+        for (Map.Entry<String, Map<String, JsonNode>> entry : deployedClients.entrySet()) {
+            if (!desiredClients.containsKey(entry.getKey()) && !entry.getValue().isEmpty()) {
+                return null;
+            }
+        }
+
+        UserDelta delta = new UserDelta();
+        for (Map.Entry<String, Map<String, JsonNode>> entry : desiredClients.entrySet()) {
+            String tag = entry.getKey();
+            Map<String, JsonNode> before = deployedClients.getOrDefault(tag, Collections.emptyMap());
+            Map<String, JsonNode> after = entry.getValue();
+
+            List<String> removed = new ArrayList<>();
+            List<JsonNode> added = new ArrayList<>();
+            for (Map.Entry<String, JsonNode> client : before.entrySet()) {
+                JsonNode target = after.get(client.getKey());
+                if (target == null) {
+                    removed.add(client.getKey());
+                } else if (!target.equals(client.getValue())) {
+                    // 同一用户的凭据或参数变化：先删后加
+                    removed.add(client.getKey());
+                    added.add(target);
+                }
+            }
+            for (Map.Entry<String, JsonNode> client : after.entrySet()) {
+                if (!before.containsKey(client.getKey())) {
+                    added.add(client.getValue());
+                }
+            }
+            if (!removed.isEmpty()) {
+                delta.getRemovals().put(tag, removed);
+            }
+            if (!added.isEmpty()) {
+                delta.getAdditions().put(tag, inboundWithClients(findInbound(desired, tag), added));
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * 通过 xray api 应用用户差异
+     */
+    public void apply(SshConfig sshConfig, UserDelta delta) throws IOException {
+        if (delta.isEmpty()) {
+            return;
+        }
+        try (SshConnection connection = sshConnectionService.createConnection(sshConfig)) {
+            for (Map.Entry<String, List<String>> entry : delta.getRemovals().entrySet()) {
+                StringBuilder command = new StringBuilder("xray api rmu --server=" + API_SERVER)
+                        .append(" -tag=").append(quote(entry.getKey()));
+                for (String email : entry.getValue()) {
+                    command.append(' ').append(quote(email));
+                }
+                execute(connection, command.toString());
+            }
+
+            if (!delta.getAdditions().isEmpty()) {
+                ObjectNode payload = JsonNodeFactory.instance.objectNode();
+                ArrayNode inbounds = payload.putArray("inbounds");
+                delta.getAdditions().values().forEach(inbounds::add);
+                String path = "/tmp/airopscat-adu-" + System.nanoTime() + ".json";
+                connection.writeRemoteFile(path, JsonUtil.toJsonString(payload));
+                try {
+                    execute(connection, "xray api adu --server=" + API_SERVER + " " + path);
+                } finally {
+                    connection.executeCommand("rm -f " + path);
+                }
+            }
+        }
+        log.info("服务器 {} 用户热同步完成，新增 {}，移除 {}", sshConfig.getHost(), delta.countAdded(), delta.countRemoved());
+    }
+
+    private void execute(SshConnection connection, String command) throws IOException {
+        CommandResult result = connection.executeCommand(command);
+        if (!result.isSuccess()) {
+            throw new IOException("xray api 执行失败: " + StringUtils.defaultIfBlank(result.getStderr(), result.getStdout()));
+        }
+    }
+
+    /**
+     * 移除各入站的客户端列表并按入站标签收集，返回剩余的配置骨架
+     * 客户端缺少email（无法按用户删除）或入站缺少标签时返回null
+     */
+    private JsonNode stripClients(JsonNode config, Map<String, Map<String, JsonNode>> clientsByTag) {
+        JsonNode skeleton = config.deepCopy();
+        JsonNode inbounds = skeleton.path("inbounds");
+        for (JsonNode inbound : inbounds) {
+            JsonNode settings = inbound.path("settings");
+            if (!settings.has("clients")) {
+                continue;
+            }
+            String tag = inbound.path("tag").asText(null);
+            if (tag == null) {
+                return null;
+            }
+            Map<String, JsonNode> clients = new LinkedHashMap<>();
+            for (JsonNode client : settings.path("clients")) {
+                String email = client.path("email").asText(null);
+                if (email == null || clients.put(email, client) != null) {
+                    return null;
+                }
+            }
+            clientsByTag.put(tag, clients);
+            ((ObjectNode) settings).remove("clients");
+        }
+        return skeleton;
+    }
+
+    private JsonNode findInbound(JsonNode config, String tag) {
+        for (JsonNode inbound : config.path("inbounds")) {
+            if (tag.equals(inbound.path("tag").asText(null))) {
+                return inbound;
+            }
+        }
+        throw new IllegalStateException("入站不存在: " + tag);
+    }
+
+    private ObjectNode inboundWithClients(JsonNode inbound, List<JsonNode> clients) {
+        ObjectNode copy = inbound.deepCopy();
+        ArrayNode array = ((ObjectNode) copy.path("settings")).putArray("clients");
+        clients.forEach(array::add);
+        return copy;
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * 用户差异：入站标签 -> 待移除的email / 仅包含新增客户端的入站配置
+     */
+    @Data
+    public static class UserDelta {
+        private final Map<String, List<String>> removals = new LinkedHashMap<>();
+        private final Map<String, JsonNode> additions = new LinkedHashMap<>();
+
+        public boolean isEmpty() {
+            return removals.isEmpty() && additions.isEmpty();
+        }
+
+        public int countRemoved() {
+            return removals.values().stream().mapToInt(List::size).sum();
+        }
+
+        public int countAdded() {
+            return additions.values().stream().mapToInt(inbound -> inbound.path("settings").path("clients").size()).sum();
+        }
+    }
+}
@@ -33,4 +33,16 @@ public interface CoreManagementStrategy {
     CoreManagementResult update(SshConnection connection, Object... params);
 
     CoreManagementResult config(SshConnection connection, Object... params);
+
+    /**
+     * 内核的systemd服务名，健康检查时用于 systemctl is-active
+     */
+    String getServiceName();
+
+    /**
+     * 内核自身的快速自检命令，返回0表示可以正常处理请求；为null时不执行
+     */
+    default String getHealthCheckCommand() {
+        return null;
+    }
 }
\ No newline at end of file
@@ -2,13 +2,18 @@ package com.fun90.airopscat.service.core.strategy.impl;
 
 import com.fun90.airopscat.annotation.SupportedCores;
 import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.CoreArtifact;
 import com.fun90.airopscat.model.dto.CoreManagementResult;
+import com.fun90.airopscat.service.core.CoreArtifactStore;
 import com.fun90.airopscat.service.core.strategy.CoreManagementStrategy;
 import com.fun90.airopscat.service.ssh.SshConnection;
+import com.fun90.airopscat.utils.RemoteFileUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * Hysteria2内核管理策略
@@ -28,6 +33,13 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
     private static final String CONFIG_PATH = "/etc/hysteria/config.yaml";
     private static final String LOG_PATH = "/var/log/hysteria/";
     private static final String SYSTEMD_SERVICE_PATH = "/etc/systemd/system/hysteria-server.service";
+    private static final String DOWNLOAD_URL = "https://github.com/apernet/hysteria/releases/latest/download/hysteria-linux-amd64";
+    
+    private final CoreArtifactStore artifactStore;
+    
+    public Hysteria2CoreManagementStrategy(CoreArtifactStore artifactStore) {
+        this.artifactStore = artifactStore;
+    }
     
     @Override
     public CoreManagementResult start(SshConnection connection) {
@@ -59,6 +71,11 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
         return executeSystemctlCommand(connection, "status", "查询Hysteria2服务状态");
     }
     
+    @Override
+    public String getServiceName() {
+        return SERVICE_NAME;
+    }
+    
     @Override
     public CoreManagementResult install(SshConnection connection, Object... params) {
         CoreManagementResult result = new CoreManagementResult();
@@ -74,14 +91,20 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
                 return result;
             }
             
-            // 2. 下载并安装Hysteria2
+            // 2. 优先使用制品仓库推送的程序，仓库中没有时从GitHub下载
+            String version = params.length > 0 && params[0] instanceof String ? (String) params[0] : null;
+            String artifactDir = pushArtifact(connection, version);
+            String fetchBinary = artifactDir != null
+                ? "cp " + artifactDir + "/hysteria /tmp/hysteria"
+                : "wget -O /tmp/hysteria " + DOWNLOAD_URL;
+            
             String installScript = """
                 #!/bin/bash
                 # 创建目录
                 sudo mkdir -p /etc/hysteria /var/log/hysteria
                 
-                # 下载Hysteria2二进制文件
-                wget -O /tmp/hysteria https://github.com/apernet/hysteria/releases/latest/download/hysteria-linux-amd64
+                # 获取Hysteria2二进制文件
+                %s
                 
                 # 安装到系统路径
                 sudo mv /tmp/hysteria /usr/local/bin/hysteria
@@ -109,7 +132,7 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
                 sudo systemctl enable hysteria-server
                 
                 echo "Hysteria2安装完成"
-                """;
+                """.formatted(fetchBinary);
             
             CommandResult installResult = connection.executeCommand(installScript);
             
@@ -185,6 +208,13 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
         result.setOperationTime(LocalDateTime.now());
         
         try {
+            // 先推送制品再停止服务，缩短服务中断时间；仓库中没有时仍从GitHub下载
+            String version = params.length > 0 && params[0] instanceof String ? (String) params[0] : null;
+            String artifactDir = pushArtifact(connection, version);
+            String fetchBinary = artifactDir != null
+                ? "cp " + artifactDir + "/hysteria /tmp/hysteria-new"
+                : "wget -O /tmp/hysteria-new " + DOWNLOAD_URL;
+            
             // 停止服务
             stop(connection);
             
@@ -192,18 +222,17 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
             CommandResult backupResult = connection.executeCommand(
                 "sudo cp /usr/local/bin/hysteria /usr/local/bin/hysteria.backup");
             
-            // 下载最新版本
             String updateScript = """
                 #!/bin/bash
-                # 下载最新版本
-                wget -O /tmp/hysteria-new https://github.com/apernet/hysteria/releases/latest/download/hysteria-linux-amd64
+                # 获取目标版本
+                %s
                 
                 # 替换二进制文件
                 sudo mv /tmp/hysteria-new /usr/local/bin/hysteria
                 sudo chmod +x /usr/local/bin/hysteria
                 
                 echo "Hysteria2更新完成"
-                """;
+                """.formatted(fetchBinary);
             
             CommandResult updateResult = connection.executeCommand(updateScript);
             
@@ -240,21 +269,24 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
         
         try {
             if (params.length > 0 && params[0] instanceof String configContent) {
-                // 写入配置文件
-                connection.writeRemoteFile(CONFIG_PATH, configContent);
-                
-                // 验证配置文件语法
-                CommandResult validateResult = connection.executeCommand(
-                    "/usr/local/bin/hysteria server -c " + CONFIG_PATH + " --check");
+                // 写入临时文件，校验摘要并检查语法通过后备份原配置、原子替换，未通过时原配置保持不变
+                RemoteFileUtil.WriteResult writeResult = RemoteFileUtil.writeAtomically(connection, CONFIG_PATH, configContent,
+                    tempPath -> BINARY_PATH + " server -c " + RemoteFileUtil.quote(tempPath) + " --check");
                 
-                if (validateResult.isSuccess()) {
+                if (writeResult.isSuccess()) {
                     result.setSuccess(true);
                     result.setMessage("配置文件更新成功");
                     result.setOutput("配置验证通过");
+                    if (writeResult.getBackupPath() != null) {
+                        result.setMetadata(Map.of(CoreManagementResult.META_BACKUP_PATH, writeResult.getBackupPath(),
+                                CoreManagementResult.META_CONFIG_PATH, CONFIG_PATH));
+                    }
                 } else {
+                    CommandResult writeCommand = writeResult.getCommandResult();
                     result.setSuccess(false);
-                    result.setMessage("配置文件语法错误: " + validateResult.getStderr());
-                    result.setOutput(validateResult.getStdout());
+                    result.setMessage(writeResult.getFailure() + "，原配置未改动: "
+                            + (writeResult.isValidationFailed() ? writeCommand.getStdout() : writeCommand.getStderr()));
+                    result.setOutput(writeCommand.getStdout());
                 }
             } else {
                 // 读取当前配置
@@ -273,6 +305,25 @@ public class Hysteria2CoreManagementStrategy implements CoreManagementStrategy {
         return result;
     }
     
+    /**
+     * 从制品仓库推送Hysteria2程序到服务器
+     *
+     * @return 服务器上的制品目录，仓库中没有对应制品时返回null
+     */
+    private String pushArtifact(SshConnection connection, String version) throws IOException {
+        CommandResult archResult = connection.executeCommand("uname -m");
+        if (!archResult.isSuccess()) {
+            return null;
+        }
+        String arch = CoreArtifactStore.normalizeArch(archResult.getStdout());
+        CoreArtifact artifact = artifactStore.resolve(CoreArtifactStore.CORE_HYSTERIA, version, arch);
+        if (artifact == null) {
+            log.info("制品仓库中没有Hysteria2 {} ({})，改为从GitHub下载", version != null ? version : "latest", arch);
+            return null;
+        }
+        return artifactStore.push(connection, artifact);
+    }
+    
     /**
      * 执行systemctl命令的通用方法
      */
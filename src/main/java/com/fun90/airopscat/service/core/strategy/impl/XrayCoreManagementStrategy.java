@@ -2,12 +2,16 @@ package com.fun90.airopscat.service.core.strategy.impl;
 
 import com.fun90.airopscat.annotation.SupportedCores;
 import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.CoreArtifact;
 import com.fun90.airopscat.model.dto.CoreManagementResult;
+import com.fun90.airopscat.service.core.CoreArtifactStore;
 import com.fun90.airopscat.service.core.strategy.CoreManagementStrategy;
 import com.fun90.airopscat.service.ssh.SshConnection;
+import com.fun90.airopscat.utils.RemoteFileUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -29,6 +33,13 @@ public class XrayCoreManagementStrategy implements CoreManagementStrategy {
     private static final String CONFIG_PATH = "/usr/local/etc/xray/config.json";
     private static final String LOG_PATH = "/var/log/xray/";
     private static final String SYSTEMD_SERVICE_PATH = "/etc/systemd/system/xray.service";
+    private static final String ASSET_PATH = "/usr/local/share/xray";
+    
+    private final CoreArtifactStore artifactStore;
+    
+    public XrayCoreManagementStrategy(CoreArtifactStore artifactStore) {
+        this.artifactStore = artifactStore;
+    }
     
     @Override
     public CoreManagementResult start(SshConnection connection) {
@@ -55,6 +66,19 @@ public class XrayCoreManagementStrategy implements CoreManagementStrategy {
         return executeSystemctlCommand(connection, "status", "查询Xray服务状态");
     }
     
+    @Override
+    public String getServiceName() {
+        return SERVICE_NAME;
+    }
+    
+    /**
+     * 查询一个不存在的统计项，只验证API入站可用，不读取也不重置流量
+     */
+    @Override
+    public String getHealthCheckCommand() {
+        return "xray api statsquery --server=127.0.0.1:100 -pattern airopscat-health-check";
+    }
+    
     @Override
     public CoreManagementResult install(SshConnection connection, Object... params) {
         CoreManagementResult result = new CoreManagementResult();
@@ -83,9 +107,10 @@ public class XrayCoreManagementStrategy implements CoreManagementStrategy {
                 return result;
             }
             
-            // 3. 执行安装
+            // 3. 执行安装：优先使用制品仓库推送的程序，仓库中没有时使用官方安装脚本
             String version = params.length > 0 && params[0] instanceof String ? (String) params[0] : null;
-            String installCommand = buildInstallCommand(version);
+            String artifactDir = pushArtifact(connection, version, archResult.getStdout());
+            String installCommand = artifactDir != null ? buildArtifactInstallCommand(artifactDir) : buildInstallCommand(version);
             
             log.info("开始安装Xray: {}", installCommand);
             CommandResult installResult = connection.executeCommand(installCommand);
@@ -182,7 +207,11 @@ public class XrayCoreManagementStrategy implements CoreManagementStrategy {
             
             // 2. 执行更新
             String targetVersion = params.length > 0 && params[0] instanceof String ? (String) params[0] : null;
-            String updateCommand = buildInstallCommand(targetVersion); // 使用安装脚本更新
+            CommandResult archResult = connection.executeCommand("uname -m");
+            String artifactDir = archResult.isSuccess() ? pushArtifact(connection, targetVersion, archResult.getStdout()) : null;
+            String updateCommand = artifactDir != null
+                ? buildArtifactInstallCommand(artifactDir)
+                : buildInstallCommand(targetVersion); // 使用安装脚本更新
             
             log.info("开始更新Xray从版本 {} 到 {}", currentVersion, targetVersion != null ? targetVersion : "latest");
             CommandResult updateResult = connection.executeCommand(updateCommand);
@@ -231,36 +260,24 @@ public class XrayCoreManagementStrategy implements CoreManagementStrategy {
                 String configPath = params.length > 1 && params[1] instanceof String ? 
                     (String) params[1] : CONFIG_PATH;
                 
-                // 1. 备份现有配置
-                String backupPath = configPath + ".backup." + System.currentTimeMillis();
-                CommandResult backupResult = connection.executeCommand(
-                    String.format("cp %s %s", configPath, backupPath));
-                
-                if (!backupResult.isSuccess()) {
-                    log.warn("无法备份配置文件: {}", backupResult.getStderr());
-                }
-                
-                // 2. 写入新配置
-                connection.writeRemoteFile(configPath, configContent);
+                // 写入临时文件，校验摘要并验证通过后备份原配置、原子替换，未通过时原配置保持不变
+                RemoteFileUtil.WriteResult writeResult = RemoteFileUtil.writeAtomically(connection, configPath, configContent,
+                    tempPath -> String.format("%s run -test -config %s", BINARY_PATH, RemoteFileUtil.quote(tempPath)));
                 
-                // 3. 验证配置
-                CommandResult validateResult = connection.executeCommand(
-                    String.format("%s run -test -config %s", BINARY_PATH, configPath));
-                
-                if (validateResult.isSuccess()) {
+                if (writeResult.isSuccess()) {
                     result.setSuccess(true);
                     result.setMessage("配置文件更新成功");
                     result.setOutput("配置验证通过");
-                } else {
-                    // 恢复备份
-                    if (backupResult.isSuccess()) {
-                        connection.executeCommand(String.format("mv %s %s", backupPath, configPath));
-                        result.setMessage("配置文件验证失败，已恢复原配置: " + validateResult.getStdout());
-                    } else {
-                        result.setMessage("配置文件验证失败: " + validateResult.getStdout());
+                    if (writeResult.getBackupPath() != null) {
+                        result.setMetadata(Map.of(CoreManagementResult.META_BACKUP_PATH, writeResult.getBackupPath(),
+                                CoreManagementResult.META_CONFIG_PATH, configPath));
                     }
+                } else {
+                    CommandResult writeCommand = writeResult.getCommandResult();
+                    String detail = writeResult.isValidationFailed() ? writeCommand.getStdout() : writeCommand.getStderr();
                     result.setSuccess(false);
-                    result.setError(validateResult.getStdout());
+                    result.setMessage(writeResult.getFailure() + "，原配置未改动: " + detail);
+                    result.setError(detail);
                 }
             } else {
                 // 读取当前配置
@@ -462,6 +479,60 @@ public class XrayCoreManagementStrategy implements CoreManagementStrategy {
         }
     }
     
+    /**
+     * 从制品仓库推送Xray程序和地理数据文件到服务器
+     *
+     * @return 服务器上的制品目录，仓库中没有对应制品时返回null
+     */
+    private String pushArtifact(SshConnection connection, String version, String machine) throws IOException {
+        String arch = CoreArtifactStore.normalizeArch(machine);
+        CoreArtifact artifact = artifactStore.resolve(CoreArtifactStore.CORE_XRAY, version, arch);
+        if (artifact == null) {
+            log.info("制品仓库中没有Xray {} ({})，改为使用官方安装脚本", version != null ? version : "latest", arch);
+            return null;
+        }
+        return artifactStore.push(connection, artifact);
+    }
+    
+    /**
+     * 从服务器上的制品目录安装，服务文件与官方安装脚本一致；服务正在运行时重启以加载新版本
+     */
+    private String buildArtifactInstallCommand(String artifactDir) {
+        return """
+            set -e
+            install -d %2$s /usr/local/etc/xray %3$s
+            install -m 755 %1$s/xray %4$s
+            for f in geoip.dat geosite.dat; do
+                if [ -f %1$s/$f ]; then install -m 644 %1$s/$f %2$s/$f; fi
+            done
+            if [ ! -f %5$s ]; then echo '{}' > %5$s; fi
+            if [ ! -f %6$s ]; then
+            cat > %6$s <<'EOF'
+            [Unit]
+            Description=Xray Service
+            After=network.target nss-lookup.target
+            
+            [Service]
+            User=nobody
+            CapabilityBoundingSet=CAP_NET_ADMIN CAP_NET_BIND_SERVICE
+            AmbientCapabilities=CAP_NET_ADMIN CAP_NET_BIND_SERVICE
+            NoNewPrivileges=true
+            ExecStart=%4$s run -config %5$s
+            Restart=on-failure
+            RestartPreventExitStatus=23
+            LimitNPROC=10000
+            LimitNOFILE=1000000
+            
+            [Install]
+            WantedBy=multi-user.target
+            EOF
+            fi
+            systemctl daemon-reload
+            systemctl enable %7$s
+            systemctl try-restart %7$s
+            """.formatted(artifactDir, ASSET_PATH, LOG_PATH, BINARY_PATH, CONFIG_PATH, SYSTEMD_SERVICE_PATH, SERVICE_NAME);
+    }
+    
     /**
      * 从版本输出中解析版本号
      */
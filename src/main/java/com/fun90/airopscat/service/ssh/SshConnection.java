@@ -19,6 +19,15 @@ public interface SshConnection extends AutoCloseable {
      */
     CommandResult executeCommand(String command) throws IOException;
     
+    /**
+     * 在指定期限内执行命令，超时后取消命令并返回 timedOut 结果；调用线程被中断时同样取消
+     * @param command 要执行的命令
+     * @param timeoutMillis 执行期限（毫秒），0表示不限制
+     * @return 命令执行结果
+     * @throws IOException 执行异常
+     */
+    CommandResult executeCommand(String command, long timeoutMillis) throws IOException;
+    
     /**
      * 读取远程文件内容
      * @param remotePath 远程文件路径
@@ -43,6 +52,14 @@ public interface SshConnection extends AutoCloseable {
      */
     void uploadFile(String localPath, String remotePath) throws IOException;
     
+    /**
+     * 断点续传上传文件：远程文件已有部分内容时从其末尾继续写入
+     * @param localPath 本地文件路径
+     * @param remotePath 远程文件路径
+     * @throws IOException 上传异常
+     */
+    void resumeUploadFile(String localPath, String remotePath) throws IOException;
+    
     /**
      * 下载文件
      * @param remotePath 远程文件路径
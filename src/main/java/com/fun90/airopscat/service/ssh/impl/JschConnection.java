@@ -10,6 +10,11 @@ import org.springframework.util.StringUtils;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * JSch SSH连接实现
@@ -18,62 +23,127 @@ import java.util.Properties;
 @Slf4j
 public class JschConnection implements SshConnection {
     
+    /**
+     * 输出结束后等待exit-status的最长时间（毫秒）
+     */
+    private static final long EXIT_STATUS_WAIT_MILLIS = 2000;
+    
+    /**
+     * 等待exit-status时的轮询间隔范围（毫秒）
+     */
+    private static final long EXIT_STATUS_MIN_BACKOFF_MILLIS = 10;
+    private static final long EXIT_STATUS_MAX_BACKOFF_MILLIS = 50;
+    
+    /**
+     * 命令期限看门狗，所有连接共享
+     */
+    private static final ScheduledExecutorService COMMAND_WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ssh-command-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private final SshConfig config;
     private JSch jsch;
     private Session session;
     private ChannelSftp sftpChannel;
+    private int serverAliveInterval;
     
     public JschConnection(SshConfig config) {
         this.config = config;
         this.jsch = new JSch();
     }
     
+    /**
+     * 设置保活探测间隔（毫秒），需在连接建立前设置，0表示不发送保活
+     */
+    public void setServerAliveInterval(int serverAliveInterval) {
+        this.serverAliveInterval = serverAliveInterval;
+    }
+    
     @Override
     public CommandResult executeCommand(String command) throws IOException {
+        return executeCommand(command, config.getCommandTimeout() != null ? config.getCommandTimeout() : 0L);
+    }
+    
+    @Override
+    public CommandResult executeCommand(String command, long timeoutMillis) throws IOException {
         if (!isConnected()) {
             connect();
         }
         
         ChannelExec channel = null;
+        ScheduledFuture<?> deadline = null;
+        Thread stderrReader = null;
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        int maxOutputBytes = config.getMaxOutputBytes() != null ? config.getMaxOutputBytes() : Integer.MAX_VALUE;
         try {
             channel = (ChannelExec) session.openChannel("exec");
             channel.setCommand(command);
+            channel.setInputStream(null);
             
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
-            
-            channel.setOutputStream(outputStream);
-            channel.setErrStream(errorStream);
+            InputStream stdoutStream = channel.getInputStream();
+            InputStream stderrStream = channel.getErrStream();
+            BoundedOutputStream outputStream = new BoundedOutputStream(maxOutputBytes);
+            BoundedOutputStream errorStream = new BoundedOutputStream(maxOutputBytes);
             
             channel.connect(config.getTimeout());
             
-            // 等待命令执行完成
-            while (!channel.isClosed()) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+            // 超过期限时断开通道，阻塞中的读取随即结束
+            if (timeoutMillis > 0) {
+                ChannelExec execChannel = channel;
+                deadline = COMMAND_WATCHDOG.schedule(() -> {
+                    timedOut.set(true);
+                    execChannel.disconnect();
+                }, timeoutMillis, TimeUnit.MILLISECONDS);
             }
             
-            int exitCode = channel.getExitStatus();
-            String output = outputStream.toString(StandardCharsets.UTF_8);
-            String error = errorStream.toString(StandardCharsets.UTF_8);
+            // stderr 在虚拟线程上并行读取，避免管道写满导致远端阻塞
+            stderrReader = Thread.ofVirtual().start(() -> drain(stderrStream, errorStream));
+            
+            // 读到EOF即命令输出结束，无需轮询
+            try {
+                stdoutStream.transferTo(outputStream);
+            } catch (IOException e) {
+                if (!timedOut.get()) {
+                    throw e;
+                }
+            }
+            stderrReader.join(EXIT_STATUS_WAIT_MILLIS);
             
             CommandResult result = new CommandResult();
-            result.setExitStatus(exitCode);
-            result.setStdout(output);
-            result.setStderr(error);
+            result.setExitStatus(timedOut.get() ? -1 : awaitExitStatus(channel));
+            result.setStdout(outputStream.toString(StandardCharsets.UTF_8));
+            result.setStderr(errorStream.toString(StandardCharsets.UTF_8));
+            result.setTimedOut(timedOut.get());
+            result.setTruncated(outputStream.isTruncated() || errorStream.isTruncated());
             
+            if (timedOut.get()) {
+                log.warn("命令执行超时（{}ms）已取消: {} [{}]", timeoutMillis, command, getConnectionInfo());
+            } else if (result.isTruncated()) {
+                log.warn("命令输出超过 {} 字节已截断: {} [{}]", maxOutputBytes, command, getConnectionInfo());
+            }
             return result;
                     
         } catch (JSchException e) {
             throw new IOException("执行命令失败: " + command, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("命令执行被中断: " + command);
+        } catch (InterruptedIOException e) {
+            // 调用线程被中断（取消），保留中断标记
+            Thread.currentThread().interrupt();
+            throw e;
         } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
             if (channel != null) {
                 channel.disconnect();
             }
+            if (stderrReader != null) {
+                stderrReader.interrupt();
+            }
         }
     }
     
@@ -115,12 +185,25 @@ public class JschConnection implements SshConnection {
         }
         
         try {
-            sftpChannel.put(localPath, remotePath);
+            sftp().put(localPath, remotePath);
         } catch (SftpException e) {
             throw new IOException("上传文件失败: " + localPath + " -> " + remotePath, e);
         }
     }
     
+    @Override
+    public void resumeUploadFile(String localPath, String remotePath) throws IOException {
+        if (!isConnected()) {
+            connect();
+        }
+        
+        try {
+            sftp().put(localPath, remotePath, ChannelSftp.RESUME);
+        } catch (SftpException e) {
+            throw new IOException("续传文件失败: " + localPath + " -> " + remotePath, e);
+        }
+    }
+    
     @Override
     public void downloadFile(String remotePath, String localPath) throws IOException {
         if (!isConnected()) {
@@ -128,7 +211,7 @@ public class JschConnection implements SshConnection {
         }
         
         try {
-            sftpChannel.get(remotePath, localPath);
+            sftp().get(remotePath, localPath);
         } catch (SftpException e) {
             throw new IOException("下载文件失败: " + remotePath + " -> " + localPath, e);
         }
@@ -141,7 +224,7 @@ public class JschConnection implements SshConnection {
         }
         
         try {
-            return sftpChannel.get(remotePath);
+            return sftp().get(remotePath);
         } catch (SftpException e) {
             throw new IOException("创建输入流失败: " + remotePath, e);
         }
@@ -154,7 +237,7 @@ public class JschConnection implements SshConnection {
         }
         
         try {
-            return sftpChannel.put(remotePath);
+            return sftp().put(remotePath);
         } catch (SftpException e) {
             throw new IOException("创建输出流失败: " + remotePath, e);
         }
@@ -171,6 +254,22 @@ public class JschConnection implements SshConnection {
                 config.getUsername(), config.getHost(), config.getPort());
     }
     
+    /**
+     * 健康检查：会话仍连接且保活消息可以发出
+     */
+    public boolean probe() {
+        if (!isConnected()) {
+            return false;
+        }
+        try {
+            session.sendKeepAliveMsg();
+            return true;
+        } catch (Exception e) {
+            log.debug("SSH会话保活探测失败: {}", getConnectionInfo());
+            return false;
+        }
+    }
+    
     @Override
     public void close() throws Exception {
         if (sftpChannel != null) {
@@ -183,7 +282,10 @@ public class JschConnection implements SshConnection {
         }
     }
     
-    private void connect() throws IOException {
+    /**
+     * 建立SSH会话，SFTP通道在首次使用时才打开
+     */
+    public void connect() throws IOException {
         try {
             // 设置密钥认证
             if (StringUtils.hasText(config.getPrivateKeyContent())) {
@@ -219,12 +321,14 @@ public class JschConnection implements SshConnection {
             // 设置超时
             session.setTimeout(config.getTimeout());
             
-            // 连接
-            session.connect();
+            // 设置保活，服务端连续3次无响应时断开会话
+            if (serverAliveInterval > 0) {
+                session.setServerAliveInterval(serverAliveInterval);
+                session.setServerAliveCountMax(3);
+            }
             
-            // 创建SFTP通道
-            sftpChannel = (ChannelSftp) session.openChannel("sftp");
-            sftpChannel.connect();
+            // 连接（显式传入超时，避免被保活间隔覆盖）
+            session.connect(config.getTimeout());
             
             log.info("SSH连接成功: {}", getConnectionInfo());
             
@@ -232,4 +336,82 @@ public class JschConnection implements SshConnection {
             throw new IOException("SSH连接失败: " + getConnectionInfo(), e);
         }
     }
+    
+    /**
+     * 获取SFTP通道，按需创建
+     */
+    private ChannelSftp sftp() throws IOException {
+        if (sftpChannel != null && sftpChannel.isConnected()) {
+            return sftpChannel;
+        }
+        try {
+            sftpChannel = (ChannelSftp) session.openChannel("sftp");
+            sftpChannel.connect(config.getTimeout());
+            return sftpChannel;
+        } catch (JSchException e) {
+            throw new IOException("打开SFTP通道失败: " + getConnectionInfo(), e);
+        }
+    }
+    
+    /**
+     * 等待exit-status：通常随EOF一并到达，这里只做短暂有界等待
+     * 轮询间隔从10ms起倍增至50ms，避免空转占用CPU
+     */
+    private int awaitExitStatus(ChannelExec channel) throws InterruptedException {
+        long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(EXIT_STATUS_WAIT_MILLIS);
+        long backoffMillis = EXIT_STATUS_MIN_BACKOFF_MILLIS;
+        while (!channel.isClosed()) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(waitUntil - System.nanoTime());
+            if (remainingMillis <= 0) {
+                break;
+            }
+            Thread.sleep(Math.min(backoffMillis, remainingMillis));
+            backoffMillis = Math.min(backoffMillis * 2, EXIT_STATUS_MAX_BACKOFF_MILLIS);
+        }
+        return channel.getExitStatus();
+    }
+    
+    private static void drain(InputStream inputStream, OutputStream outputStream) {
+        try {
+            inputStream.transferTo(outputStream);
+        } catch (IOException e) {
+            // 通道断开或超时取消时读取结束
+        }
+    }
+    
+    /**
+     * 超过上限后丢弃后续输出的缓冲流，继续消费以免远端阻塞
+     */
+    private static class BoundedOutputStream extends ByteArrayOutputStream {
+        private final int limit;
+        private volatile boolean truncated;
+        
+        BoundedOutputStream(int limit) {
+            this.limit = limit;
+        }
+        
+        @Override
+        public synchronized void write(int b) {
+            if (count < limit) {
+                super.write(b);
+            } else {
+                truncated = true;
+            }
+        }
+        
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int writable = Math.min(len, limit - count);
+            if (writable > 0) {
+                super.write(b, off, writable);
+            }
+            if (writable < len) {
+                truncated = true;
+            }
+        }
+        
+        boolean isTruncated() {
+            return truncated;
+        }
+    }
 } 
\ No newline at end of file
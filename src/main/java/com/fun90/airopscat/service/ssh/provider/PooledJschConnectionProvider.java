@@ -0,0 +1,290 @@
+package com.fun90.airopscat.service.ssh.provider;
+
+import com.fun90.airopscat.config.ssh.SshProperties;
+import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.model.dto.SshConfig;
+import com.fun90.airopscat.service.ssh.SshConnection;
+import com.fun90.airopscat.service.ssh.impl.JschConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 带连接池的JSch SSH连接提供者
+ * 按 host/port/user/凭据指纹 分组复用已认证的会话，close() 时归还而非断开
+ */
+@Slf4j
+public class PooledJschConnectionProvider implements SshConnectionProvider, DisposableBean {
+
+    private final SshProperties.PoolConfig poolConfig;
+    private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    public PooledJschConnectionProvider(SshProperties.PoolConfig poolConfig) {
+        this.poolConfig = poolConfig;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ssh-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, poolConfig.getEvictionInterval());
+        evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public SshConnection createConnection(SshConfig config) throws IOException {
+        HostPool pool = pools.computeIfAbsent(poolKey(config), key -> new HostPool(Math.max(1, poolConfig.getMaxActive())));
+
+        // 单主机会话数上限
+        try {
+            if (!pool.permits.tryAcquire(poolConfig.getMaxWait(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("等待SSH会话超时: " + config.getHost() + ":" + config.getPort());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待SSH会话时被中断: " + config.getHost(), e);
+        }
+
+        try {
+            return new PooledConnection(borrow(pool, config), pool);
+        } catch (IOException | RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 优先复用空闲会话（借出前做健康检查），否则新建
+     */
+    private JschConnection borrow(HostPool pool, SshConfig config) throws IOException {
+        IdleConnection idle;
+        while ((idle = pool.idle.pollFirst()) != null) {
+            if (isExpired(idle) || !idle.connection.probe()) {
+                disconnectQuietly(idle.connection);
+                continue;
+            }
+            log.debug("复用SSH会话: {}", idle.connection.getConnectionInfo());
+            return idle.connection;
+        }
+
+        JschConnection connection = new JschConnection(config);
+        connection.setServerAliveInterval((int) poolConfig.getKeepAliveInterval());
+        connection.connect();
+        return connection;
+    }
+
+    /**
+     * 归还会话，超过空闲上限或已断开的会话直接关闭
+     */
+    private void giveBack(HostPool pool, JschConnection connection, boolean broken) {
+        try {
+            if (!broken && connection.isConnected() && pool.idle.size() < poolConfig.getMaxIdle()) {
+                pool.idle.offerFirst(new IdleConnection(connection, System.currentTimeMillis()));
+            } else {
+                disconnectQuietly(connection);
+            }
+        } finally {
+            pool.permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        try {
+            for (HostPool pool : pools.values()) {
+                Iterator<IdleConnection> iterator = pool.idle.iterator();
+                while (iterator.hasNext()) {
+                    IdleConnection idle = iterator.next();
+                    if ((isExpired(idle) || !idle.connection.isConnected()) && pool.idle.remove(idle)) {
+                        log.debug("回收空闲SSH会话: {}", idle.connection.getConnectionInfo());
+                        disconnectQuietly(idle.connection);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("回收空闲SSH会话失败: {}", e.getMessage());
+        }
+    }
+
+    private boolean isExpired(IdleConnection idle) {
+        return System.currentTimeMillis() - idle.idleSince > poolConfig.getIdleTimeout();
+    }
+
+    private String poolKey(SshConfig config) {
+        String credential = String.join("|",
+                String.valueOf(config.getPassword()),
+                String.valueOf(config.getPrivateKeyPath()),
+                String.valueOf(config.getPrivateKeyContent()),
+                String.valueOf(config.getPassphrase()));
+        return config.getUsername() + "@" + config.getHost() + ":" + config.getPort()
+                + "#" + DigestUtils.sha256Hex(credential).substring(0, 16);
+    }
+
+    private void disconnectQuietly(JschConnection connection) {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            log.debug("关闭SSH会话失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        evictor.shutdownNow();
+        for (HostPool pool : pools.values()) {
+            IdleConnection idle;
+            while ((idle = pool.idle.pollFirst()) != null) {
+                disconnectQuietly(idle.connection);
+            }
+        }
+        pools.clear();
+    }
+
+    private static class HostPool {
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+
+        HostPool(int maxActive) {
+            this.permits = new Semaphore(maxActive);
+        }
+    }
+
+    private static class IdleConnection {
+        private final JschConnection connection;
+        private final long idleSince;
+
+        IdleConnection(JschConnection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * 借出的连接，close() 将底层会话归还连接池；发生IO异常的会话不再复用
+     */
+    private class PooledConnection implements SshConnection {
+        private final JschConnection delegate;
+        private final HostPool pool;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile boolean broken;
+
+        PooledConnection(JschConnection delegate, HostPool pool) {
+            this.delegate = delegate;
+            this.pool = pool;
+        }
+
+        @Override
+        public CommandResult executeCommand(String command) throws IOException {
+            try {
+                return delegate.executeCommand(command);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public CommandResult executeCommand(String command, long timeoutMillis) throws IOException {
+            try {
+                return delegate.executeCommand(command, timeoutMillis);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public String readRemoteFile(String remotePath) throws IOException {
+            try {
+                return delegate.readRemoteFile(remotePath);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void writeRemoteFile(String remotePath, String content) throws IOException {
+            try {
+                delegate.writeRemoteFile(remotePath, content);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void uploadFile(String localPath, String remotePath) throws IOException {
+            try {
+                delegate.uploadFile(localPath, remotePath);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void resumeUploadFile(String localPath, String remotePath) throws IOException {
+            try {
+                delegate.resumeUploadFile(localPath, remotePath);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void downloadFile(String remotePath, String localPath) throws IOException {
+            try {
+                delegate.downloadFile(remotePath, localPath);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public InputStream createInputStream(String remotePath) throws IOException {
+            try {
+                return delegate.createInputStream(remotePath);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public OutputStream createOutputStream(String remotePath) throws IOException {
+            try {
+                return delegate.createOutputStream(remotePath);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            return !closed.get() && delegate.isConnected();
+        }
+
+        @Override
+        public String getConnectionInfo() {
+            return delegate.getConnectionInfo();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                giveBack(pool, delegate, broken);
+            }
+        }
+    }
+}
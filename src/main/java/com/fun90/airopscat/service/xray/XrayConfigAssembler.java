@@ -0,0 +1,322 @@
+package com.fun90.airopscat.service.xray;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fun90.airopscat.model.dto.xray.InboundConfig;
+import com.fun90.airopscat.model.dto.xray.OutboundConfig;
+import com.fun90.airopscat.model.dto.xray.XrayConfig;
+import com.fun90.airopscat.model.dto.xray.routing.RoutingRule;
+import com.fun90.airopscat.model.dto.xray.setting.inbound.VlessInboundSetting;
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.model.entity.Node;
+import com.fun90.airopscat.model.entity.Server;
+import com.fun90.airopscat.model.event.NodeChangedEvent;
+import com.fun90.airopscat.service.xray.registry.ConversionStrategyRegistry;
+import com.fun90.airopscat.service.xray.strategy.ConversionStrategy;
+import com.fun90.airopscat.utils.ConfigFileReader;
+import com.fun90.airopscat.utils.JsonUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Xray配置组装
+ * 模板只解析一次，过滤出 default- 开头的公共部分作为只读原型；节点入站片段按节点ID与更新时间缓存解析结果；
+ * 最终配置由JsonGenerator直接写出，原型与片段只读不改，组装时无需复制，客户端列表也不构建中间对象
+ */
+@Slf4j
+@Component
+public class XrayConfigAssembler {
+
+    private static final String TEMPLATE_PATH = "templates/core/xray.json";
+    private static final String DEFAULT_TAG_PREFIX = "default-";
+    private static final String VLESS_FLOW = "xtls-rprx-vision";
+    private static final int MAX_FRAGMENTS = 4096;
+
+    private final ConversionStrategyRegistry strategyRegistry;
+    private final ObjectMapper objectMapper = JsonUtil.getObjectMapper();
+
+    /**
+     * 节点ID -> 解析后的入站片段
+     */
+    private final Map<Long, InboundFragment> fragments = new ConcurrentHashMap<>();
+    private volatile TemplatePrototype prototype;
+
+    public XrayConfigAssembler(ConversionStrategyRegistry strategyRegistry) {
+        this.strategyRegistry = strategyRegistry;
+    }
+
+    /**
+     * 组装服务器的Xray配置
+     * 出站节点为延迟加载，须在事务内调用
+     *
+     * @param nodes          服务器上的Xray节点
+     * @param clientsByNode  节点ID -> 需要下发的账户
+     * @return 格式化的配置JSON
+     */
+    public String assemble(List<Node> nodes, Map<Long, List<Account>> clientsByNode) {
+        ObjectNode template = currentPrototype();
+
+        List<NodeInbound> nodeInbounds = new ArrayList<>();
+        List<OutboundConfig> outbounds = new ArrayList<>();
+        List<RoutingRule> routingRules = new ArrayList<>();
+        for (Node node : nodes) {
+            InboundFragment fragment = fragment(node);
+            if (fragment == null) {
+                log.warn("节点 {} 的入站配置为空，跳过处理", node.getId());
+                continue;
+            }
+            nodeInbounds.add(new NodeInbound(node, fragment,
+                    clientsByNode.getOrDefault(node.getId(), Collections.emptyList())));
+
+            Node outNode = node.getOutId() != null ? node.getOutNode() : null;
+            if (outNode == null) {
+                continue;
+            }
+            OutboundConfig outbound = createOutbound(node, outNode);
+            if (outbound != null) {
+                outbounds.add(outbound);
+            }
+            if (node.getRule() != null) {
+                routingRules.add(createRoutingRule(node, outNode));
+            }
+        }
+
+        StringWriter writer = new StringWriter(estimateSize(nodeInbounds));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            for (Map.Entry<String, JsonNode> field : template.properties()) {
+                switch (field.getKey()) {
+                    case "inbounds" -> {
+                        generator.writeArrayFieldStart("inbounds");
+                        writeTrees(generator, field.getValue());
+                        for (NodeInbound nodeInbound : nodeInbounds) {
+                            writeInbound(generator, nodeInbound);
+                        }
+                        generator.writeEndArray();
+                    }
+                    case "outbounds" -> {
+                        generator.writeArrayFieldStart("outbounds");
+                        writeTrees(generator, field.getValue());
+                        for (OutboundConfig outbound : outbounds) {
+                            generator.writeObject(outbound);
+                        }
+                        generator.writeEndArray();
+                    }
+                    case "routing" -> writeRouting(generator, field.getValue(), routingRules);
+                    default -> {
+                        generator.writeFieldName(field.getKey());
+                        generator.writeTree(field.getValue());
+                    }
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("生成Xray配置失败", e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * 节点变更后丢弃其入站片段，更新时间校验之外的兜底
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onNodeChanged(NodeChangedEvent event) {
+        if (event.getNodeIds() != null) {
+            event.getNodeIds().forEach(fragments::remove);
+        }
+    }
+
+    /**
+     * 模板原型，文件缓存被清除（内容可能变化）时重新解析
+     */
+    private ObjectNode currentPrototype() {
+        String content = ConfigFileReader.readFileContent(TEMPLATE_PATH);
+        TemplatePrototype current = prototype;
+        if (current != null && current.source().equals(content)) {
+            return current.root();
+        }
+
+        XrayConfig config = JsonUtil.toObject(content, XrayConfig.class);
+        ObjectNode root = objectMapper.valueToTree(config);
+        retainDefaults(root.withArray("inbounds"), "tag");
+        retainDefaults(root.withArray("outbounds"), "tag");
+        JsonNode routing = root.get("routing");
+        ObjectNode routingNode = routing instanceof ObjectNode objectNode ? objectNode : root.putObject("routing");
+        retainDefaults(routingNode.withArray("rules"), "ruleTag");
+
+        prototype = new TemplatePrototype(content, root);
+        return root;
+    }
+
+    private void retainDefaults(ArrayNode array, String tagField) {
+        for (int i = array.size() - 1; i >= 0; i--) {
+            if (!StringUtils.startsWith(array.get(i).path(tagField).asText(null), DEFAULT_TAG_PREFIX)) {
+                array.remove(i);
+            }
+        }
+    }
+
+    /**
+     * 获取节点入站片段，按节点ID与更新时间命中缓存
+     */
+    private InboundFragment fragment(Node node) {
+        String source = node.getInbound();
+        if (source == null) {
+            return null;
+        }
+        InboundFragment cached = fragments.get(node.getId());
+        if (cached != null && Objects.equals(cached.updateTime(), node.getUpdateTime()) && cached.source().equals(source)) {
+            return cached;
+        }
+
+        // 经模型解析后再转为树，输出与按模型序列化一致
+        InboundConfig inbound = JsonUtil.toObject(source, InboundConfig.class);
+        ObjectNode tree = objectMapper.valueToTree(inbound);
+        InboundFragment fragment = new InboundFragment(node.getUpdateTime(), source, tree,
+                inbound.getSettings() instanceof VlessInboundSetting);
+        if (fragments.size() >= MAX_FRAGMENTS) {
+            fragments.clear();
+        }
+        fragments.put(node.getId(), fragment);
+        return fragment;
+    }
+
+    private OutboundConfig createOutbound(Node node, Node outNode) {
+        InboundFragment outFragment = fragment(outNode);
+        if (outFragment == null) {
+            return null;
+        }
+        Server outServer = outNode.getServer();
+        if (outServer == null) {
+            throw new IllegalArgumentException("出站服务器不存在: " + outNode.getServerId());
+        }
+
+        // 转换策略拿到的是独立副本，不影响缓存
+        InboundConfig outInbound = JsonUtil.toObject(outFragment.tree(), InboundConfig.class);
+        ConversionStrategy strategy = strategyRegistry.getStrategy(outInbound.getProtocol());
+        if (strategy == null) {
+            return null;
+        }
+        String host = StringUtils.isBlank(outServer.getHost()) ? outServer.getIp() : outServer.getHost();
+        OutboundConfig outbound = strategy.convert(outInbound, host, outNode.getPort());
+        outbound.setTag(node.getId().toString());
+        return outbound;
+    }
+
+    private RoutingRule createRoutingRule(Node node, Node outNode) {
+        RoutingRule routingRule = new RoutingRule();
+        routingRule.setInboundTag(Collections.singletonList(node.getTag()));
+        routingRule.setOutboundTag(outNode.getTag());
+        routingRule.setType("field");
+        return routingRule;
+    }
+
+    /**
+     * 写出节点入站：标签与端口取自节点，VLESS入站的客户端列表直接由账户写出
+     */
+    private void writeInbound(JsonGenerator generator, NodeInbound nodeInbound) throws IOException {
+        Node node = nodeInbound.node();
+        generator.writeStartObject();
+        if (node.getTag() != null) {
+            generator.writeStringField("tag", node.getTag());
+        }
+        if (node.getPort() != null) {
+            generator.writeNumberField("port", node.getPort());
+        }
+        for (Map.Entry<String, JsonNode> field : nodeInbound.fragment().tree().properties()) {
+            String name = field.getKey();
+            if ("tag".equals(name) || "port".equals(name)) {
+                continue;
+            }
+            if ("settings".equals(name) && nodeInbound.fragment().vless()) {
+                writeVlessSettings(generator, field.getValue(), nodeInbound.clients());
+            } else {
+                generator.writeFieldName(name);
+                generator.writeTree(field.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeVlessSettings(JsonGenerator generator, JsonNode settings, List<Account> clients) throws IOException {
+        generator.writeObjectFieldStart("settings");
+        for (Map.Entry<String, JsonNode> field : settings.properties()) {
+            if (!"clients".equals(field.getKey())) {
+                generator.writeFieldName(field.getKey());
+                generator.writeTree(field.getValue());
+            }
+        }
+        generator.writeArrayFieldStart("clients");
+        for (Account account : clients) {
+            generator.writeStartObject();
+            if (account.getUuid() != null) {
+                generator.writeStringField("id", account.getUuid());
+            }
+            if (account.getAccountNo() != null) {
+                generator.writeStringField("email", account.getAccountNo());
+            }
+            generator.writeStringField("flow", VLESS_FLOW);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writeRouting(JsonGenerator generator, JsonNode routing, List<RoutingRule> routingRules) throws IOException {
+        generator.writeObjectFieldStart("routing");
+        for (Map.Entry<String, JsonNode> field : routing.properties()) {
+            if ("rules".equals(field.getKey())) {
+                generator.writeArrayFieldStart("rules");
+                writeTrees(generator, field.getValue());
+                for (RoutingRule routingRule : routingRules) {
+                    generator.writeObject(routingRule);
+                }
+                generator.writeEndArray();
+            } else {
+                generator.writeFieldName(field.getKey());
+                generator.writeTree(field.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeTrees(JsonGenerator generator, JsonNode array) throws IOException {
+        for (JsonNode element : array) {
+            generator.writeTree(element);
+        }
+    }
+
+    /**
+     * 按客户端数量预估输出大小，减少扩容
+     */
+    private int estimateSize(List<NodeInbound> nodeInbounds) {
+        long clients = nodeInbounds.stream().mapToLong(nodeInbound -> nodeInbound.clients().size()).sum();
+        return (int) Math.min(Integer.MAX_VALUE - 8, 4096 + nodeInbounds.size() * 1024L + clients * 160L);
+    }
+
+    private record TemplatePrototype(String source, ObjectNode root) {
+    }
+
+    private record InboundFragment(LocalDateTime updateTime, String source, ObjectNode tree, boolean vless) {
+    }
+
+    private record NodeInbound(Node node, InboundFragment fragment, List<Account> clients) {
+    }
+}
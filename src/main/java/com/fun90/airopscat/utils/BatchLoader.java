@@ -0,0 +1,89 @@
+package com.fun90.airopscat.utils;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 列表DTO批量关联
+ * 先收集一页数据引用的外键，再按关联类型各用一次 IN 查询取回，组装DTO时只查Map，
+ * 查询次数与关联类型数相关、与行数无关；外键过多时按 SQLite 变量数上限分批
+ */
+public class BatchLoader {
+
+    /**
+     * 单次 IN 查询的最大参数数，低于旧版 SQLite 的 999 上限
+     */
+    private static final int MAX_IN_PARAMETERS = 500;
+
+    private BatchLoader() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * 收集一页数据引用的外键，忽略null并去重
+     */
+    public static <T, K> Set<K> collectKeys(Collection<T> rows, Function<T, K> keyOf) {
+        Set<K> keys = new LinkedHashSet<>();
+        for (T row : rows) {
+            K key = keyOf.apply(row);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 按外键批量读取关联对象
+     * @param loader 按一组外键查询，如 repository::findAllById
+     * @param idOf 关联对象的主键
+     * @return 主键 -> 关联对象，不存在的外键不在结果中
+     */
+    public static <K, V> Map<K, V> load(Collection<K> keys,
+                                        Function<List<K>, ? extends Iterable<V>> loader,
+                                        Function<V, K> idOf) {
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        Map<K, V> result = new HashMap<>();
+        for (List<K> batch : partition(keys)) {
+            for (V value : loader.apply(batch)) {
+                result.put(idOf.apply(value), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 收集外键并批量读取关联对象
+     */
+    public static <T, K, V> Map<K, V> load(Collection<T> rows, Function<T, K> keyOf,
+                                           Function<List<K>, ? extends Iterable<V>> loader,
+                                           Function<V, K> idOf) {
+        return load(collectKeys(rows, keyOf), loader, idOf);
+    }
+
+    /**
+     * 按单次 IN 查询的参数上限切分外键，忽略null并去重，用于原生SQL、分组计数等无法直接套用 load 的查询
+     */
+    public static <K> List<List<K>> partition(Collection<K> keys) {
+        List<K> keyList = new ArrayList<>(collectKeys(keys, Function.identity()));
+        List<List<K>> batches = new ArrayList<>();
+        for (int from = 0; from < keyList.size(); from += MAX_IN_PARAMETERS) {
+            batches.add(keyList.subList(from, Math.min(from + MAX_IN_PARAMETERS, keyList.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * 将按外键分组计数的查询结果（每行 [外键, 数量]）转为Map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> Map<K, Integer> toCountMap(List<Object[]> rows) {
+        Map<K, Integer> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put((K) row[0], ((Number) row[1]).intValue());
+        }
+        return counts;
+    }
+}
@@ -9,8 +9,8 @@ import org.springframework.util.StringUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 配置文件读取工具类
@@ -26,7 +26,7 @@ public final class ConfigFileReader {
     private static final ResourcePatternResolver RESOURCE_RESOLVER = new PathMatchingResourcePatternResolver();
     
     // 缓存已读取的配置文件内容，避免重复读取
-    private static final Map<String, String> FILE_CONTENT_CACHE = new HashMap<>();
+    private static final Map<String, String> FILE_CONTENT_CACHE = new ConcurrentHashMap<>();
     
     /**
      * 从 classpath 读取配置文件内容
@@ -41,9 +41,10 @@ public final class ConfigFileReader {
         }
         
         // 检查缓存
-        if (FILE_CONTENT_CACHE.containsKey(path)) {
+        String cachedContent = FILE_CONTENT_CACHE.get(path);
+        if (cachedContent != null) {
             log.debug("Reading file content from cache: {}", path);
-            return FILE_CONTENT_CACHE.get(path);
+            return cachedContent;
         }
         
         try {
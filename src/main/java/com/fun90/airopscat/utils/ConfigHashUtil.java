@@ -0,0 +1,27 @@
+package com.fun90.airopscat.utils;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * 配置内容摘要
+ * JSON配置先规范化再计算，仅键顺序或格式不同的配置摘要相同
+ */
+public class ConfigHashUtil {
+    private ConfigHashUtil() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static String hash(String config) {
+        if (config == null) {
+            return null;
+        }
+        String canonical;
+        try {
+            canonical = JsonUtil.toCanonicalJsonString(config);
+        } catch (Exception e) {
+            // 非JSON配置按原文计算
+            canonical = config.strip();
+        }
+        return DigestUtils.sha256Hex(canonical);
+    }
+}
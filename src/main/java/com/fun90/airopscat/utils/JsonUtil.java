@@ -26,6 +26,20 @@ public class JsonUtil {
             //忽略 在json字符串中存在，但是在java对象中不存在对应属性的情况。防止错误
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
+    /**
+     * 规范化输出：对象键按字典序排列，不含缩进
+     */
+    private static final ObjectMapper canonicalMapper = objectMapper.copy()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .configure(SerializationFeature.INDENT_OUTPUT, false);
+
+    /**
+     * 共享的ObjectMapper，供需要流式读写的场景使用，调用方不得修改其配置
+     */
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
     /**
      * 完成对象序列化为字符串
      *
@@ -44,6 +58,21 @@ public class JsonUtil {
         }
     }
 
+    /**
+     * 将JSON字符串转换为规范形式，键顺序与空白不同但内容相同的JSON得到相同结果
+     *
+     * @param json 源JSON字符串
+     * @return 规范化后的字符串
+     */
+    public static String toCanonicalJsonString(String json) {
+        try {
+            Object value = canonicalMapper.readValue(json, Object.class);
+            return canonicalMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new JsonParseException(e);
+        }
+    }
+
     public static <T> byte[] toJsonBytes(T obj) {
         return toJsonString(obj)
                 .getBytes(StandardCharsets.UTF_8);
@@ -0,0 +1,110 @@
+package com.fun90.airopscat.utils;
+
+import com.fun90.airopscat.model.dto.CommandResult;
+import com.fun90.airopscat.service.ssh.SshConnection;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+/**
+ * 远程文件工具类
+ */
+public class RemoteFileUtil {
+
+    private static final int EXIT_CHECKSUM_MISMATCH = 90;
+    private static final int EXIT_VALIDATION_FAILED = 91;
+    private static final int EXIT_SWAP_FAILED = 92;
+
+    private RemoteFileUtil() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * 原子替换远程文件，共两次往返：
+     * 1. 通过SFTP把内容写入同目录下的临时文件（保留原扩展名，内核据此识别配置格式）
+     * 2. 一次exec内校验SHA-256、执行验证命令、以硬链接保留原文件作为备份，再用rename替换目标文件
+     * 任一步失败都会删除临时文件，目标文件要么是原内容，要么是完整的新内容
+     *
+     * @param validateCommand 由临时文件路径生成验证命令，为null时不验证
+     */
+    public static WriteResult writeAtomically(SshConnection connection, String targetPath, String content,
+                                              UnaryOperator<String> validateCommand) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String sha256 = DigestUtils.sha256Hex(bytes);
+        int slash = targetPath.lastIndexOf('/');
+        String directory = slash >= 0 ? targetPath.substring(0, slash + 1) : "";
+        String fileName = targetPath.substring(slash + 1);
+        long stamp = System.currentTimeMillis();
+        String tempPath = directory + ".airopscat-" + stamp + "-" + fileName;
+        String backupPath = targetPath + ".backup." + stamp;
+
+        try {
+            connection.writeRemoteFile(tempPath, content);
+        } catch (IOException e) {
+            connection.executeCommand("rm -f " + quote(tempPath));
+            throw e;
+        }
+
+        String tmp = quote(tempPath);
+        String target = quote(targetPath);
+        String backup = quote(backupPath);
+        StringBuilder script = new StringBuilder()
+                .append("if [ \"$(sha256sum ").append(tmp).append(" | cut -d' ' -f1)\" != '").append(sha256).append("' ]; then ")
+                .append("rm -f ").append(tmp).append("; echo 'checksum mismatch' >&2; exit ").append(EXIT_CHECKSUM_MISMATCH).append("; fi\n");
+        if (validateCommand != null) {
+            // 验证输出仅在失败时返回，成功时标准输出只有备份路径
+            script.append("if ! output=$(").append(validateCommand.apply(tempPath)).append(" 2>&1); then ")
+                    .append("echo \"$output\"; rm -f ").append(tmp).append("; exit ").append(EXIT_VALIDATION_FAILED).append("; fi\n");
+        }
+        script.append("backup=''\n")
+                .append("if [ -f ").append(target).append(" ]; then ")
+                .append("chmod --reference=").append(target).append(' ').append(tmp).append(" 2>/dev/null; ")
+                .append("ln -f ").append(target).append(' ').append(backup).append(" && backup=").append(backup).append("; fi\n")
+                .append("if ! mv -f ").append(tmp).append(' ').append(target).append("; then ")
+                .append("rm -f ").append(tmp).append("; exit ").append(EXIT_SWAP_FAILED).append("; fi\n")
+                .append("echo \"$backup\"\n");
+
+        CommandResult result = connection.executeCommand(script.toString());
+        WriteResult writeResult = new WriteResult();
+        writeResult.commandResult = result;
+        if (result.isSuccess()) {
+            writeResult.success = true;
+            writeResult.backupPath = StringUtils.trimToNull(result.getStdout());
+            return writeResult;
+        }
+        writeResult.failure = switch (result.getExitStatus()) {
+            case EXIT_CHECKSUM_MISMATCH -> "配置文件传输校验失败";
+            case EXIT_VALIDATION_FAILED -> "配置文件验证失败";
+            case EXIT_SWAP_FAILED -> "配置文件替换失败";
+            default -> "配置文件写入失败";
+        };
+        writeResult.validationFailed = result.getExitStatus() == EXIT_VALIDATION_FAILED;
+        return writeResult;
+    }
+
+    public static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * 原子写入结果
+     */
+    @Getter
+    public static class WriteResult {
+        private boolean success;
+        /**
+         * 是否因验证命令未通过而放弃替换
+         */
+        private boolean validationFailed;
+        /**
+         * 原文件的备份路径，目标文件原本不存在时为null
+         */
+        private String backupPath;
+        private String failure;
+        private CommandResult commandResult;
+    }
+}
@@ -1,47 +1,144 @@
 package com.fun90.airopscat.utils;
 
+import com.fun90.airopscat.model.dto.TemplateRenderStats;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.StringTemplateResolver;
+import org.thymeleaf.templateresource.ITemplateResource;
+import org.thymeleaf.templateresource.StringTemplateResource;
 
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class ThymeleafUtil {
-    
+
     private final TemplateEngine templateEngine;
-    
+
+    /**
+     * 字符串模板专用引擎，解析结果按内容摘要缓存
+     */
+    private final TemplateEngine stringTemplateEngine;
+    private final int cacheSize;
+
+    /**
+     * 模板内容 -> 缓存键，按访问顺序淘汰
+     */
+    private final Map<String, String> keyByContent;
+    /**
+     * 缓存键 -> 模板内容，供解析器按键取回内容
+     */
+    private final Map<String, String> contentByKey = new ConcurrentHashMap<>();
+    /**
+     * 当前线程正在渲染的内容，缓存键恰好被并发淘汰时兜底
+     */
+    private final ThreadLocal<String> renderingContent = new ThreadLocal<>();
+    private final Map<String, RenderMetrics> metricsByTemplate = new ConcurrentHashMap<>();
+
     @Autowired
-    public ThymeleafUtil(TemplateEngine templateEngine) {
+    public ThymeleafUtil(TemplateEngine templateEngine,
+                         @Value("${airopscat.template.cache-size:64}") int cacheSize) {
         this.templateEngine = templateEngine;
+        this.cacheSize = Math.max(1, cacheSize);
+
+        StringTemplateResolver templateResolver = new ContentKeyTemplateResolver();
+        templateResolver.setTemplateMode(TemplateMode.TEXT);
+        templateResolver.setCacheable(true);
+
+        // 淘汰由 keyByContent 控制，引擎缓存留出余量避免提前丢弃
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(this.cacheSize * 2);
+
+        this.stringTemplateEngine = new TemplateEngine();
+        this.stringTemplateEngine.setTemplateResolver(templateResolver);
+        this.stringTemplateEngine.setCacheManager(cacheManager);
+
+        this.keyByContent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() <= ThymeleafUtil.this.cacheSize) {
+                    return false;
+                }
+                contentByKey.remove(eldest.getValue());
+                stringTemplateEngine.clearTemplateCacheFor(eldest.getValue());
+                return true;
+            }
+        };
     }
-    
+
     /**
      * 使用Thymeleaf处理字符串模板
      */
     public String processStringTemplate(String templateContent, Map<String, Object> variables) {
-        // 创建字符串模板解析器
-        StringTemplateResolver templateResolver = new StringTemplateResolver();
-        templateResolver.setTemplateMode(TemplateMode.TEXT);
-        templateResolver.setCacheable(false);
-        
-        // 创建临时模板引擎
-        TemplateEngine stringTemplateEngine = new TemplateEngine();
-        stringTemplateEngine.setTemplateResolver(templateResolver);
-        
+        return processStringTemplate(null, templateContent, variables);
+    }
+
+    /**
+     * 使用Thymeleaf处理字符串模板，按模板名称记录渲染统计
+     * 相同内容只解析一次，内容变化后自动使用新的缓存键
+     */
+    public String processStringTemplate(String templateName, String templateContent, Map<String, Object> variables) {
+        long start = System.nanoTime();
+        boolean cached;
+        String key;
+        synchronized (keyByContent) {
+            key = keyByContent.get(templateContent);
+            cached = key != null;
+            if (!cached) {
+                key = "tpl-" + DigestUtils.sha256Hex(templateContent);
+                contentByKey.put(key, templateContent);
+                keyByContent.put(templateContent, key);
+            }
+        }
+
         // 创建上下文并添加变量
         Context context = new Context();
         if (variables != null) {
             variables.forEach(context::setVariable);
         }
-        
-        // 处理模板
-        return stringTemplateEngine.process(templateContent, context);
+
+        String result;
+        renderingContent.set(templateContent);
+        try {
+            result = stringTemplateEngine.process(key, context);
+        } finally {
+            renderingContent.remove();
+        }
+        String name = templateName != null ? templateName : key.substring(0, 16);
+        metricsByTemplate.computeIfAbsent(name, k -> new RenderMetrics()).record(cached, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 清空已解析的字符串模板
+     */
+    public void clearStringTemplateCache() {
+        synchronized (keyByContent) {
+            keyByContent.clear();
+            contentByKey.clear();
+            stringTemplateEngine.clearTemplateCache();
+        }
+    }
+
+    /**
+     * 各模板的缓存命中率与渲染耗时
+     */
+    public List<TemplateRenderStats> getRenderStats() {
+        List<TemplateRenderStats> result = new ArrayList<>();
+        metricsByTemplate.forEach((name, metrics) -> result.add(metrics.toStats(name)));
+        result.sort(Comparator.comparing(TemplateRenderStats::getTemplateName));
+        return result;
     }
-    
+
     /**
      * 使用Thymeleaf处理模板文件
      */
@@ -52,4 +149,47 @@ public class ThymeleafUtil {
         }
         return templateEngine.process(templateName, context);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 以缓存键作为模板名，解析时取回对应内容
+     */
+    private class ContentKeyTemplateResolver extends StringTemplateResolver {
+        @Override
+        protected ITemplateResource computeTemplateResource(IEngineConfiguration configuration, String ownerTemplate,
+                                                            String template, Map<String, Object> templateResolutionAttributes) {
+            String content = contentByKey.get(template);
+            if (content == null) {
+                content = ownerTemplate == null ? renderingContent.get() : null;
+            }
+            return new StringTemplateResource(content != null ? content : template);
+        }
+    }
+
+    private static class RenderMetrics {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(boolean hit, long nanos) {
+            (hit ? hits : misses).increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        TemplateRenderStats toStats(String templateName) {
+            long hitCount = hits.sum();
+            long missCount = misses.sum();
+            long renders = hitCount + missCount;
+            TemplateRenderStats stats = new TemplateRenderStats();
+            stats.setTemplateName(templateName);
+            stats.setRenders(renders);
+            stats.setCacheHits(hitCount);
+            stats.setCacheMisses(missCount);
+            stats.setHitRate(renders > 0 ? (double) hitCount / renders : 0);
+            stats.setAvgMillis(renders > 0 ? totalNanos.sum() / 1_000_000.0 / renders : 0);
+            stats.setMaxMillis(maxNanos.get() / 1_000_000.0);
+            return stats;
+        }
+    }
+}
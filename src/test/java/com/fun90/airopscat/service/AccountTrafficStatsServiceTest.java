@@ -0,0 +1,157 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.dto.TrafficUsage;
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.model.telemetry.AccountTrafficStats;
+import com.fun90.airopscat.repository.AccountRepository;
+import com.fun90.airopscat.repository.UserRepository;
+import com.fun90.airopscat.repository.telemetry.AccountTrafficStatsRepository;
+import com.fun90.airopscat.repository.telemetry.AccountUsageSummaryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 遥测写线程把多台服务器的流量写入合并为一个事务（同一持久化上下文）时，
+ * 同一账户的流量统计和用量汇总都须累加每一次写入，不能被读到的旧值覆盖
+ */
+class AccountTrafficStatsServiceTest {
+
+    private static final long ACCOUNT_ID = 7L;
+    private static final String ACCOUNT_NO = "A007";
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private SqliteWriteExecutor writeExecutor;
+    private AccountTrafficStatsRepository statsRepository;
+    private AccountTrafficStatsService service;
+
+    @BeforeEach
+    void setUp() {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("telemetry.db"));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        writeExecutor = new SqliteWriteExecutor("telemetry-writer-test", transactionManager);
+        ReflectionTestUtils.setField(writeExecutor, "queueCapacity", 64);
+        ReflectionTestUtils.setField(writeExecutor, "maxBatchSize", 16);
+        ReflectionTestUtils.setField(writeExecutor, "offerTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(writeExecutor, "transactionTimeoutSeconds", 30);
+        writeExecutor.start();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE account_traffic_stats (id INTEGER PRIMARY KEY, user_id INTEGER, " +
+                "account_id INTEGER, period_start TIMESTAMP, period_end TIMESTAMP, upload_bytes INTEGER, " +
+                "download_bytes INTEGER, create_time TIMESTAMP, update_time TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE account_usage_summary (account_id INTEGER PRIMARY KEY, " +
+                "total_upload_bytes INTEGER, total_download_bytes INTEGER, period_upload_bytes INTEGER, " +
+                "period_download_bytes INTEGER, period_end TIMESTAMP, last_online_time TIMESTAMP, " +
+                "online_ip_count INTEGER, update_time TIMESTAMP)");
+
+        Account account = new Account();
+        account.setId(ACCOUNT_ID);
+        account.setUserId(1L);
+        account.setAccountNo(ACCOUNT_NO);
+        account.setPeriodType("MONTHLY");
+        AccountRepository accountRepository = mock(AccountRepository.class);
+        when(accountRepository.findByAccountNoIn(anyList())).thenReturn(List.of(account));
+
+        statsRepository = mock(AccountTrafficStatsRepository.class);
+        AccountUsageSummaryService usageSummaryService = new AccountUsageSummaryService(
+                mock(AccountUsageSummaryRepository.class), jdbcTemplate, writeExecutor);
+        service = new AccountTrafficStatsService(statsRepository, mock(UserRepository.class), accountRepository,
+                jdbcTemplate, mock(ApplicationEventPublisher.class), writeExecutor,
+                mock(TrafficSeriesService.class), usageSummaryService);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writeExecutor.shutdown();
+    }
+
+    @Test
+    void groupCommittedIngestsAccumulateOnExistingPeriod() {
+        LocalDateTime periodStart = LocalDateTime.now().minusDays(1).withNano(0);
+        LocalDateTime periodEnd = periodStart.plusMonths(1);
+        jdbcTemplate.update("INSERT INTO account_traffic_stats (id, user_id, account_id, period_start, period_end, " +
+                        "upload_bytes, download_bytes) VALUES (1, 1, ?, ?, ?, 100, 1000)",
+                ACCOUNT_ID, Timestamp.valueOf(periodStart), Timestamp.valueOf(periodEnd));
+        jdbcTemplate.update("INSERT INTO account_usage_summary (account_id, total_upload_bytes, total_download_bytes, " +
+                        "period_upload_bytes, period_download_bytes, period_end, online_ip_count) " +
+                        "VALUES (?, 100, 1000, 100, 1000, ?, 0)",
+                ACCOUNT_ID, Timestamp.valueOf(periodEnd));
+
+        // 同一持久化上下文中两次查询得到同一个实体，其流量不随原生UPDATE变化
+        AccountTrafficStats managed = new AccountTrafficStats();
+        managed.setId(1L);
+        managed.setUserId(1L);
+        managed.setAccountId(ACCOUNT_ID);
+        managed.setPeriodStart(periodStart);
+        managed.setPeriodEnd(periodEnd);
+        managed.setUploadBytes(100L);
+        managed.setDownloadBytes(1000L);
+        when(statsRepository.findByAccountIdInAndCurrentTime(anyList(), any())).thenReturn(List.of(managed));
+
+        writeExecutor.run(() -> {
+            service.ingestTrafficStats(1L, Map.of(ACCOUNT_NO, new TrafficUsage(10, 20)));
+            service.ingestTrafficStats(2L, Map.of(ACCOUNT_NO, new TrafficUsage(5, 6)));
+        });
+
+        Map<String, Object> stats = jdbcTemplate.queryForMap(
+                "SELECT upload_bytes, download_bytes FROM account_traffic_stats WHERE id = 1");
+        assertThat(((Number) stats.get("upload_bytes")).longValue()).isEqualTo(115);
+        assertThat(((Number) stats.get("download_bytes")).longValue()).isEqualTo(1026);
+        assertSummary(115, 1026, 115, 1026);
+    }
+
+    @Test
+    void groupCommittedIngestsAccumulateOnNewPeriod() {
+        // 第一次写入新增周期记录，第二次查询返回的是仍为首次流量的同一实体
+        List<AccountTrafficStats> saved = new ArrayList<>();
+        when(statsRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<AccountTrafficStats> entities = invocation.getArgument(0);
+            saved.addAll(entities);
+            return entities;
+        });
+        when(statsRepository.findByAccountIdInAndCurrentTime(anyList(), any()))
+                .thenAnswer(invocation -> List.copyOf(saved));
+
+        writeExecutor.run(() -> {
+            service.ingestTrafficStats(1L, Map.of(ACCOUNT_NO, new TrafficUsage(10, 20)));
+            service.ingestTrafficStats(2L, Map.of(ACCOUNT_NO, new TrafficUsage(5, 6)));
+        });
+
+        assertThat(saved).hasSize(1);
+        assertSummary(15, 26, 15, 26);
+    }
+
+    private void assertSummary(long totalUpload, long totalDownload, long periodUpload, long periodDownload) {
+        Map<String, Object> summary = jdbcTemplate.queryForMap("SELECT total_upload_bytes, total_download_bytes, " +
+                "period_upload_bytes, period_download_bytes FROM account_usage_summary WHERE account_id = ?", ACCOUNT_ID);
+        assertThat(((Number) summary.get("total_upload_bytes")).longValue()).isEqualTo(totalUpload);
+        assertThat(((Number) summary.get("total_download_bytes")).longValue()).isEqualTo(totalDownload);
+        assertThat(((Number) summary.get("period_upload_bytes")).longValue()).isEqualTo(periodUpload);
+        assertThat(((Number) summary.get("period_download_bytes")).longValue()).isEqualTo(periodDownload);
+    }
+}
@@ -0,0 +1,122 @@
+package com.fun90.airopscat.service;
+
+import com.fun90.airopscat.model.dto.TrafficSeries;
+import com.fun90.airopscat.model.dto.TrafficUsage;
+import com.fun90.airopscat.model.enums.TrafficResolution;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 原始样本跨越整点和本地零点时，多次压缩后各分辨率的查询合计都与原始样本之和一致
+ */
+class TrafficSeriesServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private SqliteWriteExecutor writeExecutor;
+    private TrafficSeriesService service;
+
+    @BeforeEach
+    void setUp() {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("telemetry.db"));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+        writeExecutor = new SqliteWriteExecutor("telemetry-writer-test", transactionManager);
+        ReflectionTestUtils.setField(writeExecutor, "queueCapacity", 64);
+        ReflectionTestUtils.setField(writeExecutor, "maxBatchSize", 16);
+        ReflectionTestUtils.setField(writeExecutor, "offerTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(writeExecutor, "transactionTimeoutSeconds", 30);
+        writeExecutor.start();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        service = new TrafficSeriesService(jdbcTemplate, writeExecutor, transactionManager);
+        ReflectionTestUtils.setField(service, "rawRetentionDays", 7);
+        ReflectionTestUtils.setField(service, "hourlyRetentionDays", 90);
+        ReflectionTestUtils.setField(service, "dailyRetentionDays", 1095);
+        ReflectionTestUtils.setField(service, "maxPoints", 400);
+        service.createSchema();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writeExecutor.shutdown();
+    }
+
+    @Test
+    void compactedTotalsMatchRawSamplesAtEveryResolution() {
+        ZoneId zone = ZoneId.systemDefault();
+        // 昨天本地零点前后各两小时，每15分钟一个样本，跨越多个整点和一个日界
+        long midnight = LocalDate.now(zone).minusDays(1).atStartOfDay(zone).toEpochSecond();
+        long start = midnight - 2 * 3600;
+        long end = midnight + 2 * 3600;
+
+        long upload = 0;
+        long download = 0;
+        int sample = 0;
+        for (long time = start; time < end; time += TrafficResolution.RAW.getSeconds()) {
+            for (long serverId = 1; serverId <= 2; serverId++) {
+                sample++;
+                Map<Long, TrafficUsage> usage = Map.of(
+                        1L, new TrafficUsage(sample * 10L, sample * 100L),
+                        600L, new TrafficUsage(sample * 3L, sample * 7L),
+                        1200L, new TrafficUsage(sample, sample * 2L));
+                upload += usage.values().stream().mapToLong(TrafficUsage::getUploadBytes).sum();
+                download += usage.values().stream().mapToLong(TrafficUsage::getDownloadBytes).sum();
+                long serverValue = serverId;
+                Instant sampleTime = Instant.ofEpochSecond(time + 60);
+                writeExecutor.run(() -> service.record(serverValue, sampleTime, usage));
+            }
+        }
+
+        assertTotals(upload, download);
+        service.compact();
+        assertCompacted();
+        assertTotals(upload, download);
+        service.compact();
+        assertTotals(upload, download);
+    }
+
+    private void assertCompacted() {
+        for (TrafficResolution resolution : List.of(TrafficResolution.HOUR, TrafficResolution.DAY)) {
+            Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM traffic_series WHERE resolution = ?",
+                    Long.class, resolution.getSeconds());
+            assertThat(rows).as("%s rows", resolution).isPositive();
+        }
+    }
+
+    private void assertTotals(long upload, long download) {
+        // 账户数超过单次 IN 查询的参数上限，查询须分批后合并
+        List<Long> accountIds = LongStream.rangeClosed(1, 1200).boxed().toList();
+        long from = LocalDate.now(ZoneId.systemDefault()).minusDays(3).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        long to = Instant.now().getEpochSecond() + 3600;
+
+        for (TrafficResolution resolution : TrafficResolution.values()) {
+            TrafficSeries series = service.query(accountIds, null, from, to, resolution);
+
+            assertThat(series.getResolution()).isEqualTo(resolution);
+            assertThat(series.getTotalUploadBytes()).as("%s upload", resolution).isEqualTo(upload);
+            assertThat(series.getTotalDownloadBytes()).as("%s download", resolution).isEqualTo(download);
+            assertThat(series.getPoints().stream().mapToLong(TrafficSeries.Point::getUploadBytes).sum())
+                    .as("%s points", resolution).isEqualTo(upload);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.fun90.airopscat.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XrayUserSyncServiceTest {
+
+    private final XrayUserSyncService service = new XrayUserSyncService(null);
+
+    private static String config(String port, String clients) {
+        return """
+                {
+                  "log": {"loglevel": "warning"},
+                  "inbounds": [
+                    {
+                      "tag": "vless-in",
+                      "port": %s,
+                      "protocol": "vless",
+                      "settings": {"decryption": "none", "clients": [%s]}
+                    }
+                  ],
+                  "outbounds": [{"protocol": "freedom", "tag": "direct"}]
+                }
+                """.formatted(port, clients);
+    }
+
+    private static String client(String email, String id) {
+        return "{\"id\": \"" + id + "\", \"email\": \"" + email + "\", \"level\": 0}";
+    }
+
+    @Test
+    void unchangedClientsGiveEmptyDelta() {
+        String config = config("443", client("a@x", "1") + "," + client("b@x", "2"));
+
+        XrayUserSyncService.UserDelta delta = service.diff(config, config);
+
+        assertThat(delta).isNotNull();
+        assertThat(delta.isEmpty()).isTrue();
+    }
+
+    @Test
+    void addedClientIsAdded() {
+        String deployed = config("443", client("a@x", "1"));
+        String desired = config("443", client("a@x", "1") + "," + client("b@x", "2"));
+
+        XrayUserSyncService.UserDelta delta = service.diff(deployed, desired);
+
+        assertThat(delta).isNotNull();
+        assertThat(delta.getRemovals()).isEmpty();
+        assertThat(delta.countAdded()).isEqualTo(1);
+        JsonNode inbound = delta.getAdditions().get("vless-in");
+        assertThat(inbound.path("port").asInt()).isEqualTo(443);
+        assertThat(inbound.path("settings").path("clients").get(0).path("email").asText()).isEqualTo("b@x");
+    }
+
+    @Test
+    void removedClientIsRemoved() {
+        String deployed = config("443", client("a@x", "1") + "," + client("b@x", "2"));
+        String desired = config("443", client("a@x", "1"));
+
+        XrayUserSyncService.UserDelta delta = service.diff(deployed, desired);
+
+        assertThat(delta).isNotNull();
+        assertThat(delta.getAdditions()).isEmpty();
+        assertThat(delta.getRemovals()).containsEntry("vless-in", List.of("b@x"));
+    }
+
+    @Test
+    void changedCredentialsAreRemovedAndReAdded() {
+        String deployed = config("443", client("a@x", "1"));
+        String desired = config("443", client("a@x", "9"));
+
+        XrayUserSyncService.UserDelta delta = service.diff(deployed, desired);
+
+        assertThat(delta).isNotNull();
+        assertThat(delta.getRemovals()).containsEntry("vless-in", List.of("a@x"));
+        assertThat(delta.countAdded()).isEqualTo(1);
+        JsonNode added = delta.getAdditions().get("vless-in").path("settings").path("clients").get(0);
+        assertThat(added.path("id").asText()).isEqualTo("9");
+    }
+
+    @Test
+    void structuralChangeRequiresFullDeploy() {
+        String deployed = config("443", client("a@x", "1"));
+        String desired = config("8443", client("a@x", "1"));
+
+        assertThat(service.diff(deployed, desired)).isNull();
+    }
+
+    @Test
+    void duplicateEmailRequiresFullDeploy() {
+        String deployed = config("443", client("a@x", "1"));
+        String desired = config("443", client("a@x", "1") + "," + client("a@x", "2"));
+
+        assertThat(service.diff(deployed, desired)).isNull();
+    }
+
+    @Test
+    void missingEmailRequiresFullDeploy() {
+        String deployed = config("443", client("a@x", "1"));
+        String desired = config("443", client("a@x", "1") + ",{\"id\": \"2\", \"level\": 0}");
+
+        assertThat(service.diff(deployed, desired)).isNull();
+    }
+
+    @Test
+    void unparsableOrMissingConfigRequiresFullDeploy() {
+        String config = config("443", client("a@x", "1"));
+
+        assertThat(service.diff(null, config)).isNull();
+        assertThat(service.diff("{not json", config)).isNull();
+    }
+}
@@ -0,0 +1,200 @@
+package com.fun90.airopscat.service.xray;
+
+import com.fun90.airopscat.model.dto.xray.InboundConfig;
+import com.fun90.airopscat.model.dto.xray.OutboundConfig;
+import com.fun90.airopscat.model.dto.xray.XrayConfig;
+import com.fun90.airopscat.model.dto.xray.routing.RoutingRule;
+import com.fun90.airopscat.model.dto.xray.setting.inbound.VlessInboundSetting;
+import com.fun90.airopscat.model.dto.xray.setting.inbound.VlessInboundSetting.VlessClient;
+import com.fun90.airopscat.model.entity.Account;
+import com.fun90.airopscat.model.entity.Node;
+import com.fun90.airopscat.model.entity.Server;
+import com.fun90.airopscat.service.xray.registry.ConversionStrategyRegistry;
+import com.fun90.airopscat.service.xray.strategy.ConversionStrategy;
+import com.fun90.airopscat.service.xray.strategy.impl.ShadowsocksConversionStrategy;
+import com.fun90.airopscat.service.xray.strategy.impl.SocksConversionStrategy;
+import com.fun90.airopscat.service.xray.strategy.impl.VlessConversionStrategy;
+import com.fun90.airopscat.utils.ConfigFileReader;
+import com.fun90.airopscat.utils.JsonUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 组装结果须与原 NodeDeploymentService.generateXrayConfig 按模型构建再序列化的结果一致（忽略字段顺序）
+ */
+class XrayConfigAssemblerTest {
+
+    private final ConversionStrategyRegistry strategyRegistry = new ConversionStrategyRegistry(List.of(
+            new VlessConversionStrategy(), new ShadowsocksConversionStrategy(), new SocksConversionStrategy()));
+    private final XrayConfigAssembler assembler = new XrayConfigAssembler(strategyRegistry);
+
+    private static final String VLESS_INBOUND = """
+            {
+              "listen": "0.0.0.0",
+              "port": 1,
+              "protocol": "vless",
+              "settings": {"decryption": "none", "clients": []},
+              "streamSettings": {"network": "tcp", "security": "none"}
+            }
+            """;
+
+    private static final String SOCKS_INBOUND = """
+            {
+              "listen": "0.0.0.0",
+              "port": 1,
+              "protocol": "socks",
+              "settings": {"auth": "noauth", "udp": true}
+            }
+            """;
+
+    @Test
+    void matchesLegacyOutputForPlainNodes() {
+        Node first = node(1L, 10001, VLESS_INBOUND);
+        Node second = node(2L, 10002, VLESS_INBOUND);
+        Map<Long, List<Account>> clients = Map.of(
+                1L, List.of(account("u-1", "A001"), account("u-2", "A002")),
+                2L, List.of(account("u-3", "A003")));
+
+        assertSameConfig(List.of(first, second), clients);
+    }
+
+    @Test
+    void matchesLegacyOutputWithOutboundAndRule() {
+        Server outServer = new Server();
+        outServer.setId(20L);
+        outServer.setIp("10.0.0.2");
+        outServer.setHost("landing.example.com");
+
+        Node landing = node(3L, 20003, VLESS_INBOUND);
+        landing.setServerId(20L);
+        landing.setServer(outServer);
+
+        Node proxy = node(4L, 10004, VLESS_INBOUND);
+        proxy.setOutId(landing.getId());
+        proxy.setOutNode(landing);
+        proxy.setRule("default");
+
+        Server ipOnly = new Server();
+        ipOnly.setId(21L);
+        ipOnly.setIp("10.0.0.3");
+        Node socksLanding = node(5L, 20005, SOCKS_INBOUND);
+        socksLanding.setServerId(21L);
+        socksLanding.setServer(ipOnly);
+
+        Node socksProxy = node(6L, 10006, SOCKS_INBOUND);
+        socksProxy.setOutId(socksLanding.getId());
+        socksProxy.setOutNode(socksLanding);
+
+        Map<Long, List<Account>> clients = Map.of(4L, List.of(account("u-4", "A004")));
+
+        assertSameConfig(List.of(proxy, socksProxy), clients);
+    }
+
+    @Test
+    void matchesLegacyOutputWhenNodeHasNoClientsOrInbound() {
+        Node empty = node(7L, 10007, VLESS_INBOUND);
+        Node missing = node(8L, 10008, null);
+
+        assertSameConfig(List.of(empty, missing), Map.of());
+    }
+
+    @Test
+    void cachedFragmentsDoNotLeakBetweenAssemblies() {
+        Node node = node(9L, 10009, VLESS_INBOUND);
+
+        assertSameConfig(List.of(node), Map.of(9L, List.of(account("u-9", "A009"))));
+        assertSameConfig(List.of(node), Map.of(9L, List.of(account("u-10", "A010"), account("u-11", "A011"))));
+    }
+
+    private void assertSameConfig(List<Node> nodes, Map<Long, List<Account>> clients) {
+        String assembled = assembler.assemble(nodes, clients);
+        String legacy = JsonUtil.toJsonStringPretty(generateXrayConfig(nodes, clients));
+
+        assertThat(JsonUtil.toJsonNode(assembled)).isEqualTo(JsonUtil.toJsonNode(legacy));
+    }
+
+    private static Node node(Long id, int port, String inbound) {
+        Node node = new Node();
+        node.setId(id);
+        node.setPort(port);
+        node.setProtocol("vless");
+        node.setInbound(inbound);
+        node.setUpdateTime(LocalDateTime.of(2025, 1, 1, 0, 0));
+        return node;
+    }
+
+    private static Account account(String uuid, String accountNo) {
+        Account account = new Account();
+        account.setUuid(uuid);
+        account.setAccountNo(accountNo);
+        return account;
+    }
+
+    /**
+     * 原 generateXrayConfig 的实现，出站服务器改为取节点关联而非查库
+     */
+    private XrayConfig generateXrayConfig(List<Node> nodes, Map<Long, List<Account>> accountsByNode) {
+        String configTemplate = ConfigFileReader.readFileContent("templates/core/xray.json");
+        XrayConfig xrayConfig = JsonUtil.toObject(configTemplate, XrayConfig.class);
+
+        List<InboundConfig> inbounds = xrayConfig.getInbounds().stream().filter(o -> StringUtils.startsWith(o.getTag(), "default-")).collect(Collectors.toList());
+        List<OutboundConfig> outbounds = xrayConfig.getOutbounds().stream().filter(o -> StringUtils.startsWith(o.getTag(), "default-")).collect(Collectors.toList());
+        List<RoutingRule> routingRules = xrayConfig.getRouting().getRules().stream().filter(o -> StringUtils.startsWith(o.getRuleTag(), "default-")).collect(Collectors.toList());
+
+        for (Node node : nodes) {
+            if (node.getInbound() == null) {
+                continue;
+            }
+            InboundConfig inbound = JsonUtil.toObject(node.getInbound(), InboundConfig.class);
+            if (inbound.getSettings() instanceof VlessInboundSetting vlessInboundSetting) {
+                List<VlessClient> clients = new ArrayList<>();
+                for (Account account : accountsByNode.getOrDefault(node.getId(), Collections.emptyList())) {
+                    VlessClient client = new VlessClient();
+                    client.setId(account.getUuid());
+                    client.setEmail(account.getAccountNo());
+                    client.setFlow("xtls-rprx-vision");
+                    clients.add(client);
+                }
+                vlessInboundSetting.setClients(clients);
+            }
+            inbound.setTag(node.getTag());
+            inbound.setPort(node.getPort());
+            inbounds.add(inbound);
+
+            Node outNode = node.getOutId() != null ? node.getOutNode() : null;
+            if (outNode == null) {
+                continue;
+            }
+            InboundConfig outInbound = JsonUtil.toObject(outNode.getInbound(), InboundConfig.class);
+            Server outServer = outNode.getServer();
+            ConversionStrategy strategy = strategyRegistry.getStrategy(outInbound.getProtocol());
+            if (strategy != null) {
+                String host = StringUtils.isBlank(outServer.getHost()) ? outServer.getIp() : outServer.getHost();
+                OutboundConfig outbound = strategy.convert(outInbound, host, outNode.getPort());
+                outbound.setTag(node.getId().toString());
+                outbounds.add(outbound);
+            }
+            if (node.getRule() != null) {
+                RoutingRule routingRule = new RoutingRule();
+                routingRule.setInboundTag(Collections.singletonList(node.getTag()));
+                routingRule.setOutboundTag(outNode.getTag());
+                routingRule.setType("field");
+                routingRules.add(routingRule);
+            }
+        }
+
+        xrayConfig.setInbounds(inbounds);
+        xrayConfig.setOutbounds(outbounds);
+        xrayConfig.getRouting().setRules(routingRules);
+        return xrayConfig;
+    }
+}